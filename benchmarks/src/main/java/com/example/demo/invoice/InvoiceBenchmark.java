@@ -0,0 +1,71 @@
+package com.example.demo.invoice;
+
+import com.example.demo.student.Student;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.IOException;
+import java.time.Month;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering cost of a single invoice, from the lesson count through to the finished PDF bytes,
+ * in each output mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvoiceBenchmark {
+
+    @Param({"STANDARD", "COMPRESSED", "PDF_A"})
+    public String output;
+
+    private AnnotationConfigApplicationContext context;
+    private InvoiceService invoiceService;
+    private Student student;
+
+    @Setup
+    public void setUp() {
+        System.setProperty("invoice.output", output);
+        context = new AnnotationConfigApplicationContext(InvoiceTemplate.class, InvoiceService.class);
+        invoiceService = context.getBean(InvoiceService.class);
+
+        student = new Student();
+        student.setDays(Map.of("Monday", 2, "Thursday", 1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] toPDF() throws IOException {
+        return invoiceService.toPDF(1L, "Benson", 45.0, "MAY", 2025, 4);
+    }
+
+    @Benchmark
+    public byte[] generateInvoice() throws IOException {
+        return invoiceService.generateInvoice(1L, "Benson", 45.0, "2025-05-01", "Monday");
+    }
+
+    @Benchmark
+    public int countLessons() {
+        return invoiceService.countLessons(student, 2025, Month.MAY);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demo.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage operations over a synthetic archive of yyyy/MM folders holding 100 invoices each.
+ * The archive lives under a scratch directory and is built once per trial for every tree size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    private static final int FILES_PER_MONTH = 100;
+    private static final String SAMPLE_FILE = "archive/2000/01/student-0.pdf";
+
+    @Param({"1000", "10000", "100000"})
+    public int files;
+
+    private Path root;
+    private StorageService storageService;
+    private byte[] pdf;
+    private long revision;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("storage-benchmark");
+        pdf = new byte[40 * 1024];
+        new Random(42).nextBytes(pdf);
+
+        // All invoices sit under one top-level folder, so a walk of it covers the whole archive
+        Path archive = root.resolve("archive");
+        int months = Math.max(1, files / FILES_PER_MONTH);
+        for (int m = 0; m < months; m++) {
+            Path month = Files.createDirectories(archive.resolve(String.valueOf(2000 + m / 12))
+                    .resolve(String.format("%02d", m % 12 + 1)));
+            for (int f = 0; f < Math.min(FILES_PER_MONTH, files); f++) {
+                Files.write(month.resolve("student-" + f + ".pdf"), f == 0 ? pdf : new byte[]{(byte) f});
+            }
+        }
+
+        storageService = new StorageService(root);
+        storageService.startIndex();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storageService.stopIndex();
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public List<FileNode> listFilesAndFoldersIndexed() throws IOException {
+        return storageService.listFilesAndFolders(root);
+    }
+
+    @Benchmark
+    public List<FileNode> listFilesAndFoldersWalk() throws IOException {
+        return storageService.listFilesAndFolders(root.resolve("archive"));
+    }
+
+    @Benchmark
+    public byte[] loadFile() throws IOException {
+        return storageService.loadFile(SAMPLE_FILE);
+    }
+
+    @Benchmark
+    public String saveInvoiceUnchanged() throws IOException {
+        return storageService.saveInvoice(pdf, "unchanged.pdf", "2099-01-01");
+    }
+
+    @Benchmark
+    public String saveInvoiceChanged() throws IOException {
+        byte[] changed = pdf.clone();
+        long value = revision++;
+        for (int i = 0; i < Long.BYTES; i++) {
+            changed[i] = (byte) (value >>> (i * 8));
+        }
+        return storageService.saveInvoice(changed, "changed.pdf", "2099-01-01");
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.demo.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrent invoice saves into one month folder, at one, four and all available threads.
+ * With distinct file names only the folder locks are shared, so throughput should grow with the
+ * thread count; with every thread saving the same name the saves queue on one lock and it should not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageContentionBenchmark {
+
+    @Param({"distinct", "same"})
+    public String names;
+
+    private Path root;
+    private StorageService storageService;
+    private byte[] pdf;
+    private final AtomicInteger writers = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Writer {
+
+        private String fileName;
+        private byte[] pdf;
+        private long revision;
+
+        @Setup(Level.Trial)
+        public void setUp(StorageContentionBenchmark benchmark) {
+            int id = benchmark.writers.getAndIncrement();
+            fileName = benchmark.names.equals("same") ? "shared.pdf" : "student-" + id + ".pdf";
+            pdf = benchmark.pdf.clone();
+            pdf[pdf.length - 1] = (byte) id;
+        }
+
+        // New content every time, so every save really writes
+        byte[] next() {
+            long value = revision++;
+            for (int i = 0; i < Long.BYTES; i++) {
+                pdf[i] = (byte) (value >>> (i * 8));
+            }
+            return pdf;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("storage-contention-benchmark");
+        pdf = new byte[40 * 1024];
+        new Random(42).nextBytes(pdf);
+        storageService = new StorageService(root);
+        storageService.startIndex();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storageService.stopIndex();
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String saveOneThread(Writer writer) throws IOException {
+        return save(writer);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String saveFourThreads(Writer writer) throws IOException {
+        return save(writer);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String saveAllCores(Writer writer) throws IOException {
+        return save(writer);
+    }
+
+    private String save(Writer writer) throws IOException {
+        return storageService.saveInvoice(writer.next(), writer.fileName, "2099-01-01");
+    }
+}
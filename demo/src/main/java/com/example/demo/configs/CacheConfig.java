@@ -0,0 +1,29 @@
+package com.example.demo.configs;
+
+import com.example.demo.student.StudentService;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables the in-process caches declared with {@code @Cacheable}. The caches are backed by Caffeine;
+ * their size and TTL limits are set with {@code spring.cache.caffeine.spec}, and their hit/miss
+ * statistics are published as the {@code cache.gets} metric.
+ * The roster cache holds the whole roster as one entry, so it has a spec of its own,
+ * {@code students.roster-cache.spec}.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    @Bean
+    CacheManagerCustomizer<CaffeineCacheManager> rosterCacheCustomizer(
+            @Value("${students.roster-cache.spec:maximumSize=1,expireAfterWrite=10m,recordStats}") String spec) {
+        return cacheManager -> cacheManager.registerCustomCache(StudentService.ROSTER_CACHE,
+                Caffeine.from(spec).build());
+    }
+}
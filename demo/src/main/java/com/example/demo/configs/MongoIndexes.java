@@ -0,0 +1,63 @@
+package com.example.demo.configs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
+
+/**
+ * Creates the indexes declared on a document class with {@code @Indexed}, {@code @CompoundIndex} and
+ * {@code @WildcardIndexed}. Index creation is not left to Spring Data's auto-index-creation, so that
+ * startup does not wait for the database.
+ */
+public final class MongoIndexes {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexes.class);
+
+    private MongoIndexes() {
+    }
+
+    /**
+     * Creates the indexes declared on a document class that do not exist yet.
+     * Existing indexes with the same definition are left as they are.
+     *
+     * @param mongoTemplate the template of the database holding the collection
+     * @param documentClass the document class declaring the indexes
+     * @return the names of all indexes on the collection
+     */
+    public static List<String> ensure(MongoTemplate mongoTemplate, Class<?> documentClass) {
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(
+                (MongoMappingContext) mongoTemplate.getConverter().getMappingContext());
+        IndexOperations indexOps = mongoTemplate.indexOps(documentClass);
+        for (IndexDefinition index : resolver.resolveIndexFor(documentClass)) {
+            indexOps.ensureIndex(index);
+        }
+        return indexOps.getIndexInfo().stream().map(IndexInfo::getName).toList();
+    }
+
+    /**
+     * Creates the indexes declared on a document class on a background daemon thread.
+     * Failures are logged, not thrown; the indexes can be created again later.
+     *
+     * @param mongoTemplate the template of the database holding the collection
+     * @param documentClass the document class declaring the indexes
+     */
+    public static void ensureInBackground(MongoTemplate mongoTemplate, Class<?> documentClass) {
+        String name = documentClass.getSimpleName();
+        Thread creator = new Thread(() -> {
+            try {
+                log.info("Ensured {} indexes {}", name, ensure(mongoTemplate, documentClass));
+            } catch (RuntimeException e) {
+                log.warn("Could not create {} indexes", name, e);
+            }
+        }, "index-creator-" + name);
+        creator.setDaemon(true);
+        creator.start();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.demo.configs;
+
+import com.example.demo.storage.FileSystemBackend;
+import com.example.demo.storage.S3Backend;
+import com.example.demo.storage.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+
+/**
+ * Creates the {@link StorageBackend} selected with {@code storage.backend}: {@code filesystem} for a
+ * directory shared by all nodes, {@code s3} for an S3-compatible object store. With the default,
+ * {@code local}, there is no backend and the storage directory is the only copy of the archive.
+ */
+@Configuration
+public class StorageBackendConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "storage.backend", havingValue = "filesystem")
+    public StorageBackend fileSystemBackend(@Value("${storage.filesystem.root}") Path root) throws IOException {
+        return new FileSystemBackend(root);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+    public StorageBackend s3Backend(@Value("${storage.s3.bucket}") String bucket,
+                                    @Value("${storage.s3.prefix:}") String prefix,
+                                    @Value("${storage.s3.region:us-east-1}") String region,
+                                    @Value("${storage.s3.endpoint:}") String endpoint,
+                                    @Value("${storage.s3.access-key:}") String accessKey,
+                                    @Value("${storage.s3.secret-key:}") String secretKey,
+                                    @Value("${storage.s3.part-size:8MB}") DataSize partSize,
+                                    @Value("${storage.s3.max-concurrency:64}") int maxConcurrency) {
+        AwsCredentialsProvider credentials = accessKey.isEmpty()
+                ? DefaultCredentialsProvider.builder().build()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+
+        S3AsyncClientBuilder client = S3AsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(maxConcurrency))
+                // Files above one part are uploaded in parts, several at a time
+                .multipartEnabled(true)
+                .multipartConfiguration(multipart -> multipart
+                        .thresholdInBytes(partSize.toBytes())
+                        .minimumPartSizeInBytes(partSize.toBytes()));
+        if (!endpoint.isEmpty()) {
+            // MinIO and most other S3-compatible stores address buckets by path rather than host name
+            client.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+        }
+        return new S3Backend(client.build(), bucket, prefix);
+    }
+}
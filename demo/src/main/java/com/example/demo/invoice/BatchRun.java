@@ -0,0 +1,105 @@
+package com.example.demo.invoice;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of a month-end invoice run over every student.
+ * Counters are updated by the rendering workers while the run is in progress,
+ * so a snapshot read through the getters may be mid-run.
+ */
+public class BatchRun {
+
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    // Runs are kept for a day; a run where every student fails should not hold every message that long
+    static final int MAX_ERRORS = 100;
+
+    private final String id;
+    private final String date;
+    private final Instant startedAt = Instant.now();
+    private volatile Instant finishedAt;
+    private volatile Status status = Status.RUNNING;
+
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final List<String> errors = new ArrayList<>();
+
+    public BatchRun(String id, String date) {
+        this.id = id;
+        this.date = date;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getSubmitted() {
+        return submitted.get();
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the messages of the first {@value #MAX_ERRORS} failures; {@link #getFailed()} counts them all.
+     *
+     * @return the error messages, in the order the failures happened
+     */
+    public synchronized List<String> getErrors() {
+        return List.copyOf(errors);
+    }
+
+    void submitted() {
+        submitted.incrementAndGet();
+    }
+
+    void completed() {
+        completed.incrementAndGet();
+    }
+
+    void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    synchronized void failed(String studentName, Exception e) {
+        failed.incrementAndGet();
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(studentName + ": " + e.getMessage());
+        }
+    }
+
+    void finish(Status status) {
+        this.finishedAt = Instant.now();
+        this.status = status;
+    }
+}
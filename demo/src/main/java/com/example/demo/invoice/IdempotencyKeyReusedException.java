@@ -0,0 +1,11 @@
+package com.example.demo.invoice;
+
+/**
+ * Thrown when an idempotency key is sent again with a request that differs from the one it was first used for.
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    public IdempotencyKeyReusedException(String key) {
+        super("Idempotency key " + key + " was already used for a different invoice");
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.demo.invoice;
+
+/**
+ * The variable fields of a single invoice. Everything else on the page is static
+ * and supplied by {@link InvoiceTemplate}.
+ *
+ * @param studentId the ID of the student being billed
+ * @param name the name of the student
+ * @param rate the rate per lesson in SGD
+ * @param month the month being billed, e.g. "MAY"
+ * @param year the year being billed
+ * @param numberOfLessons the number of lessons in the month
+ */
+public record Invoice(String studentId, String name, double rate, String month, int year, int numberOfLessons) {
+
+    public double amount() {
+        return rate * numberOfLessons;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.demo.invoice;
+
+import com.example.demo.student.Student;
+import com.example.demo.student.StudentRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Runs month-end billing over every student in the repository.
+ * Students are streamed from Mongo and rendered in parallel on one worker per core;
+ * the number of students held in memory is capped by the number of renders in flight.
+ * Runs stay available for polling until the retention period has passed since they finished.
+ */
+@Service
+public class InvoiceBatchService {
+
+    private static final int WORKERS = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_IN_FLIGHT = WORKERS * 2;
+
+    @Autowired
+    private InvoiceService invoiceService;
+
+    @Autowired
+    private InvoiceLedgerService invoiceLedgerService;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Value("${invoice.batch.retention:PT24H}")
+    private Duration retention = Duration.ofHours(24);
+
+    private final ExecutorService coordinator =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("invoice-batch-"));
+    private final ExecutorService workers =
+            Executors.newFixedThreadPool(WORKERS, new CustomizableThreadFactory("invoice-render-"));
+    private Cache<String, BatchRun> runs;
+
+    @PostConstruct
+    void init() {
+        runs = Caffeine.newBuilder()
+                .expireAfterWrite(retention)
+                .build();
+    }
+
+    /**
+     * Starts generating invoices for every student for the month containing the given date.
+     * The run continues in the background; its progress can be followed with {@link #getRun(String)}.
+     *
+     * @param date the date representing the target month and year in the format "yyyy-MM-dd"
+     * @return the newly started run
+     * @throws java.time.format.DateTimeParseException if the date is not in the expected format
+     */
+    public BatchRun start(String date) {
+        LocalDate.parse(date, DateTimeFormatter.ISO_LOCAL_DATE);
+
+        BatchRun run = new BatchRun(UUID.randomUUID().toString(), date);
+        runs.put(run.getId(), run);
+        coordinator.execute(() -> execute(run));
+        return run;
+    }
+
+    public Optional<BatchRun> getRun(String id) {
+        return Optional.ofNullable(runs.getIfPresent(id));
+    }
+
+    private void execute(BatchRun run) {
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        BatchRun.Status status = BatchRun.Status.COMPLETED;
+
+        try (Stream<Student> students = studentRepository.streamAllBy()) {
+            students.forEach(student -> {
+                inFlight.acquireUninterruptibly();
+                run.submitted();
+                try {
+                    workers.execute(() -> {
+                        try {
+                            generate(run, student);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            });
+        } catch (RuntimeException e) {
+            run.failed("batch", e);
+            status = BatchRun.Status.FAILED;
+        }
+
+        // Wait for the renders still in flight
+        inFlight.acquireUninterruptibly(MAX_IN_FLIGHT);
+        run.finish(status);
+        // Written again so that the retention period starts when the run finishes
+        runs.put(run.getId(), run);
+    }
+
+    private void generate(BatchRun run, Student student) {
+        try {
+            Invoice invoice = invoiceService.invoiceFor(student, run.getDate());
+            if (invoice.numberOfLessons() == 0) {
+                run.skipped();
+                return;
+            }
+            invoiceLedgerService.issue(invoice, student.getEducationLevel(), run.getDate());
+            run.completed();
+        } catch (Exception e) {
+            run.failed(student.getName(), e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+}
@@ -1,16 +1,16 @@
 package com.example.demo.invoice;
 
-import com.example.demo.storage.StorageService;
 import com.example.demo.invoice.InvoiceService;
 import io.swagger.v3.oas.annotations.Operation;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 @RestController
 @RequestMapping("/api/invoices")
@@ -20,7 +20,13 @@ public class InvoiceController {
     private InvoiceService invoiceService;
 
     @Autowired
-    private StorageService storageService;
+    private InvoiceLedgerService invoiceLedgerService;
+
+    @Autowired
+    private InvoiceBatchService invoiceBatchService;
+
+    @Autowired
+    private InvoiceJobService invoiceJobService;
 
     /**
      * Generates an invoice for a student, automatically calculating the number of lessons for a given month
@@ -31,8 +37,10 @@ public class InvoiceController {
      * @param rate The hourly rate or cost per lesson.
      * @param date The date representing the target month and year in the format "yyyy-MM-dd".
      * @param day The day of the week (e.g., "Monday", "Tuesday") used to calculate the lessons in the specified month.
+     * @param idempotencyKey An optional client-chosen key; a retry with the same key gets the first result back.
      * @return A ResponseEntity containing an HTTP status and message. HTTP 200 OK if successful,
-     *         HTTP 400 BAD REQUEST if the input is invalid, or HTTP 500 INTERNAL SERVER ERROR for other exceptions.
+     *         HTTP 400 BAD REQUEST if the input is invalid, HTTP 422 UNPROCESSABLE ENTITY if the idempotency key
+     *         was used for a different invoice, or HTTP 500 INTERNAL SERVER ERROR for other exceptions.
      */
     @Operation(summary = "Generate invoice",
             description = "Generates invoices by automatically counting number of lessons for that month")
@@ -41,10 +49,11 @@ public class InvoiceController {
                                              @RequestParam String name,
                                              @RequestParam double rate,
                                              @RequestParam String date,     // e.g., "2025-05-01"
-                                             @RequestParam String day) { //monday, tuesday etc
+                                             @RequestParam String day, //monday, tuesday etc
+                                             @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
-            byte[] pdf = invoiceService.generateInvoice(studentId, name, rate, date, day);
-            String filePath = storageService.saveInvoice(pdf, name + ".pdf", date);
+            Invoice invoice = invoiceService.invoiceFor(studentId, name, rate, date, day);
+            String filePath = invoiceLedgerService.issue(idempotencyKey, invoice, null, date);
 
             return new ResponseEntity<>(HttpStatus.OK);
         } catch (DateTimeParseException e) {
@@ -55,6 +64,9 @@ public class InvoiceController {
             // Another invalid input
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body("Error: Illegal Argument" + e.getMessage());
+        } catch (IdempotencyKeyReusedException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body("Error: " + e.getMessage());
         } catch (Exception e) {
             // Internal server error
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -71,8 +83,10 @@ public class InvoiceController {
      * @param rate The hourly rate or cost per lesson.
      * @param date The date representing the target month and year for the invoice in the format "yyyy-MM-dd".
      * @param numberOfLessons The total number of lessons to be included in the invoice.
+     * @param idempotencyKey An optional client-chosen key; a retry with the same key gets the first result back.
      * @return A ResponseEntity containing an HTTP status and message. HTTP 200 OK if the invoice is generated successfully,
      *         HTTP 400 BAD REQUEST if the input is invalid (e.g., incorrect date format),
+     *         HTTP 422 UNPROCESSABLE ENTITY if the idempotency key was used for a different invoice,
      *         or HTTP 500 INTERNAL SERVER ERROR for other exceptions.
      */
     @PostMapping("/generateinvoice/manual")
@@ -80,13 +94,11 @@ public class InvoiceController {
                                                           @RequestParam String name,
                                                           @RequestParam double rate,
                                                           @RequestParam String date,
-                                                          @RequestParam int numberOfLessons) {
+                                                          @RequestParam int numberOfLessons,
+                                                          @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
-            int year = LocalDate.parse(date, DateTimeFormatter.ISO_LOCAL_DATE).getYear();
-            String month = LocalDate.parse(date, DateTimeFormatter.ISO_LOCAL_DATE).getMonth().toString();
-            byte[] pdf = invoiceService.toPDF(studentId, name, rate, month, year, numberOfLessons);
-
-            String filePath = storageService.saveInvoice(pdf, name + ".pdf", date);
+            Invoice invoice = invoiceService.invoiceFor(studentId, name, rate, date, numberOfLessons);
+            String filePath = invoiceLedgerService.issue(idempotencyKey, invoice, null, date);
 
             Map<String, String> response = new HashMap<>();
             response.put("filePath", filePath);
@@ -99,10 +111,167 @@ public class InvoiceController {
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(Map.of("error", "Illegal Argument: " + e.getMessage()));
+        } catch (IdempotencyKeyReusedException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * Starts a month-end run that generates and stores an invoice for every student,
+     * using each student's stored rate and lesson days.
+     *
+     * @param date The date representing the target month and year in the format "yyyy-MM-dd".
+     * @return A ResponseEntity containing the started run with HTTP 202 ACCEPTED,
+     *         or HTTP 400 BAD REQUEST if the date format is invalid.
+     */
+    @Operation(summary = "Generate invoices for all students",
+            description = "Starts a background run that generates invoices for every student for the given month")
+    @PostMapping("/batch")
+    public ResponseEntity<?> startBatch(@RequestParam String date) {
+        try {
+            BatchRun run = invoiceBatchService.start(date);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(run);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", "Invalid date format. Please use yyyy-MM-dd format"));
+        }
+    }
+
+    /**
+     * Reports the progress of a month-end run.
+     *
+     * @param id The ID returned when the run was started.
+     * @return A ResponseEntity containing the run's progress, or HTTP 404 NOT FOUND if the run is unknown.
+     */
+    @Operation(summary = "Get invoice run progress", description = "Returns the progress of a month-end invoice run")
+    @GetMapping("/batch/{id}")
+    public ResponseEntity<BatchRun> getBatch(@PathVariable String id) {
+        return invoiceBatchService.getRun(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 
-}
\ No newline at end of file
+    /**
+     * Queues an invoice for asynchronous generation and returns immediately with a job ID.
+     * Exactly one of {@code day} or {@code numberOfLessons} must be given: with {@code day} the lessons
+     * are counted automatically for the month, otherwise the given number of lessons is billed.
+     *
+     * @param studentId The unique identifier of the student for whom the invoice is generated.
+     * @param name The name of the student for whom the invoice is generated.
+     * @param rate The hourly rate or cost per lesson.
+     * @param date The date representing the target month and year in the format "yyyy-MM-dd".
+     * @param day The day of the week used to count the lessons in the month.
+     * @param numberOfLessons The total number of lessons to be included in the invoice.
+     * @param idempotencyKey An optional client-chosen key; a retry with the same key gets the same job back.
+     * @return A ResponseEntity containing the queued job with HTTP 202 ACCEPTED,
+     *         HTTP 400 BAD REQUEST if the input is invalid,
+     *         HTTP 422 UNPROCESSABLE ENTITY if the idempotency key was used for a different invoice,
+     *         or HTTP 429 TOO MANY REQUESTS if the job queue is full.
+     */
+    @Operation(summary = "Queue invoice",
+            description = "Queues an invoice for background generation and returns a job ID to poll")
+    @PostMapping("/jobs")
+    public ResponseEntity<?> submitJob(@RequestParam Long studentId,
+                                       @RequestParam String name,
+                                       @RequestParam double rate,
+                                       @RequestParam String date,
+                                       @RequestParam(required = false) String day,
+                                       @RequestParam(required = false) Integer numberOfLessons,
+                                       @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if ((day == null) == (numberOfLessons == null)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", "Exactly one of day or numberOfLessons is required"));
+        }
+        try {
+            InvoiceJob job = day != null
+                    ? invoiceJobService.submitAuto(studentId, name, rate, date, day, idempotencyKey)
+                    : invoiceJobService.submitManual(studentId, name, rate, date, numberOfLessons, idempotencyKey);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", "Invalid date format. Please use yyyy-MM-dd format"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", "Illegal Argument: " + e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(Map.of("error", "Invoice queue is full, please retry later"));
+        } catch (IdempotencyKeyReusedException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Returns the status of a queued invoice job. With {@code waitSeconds} the request is held open
+     * (without occupying a request thread) until the job finishes or the wait expires.
+     *
+     * @param id The ID returned when the job was queued.
+     * @param waitSeconds How long to wait for the job to finish, at most 60 seconds. 0 returns immediately.
+     * @return A DeferredResult with the job's status, or HTTP 404 NOT FOUND if the job is unknown.
+     */
+    @Operation(summary = "Get invoice job", description = "Polls or long-polls the status of a queued invoice")
+    @GetMapping("/jobs/{id}")
+    public DeferredResult<ResponseEntity<InvoiceJob>> getJob(@PathVariable String id,
+                                                             @RequestParam(defaultValue = "0") long waitSeconds) {
+        InvoiceJob job = invoiceJobService.getJob(id).orElse(null);
+        if (job == null || job.isFinished() || waitSeconds <= 0) {
+            DeferredResult<ResponseEntity<InvoiceJob>> result = new DeferredResult<>();
+            result.setResult(job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job));
+            return result;
+        }
+
+        long timeoutMillis = Math.min(waitSeconds, 60) * 1000;
+        DeferredResult<ResponseEntity<InvoiceJob>> result = new DeferredResult<>(timeoutMillis, ResponseEntity.ok(job));
+        job.getDone().thenAccept(finished -> result.setResult(ResponseEntity.ok(finished)));
+        return result;
+    }
+
+    /**
+     * Totals the invoice ledger per month.
+     *
+     * @param year The year to total; all years if omitted.
+     * @return A ResponseEntity with one total per month, oldest first.
+     */
+    @Operation(summary = "Ledger totals per month", description = "Aggregates issued invoices per billed month")
+    @GetMapping("/ledger/months")
+    public ResponseEntity<List<LedgerTotal>> getMonthlyTotals(@RequestParam(required = false) Integer year) {
+        return ResponseEntity.ok(invoiceLedgerService.totalsByMonth(year));
+    }
+
+    /**
+     * Totals the invoice ledger per student.
+     *
+     * @param period The month to total in the format "yyyy-MM"; all time if omitted.
+     * @return A ResponseEntity with one total per student, or HTTP 400 BAD REQUEST if the period is invalid.
+     */
+    @Operation(summary = "Ledger totals per student", description = "Aggregates issued invoices per student")
+    @GetMapping("/ledger/students")
+    public ResponseEntity<List<LedgerTotal>> getStudentTotals(@RequestParam(required = false) String period) {
+        try {
+            return ResponseEntity.ok(invoiceLedgerService.totalsByStudent(period));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Totals the invoice ledger per education level.
+     *
+     * @param period The month to total in the format "yyyy-MM"; all time if omitted.
+     * @return A ResponseEntity with one total per education level, or HTTP 400 BAD REQUEST if the period is invalid.
+     */
+    @Operation(summary = "Ledger totals per education level", description = "Aggregates issued invoices per education level")
+    @GetMapping("/ledger/levels")
+    public ResponseEntity<List<LedgerTotal>> getEducationLevelTotals(@RequestParam(required = false) String period) {
+        try {
+            return ResponseEntity.ok(invoiceLedgerService.totalsByEducationLevel(period));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.invoice;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A single invoice queued for asynchronous generation.
+ * {@link #getDone()} completes once the job has either stored its PDF or failed.
+ */
+public class InvoiceJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private final String id;
+    private final Instant submittedAt = Instant.now();
+    private volatile Instant finishedAt;
+    private volatile Status status = Status.QUEUED;
+    private volatile String filePath;
+    private volatile String error;
+    private final CompletableFuture<InvoiceJob> done = new CompletableFuture<>();
+
+    public InvoiceJob(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @JsonIgnore
+    public CompletableFuture<InvoiceJob> getDone() {
+        return done;
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return done.isDone();
+    }
+
+    void running() {
+        this.status = Status.RUNNING;
+    }
+
+    void completed(String filePath) {
+        this.filePath = filePath;
+        finish(Status.COMPLETED);
+    }
+
+    void failed(String error) {
+        this.error = error;
+        finish(Status.FAILED);
+    }
+
+    private void finish(Status status) {
+        this.finishedAt = Instant.now();
+        this.status = status;
+        done.complete(this);
+    }
+}
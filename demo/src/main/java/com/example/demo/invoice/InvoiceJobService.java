@@ -0,0 +1,184 @@
+package com.example.demo.invoice;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates invoices off the request thread.
+ * Jobs run on a fixed pool of workers behind a bounded queue; once the queue is full
+ * new submissions are rejected so callers can back off instead of piling up work.
+ * Finished jobs are kept for polling until the retention period has passed.
+ */
+@Service
+public class InvoiceJobService {
+
+    @Autowired
+    private InvoiceService invoiceService;
+
+    @Autowired
+    private InvoiceLedgerService invoiceLedgerService;
+
+    @Value("${invoice.jobs.workers:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int workers;
+
+    @Value("${invoice.jobs.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${invoice.jobs.retention:PT1H}")
+    private Duration retention;
+
+    private ThreadPoolExecutor executor;
+    private Cache<String, InvoiceJob> jobs;
+    // Idempotency key -> the job queued for it, kept as long as the job itself
+    private Cache<String, KeyedJob> jobsByKey;
+
+    private record KeyedJob(String fingerprint, InvoiceJob job) {
+    }
+
+    @PostConstruct
+    void init() {
+        jobs = Caffeine.newBuilder()
+                .expireAfterWrite(retention)
+                .build();
+        jobsByKey = Caffeine.newBuilder()
+                .expireAfterWrite(retention)
+                .build();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("invoice-job-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queues an invoice whose number of lessons is counted from the given day of the week.
+     *
+     * @param studentId the unique identifier of the student
+     * @param name the name of the student
+     * @param rate the rate per lesson
+     * @param date the target month and year in the format "yyyy-MM-dd"
+     * @param day the day of the week used to count lessons, e.g. "Monday"
+     * @param idempotencyKey the client's key for this request, or null
+     * @return the queued job, or the job already queued for the same idempotency key
+     * @throws java.time.format.DateTimeParseException if the date format is invalid
+     * @throws IllegalArgumentException if the day is not a day of the week
+     * @throws IdempotencyKeyReusedException if the key was already used for a different invoice
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public InvoiceJob submitAuto(Long studentId, String name, double rate, String date, String day,
+                                 String idempotencyKey) {
+        LocalDate.parse(date, DateTimeFormatter.ISO_LOCAL_DATE);
+        DayOfWeek.valueOf(day.toUpperCase());
+        return submit(invoiceService.invoiceFor(studentId, name, rate, date, day), date, idempotencyKey);
+    }
+
+    /**
+     * Queues an invoice for a given number of lessons.
+     *
+     * @param studentId the unique identifier of the student
+     * @param name the name of the student
+     * @param rate the rate per lesson
+     * @param date the target month and year in the format "yyyy-MM-dd"
+     * @param numberOfLessons the number of lessons to bill
+     * @param idempotencyKey the client's key for this request, or null
+     * @return the queued job, or the job already queued for the same idempotency key
+     * @throws java.time.format.DateTimeParseException if the date format is invalid
+     * @throws IdempotencyKeyReusedException if the key was already used for a different invoice
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public InvoiceJob submitManual(Long studentId, String name, double rate, String date, int numberOfLessons,
+                                   String idempotencyKey) {
+        LocalDate.parse(date, DateTimeFormatter.ISO_LOCAL_DATE);
+        return submit(invoiceService.invoiceFor(studentId, name, rate, date, numberOfLessons), date, idempotencyKey);
+    }
+
+    public Optional<InvoiceJob> getJob(String id) {
+        return Optional.ofNullable(jobs.getIfPresent(id));
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    private InvoiceJob submit(Invoice invoice, String date, String idempotencyKey) {
+        InvoiceJob job = new InvoiceJob(UUID.randomUUID().toString());
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            enqueue(job, invoice, date, null);
+            return job;
+        }
+
+        String fingerprint = InvoiceLedgerService.fingerprint(invoice, null, invoiceService.getOutput()) + "/" + date;
+        // The first request to claim the key queues the job; concurrent ones get the claimed job back
+        KeyedJob claim = new KeyedJob(fingerprint, job);
+        KeyedJob previous = jobsByKey.asMap().putIfAbsent(idempotencyKey, claim);
+        if (previous != null) {
+            if (!previous.fingerprint().equals(fingerprint)) {
+                throw new IdempotencyKeyReusedException(idempotencyKey);
+            }
+            return previous.job();
+        }
+        try {
+            enqueue(job, invoice, date, idempotencyKey);
+        } catch (RejectedExecutionException e) {
+            jobsByKey.asMap().remove(idempotencyKey, claim);
+            throw e;
+        }
+        return job;
+    }
+
+    private void enqueue(InvoiceJob job, Invoice invoice, String date, String idempotencyKey) {
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, invoice, date, idempotencyKey));
+        } catch (RejectedExecutionException e) {
+            jobs.invalidate(job.getId());
+            throw e;
+        }
+    }
+
+    private void run(InvoiceJob job, Invoice invoice, String date, String idempotencyKey) {
+        job.running();
+        String filePath = null;
+        Exception failure = null;
+        try {
+            filePath = invoiceLedgerService.issue(invoice, null, date);
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        // Written again so that the retention period starts when the job finishes, and before it says so
+        jobs.put(job.getId(), job);
+        if (idempotencyKey != null) {
+            // A failed job releases its key, so that the client can retry with it
+            boolean failed = failure != null;
+            jobsByKey.asMap().computeIfPresent(idempotencyKey, (key, keyed) -> keyed.job() != job ? keyed
+                    : failed ? null : new KeyedJob(keyed.fingerprint(), job));
+        }
+        if (failure != null) {
+            job.failed(failure.getMessage());
+        } else {
+            job.completed(filePath);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
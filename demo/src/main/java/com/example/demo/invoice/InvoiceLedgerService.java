@@ -0,0 +1,341 @@
+package com.example.demo.invoice;
+
+import com.example.demo.configs.MongoIndexes;
+import com.example.demo.storage.StorageEvent;
+import com.example.demo.storage.StorageService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Month;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
+
+/**
+ * Issues invoices and keeps the ledger of what was billed. Every issued invoice is rendered,
+ * stored, and recorded in the {@code invoices} collection with the figures printed on it,
+ * so reports are answered by aggregating the ledger instead of reading PDFs.
+ */
+@Service
+public class InvoiceLedgerService {
+
+    private static final Logger log = LoggerFactory.getLogger(InvoiceLedgerService.class);
+
+    @Autowired
+    private InvoiceService invoiceService;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Idempotency key -> what was issued for it; retries come within minutes, a day is plenty
+    private final Cache<String, IssuedRequest> issuedRequests = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofDays(1))
+            .build();
+
+    // Claimed before the invoice is issued, so that concurrent repeats wait for the first request's result
+    private record IssuedRequest(String fingerprint, CompletableFuture<String> filePath) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void createIndexesOnStartup() {
+        MongoIndexes.ensureInBackground(mongoTemplate, InvoiceRecord.class);
+    }
+
+    /**
+     * Renders an invoice, stores it in the month's folder under {@link #fileName(Invoice)} and records it in the ledger.
+     * If the ledger shows that the student's invoice for the month was issued from exactly the same inputs
+     * and is still stored, the existing file is returned as it is, without rendering or writing anything.
+     * An earlier invoice for the student and month stored under another name, e.g. before the student
+     * was renamed, is deleted once the new one is recorded.
+     *
+     * @param invoice the invoice to issue
+     * @param educationLevel the student's education level, or null if not known
+     * @param date the date representing the target month and year in the format "yyyy-MM-dd"
+     * @return the path of the stored PDF relative to the storage directory
+     * @throws IllegalArgumentException if the invoice has no student ID
+     * @throws IOException if the PDF cannot be stored
+     */
+    public String issue(Invoice invoice, String educationLevel, String date) throws IOException {
+        String fingerprint = fingerprint(invoice, educationLevel, invoiceService.getOutput());
+        String filePath = storageService.invoicePath(fileName(invoice), date);
+        InvoiceRecord existing = mongoTemplate.findById(ledgerId(invoice), InvoiceRecord.class);
+        if (existing != null && fingerprint.equals(existing.fingerprint()) && filePath.equals(existing.filePath())
+                && storageService.exists(filePath)) {
+            log.atDebug().addKeyValue("path", filePath).log("Invoice unchanged, reusing stored file");
+            return filePath;
+        }
+
+        // Rendered straight into the file being stored
+        filePath = toLedgerKey(storageService.saveInvoice(fileName(invoice), date,
+                out -> invoiceService.render(invoice, out)));
+        try {
+            record(invoice, educationLevel, filePath, fingerprint);
+        } catch (RuntimeException e) {
+            // A stored invoice the ledger does not know about would never be totalled; take it back
+            try {
+                storageService.deleteFile(filePath);
+            } catch (IOException | RuntimeException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+
+        if (existing != null && !filePath.equals(existing.filePath())) {
+            try {
+                storageService.deleteFile(existing.filePath());
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not delete superseded invoice {}", existing.filePath(), e);
+            }
+        }
+        return filePath;
+    }
+
+    /**
+     * Issues an invoice on behalf of a request carrying an idempotency key. The first request with a key
+     * is issued as usual; repeats of it within a day get the same result back without issuing again,
+     * waiting for it if the first request is still being issued. If the first request fails, the key
+     * is free to be retried.
+     *
+     * @param idempotencyKey the client's key for this request, or null to issue without one
+     * @param invoice the invoice to issue
+     * @param educationLevel the student's education level, or null if not known
+     * @param date the date representing the target month and year in the format "yyyy-MM-dd"
+     * @return the path of the stored PDF relative to the storage directory
+     * @throws IdempotencyKeyReusedException if the key was already used for a different invoice
+     * @throws IOException if the PDF cannot be stored
+     */
+    public String issue(String idempotencyKey, Invoice invoice, String educationLevel, String date) throws IOException {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return issue(invoice, educationLevel, date);
+        }
+
+        String fingerprint = fingerprint(invoice, educationLevel, invoiceService.getOutput()) + "/" + date;
+        IssuedRequest request = new IssuedRequest(fingerprint, new CompletableFuture<>());
+        IssuedRequest previous = issuedRequests.asMap().putIfAbsent(idempotencyKey, request);
+        if (previous != null) {
+            if (!previous.fingerprint().equals(fingerprint)) {
+                throw new IdempotencyKeyReusedException(idempotencyKey);
+            }
+            return await(previous.filePath());
+        }
+
+        try {
+            String filePath = issue(invoice, educationLevel, date);
+            request.filePath().complete(filePath);
+            return filePath;
+        } catch (IOException | RuntimeException e) {
+            issuedRequests.asMap().remove(idempotencyKey, request);
+            request.filePath().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static String await(CompletableFuture<String> filePath) throws IOException {
+        try {
+            return filePath.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw new IOException(cause.getMessage(), cause);
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Records an invoice in the ledger, replacing the entry of an earlier invoice for the same student and month.
+     *
+     * @param invoice the invoice as printed
+     * @param educationLevel the student's education level, or null if not known
+     * @param filePath the path of the stored PDF relative to the storage directory
+     * @param fingerprint the invoice's fingerprint, see {@link #fingerprint(Invoice, String, InvoiceOutput)}
+     * @return the ledger entry
+     * @throws IllegalArgumentException if the invoice has no student ID
+     */
+    public InvoiceRecord record(Invoice invoice, String educationLevel, String filePath, String fingerprint) {
+        InvoiceRecord record = new InvoiceRecord(ledgerId(invoice), toLedgerKey(filePath), invoice.studentId(), invoice.name(),
+                educationLevel, period(invoice), invoice.numberOfLessons(), invoice.rate(), invoice.amount(), Instant.now(),
+                fingerprint);
+        return mongoTemplate.save(record);
+    }
+
+    /**
+     * Drops the ledger entries of stored invoices that were deleted, whether one at a time, with their
+     * folder, or because another node deleted them from the storage backend.
+     *
+     * @param event the change to the stored files
+     */
+    @EventListener
+    void storageChanged(StorageEvent event) {
+        if (event.type() != StorageEvent.Type.DELETED) {
+            return;
+        }
+        String path = toLedgerKey(event.path().toString());
+        // The empty path is the storage directory itself
+        Criteria deleted = path.isEmpty() ? new Criteria() : new Criteria().orOperator(
+                Criteria.where("filePath").is(path),
+                Criteria.where("filePath").regex("^" + Pattern.quote(path + "/")));
+        long removed = mongoTemplate.remove(new Query(deleted), InvoiceRecord.class).getDeletedCount();
+        if (removed > 0) {
+            log.atDebug().addKeyValue("path", path).log("Removed {} ledger entries of deleted invoices", removed);
+        }
+    }
+
+    /**
+     * Names the stored PDF of an invoice after the student, as the invoices stored so far
+     * and the file browser expect.
+     *
+     * @param invoice the invoice
+     * @return the file name, e.g. "Alice.pdf"
+     */
+    static String fileName(Invoice invoice) {
+        return invoice.name() + ".pdf";
+    }
+
+    /**
+     * Keys the ledger entry of an invoice: one entry per student and month.
+     *
+     * @param invoice the invoice
+     * @return the key, e.g. "42/2025-05"
+     * @throws IllegalArgumentException if the invoice has no student ID
+     */
+    static String ledgerId(Invoice invoice) {
+        return studentId(invoice) + "/" + period(invoice);
+    }
+
+    /**
+     * Digests everything that determines an issued invoice: the template version and output mode,
+     * the invoice's fields, and the education level recorded with it.
+     *
+     * @param invoice the invoice
+     * @param educationLevel the education level recorded in the ledger, or null
+     * @param output the output mode the invoice is rendered with
+     * @return the SHA-256 digest as lowercase hex
+     */
+    static String fingerprint(Invoice invoice, String educationLevel, InvoiceOutput output) {
+        String inputs = String.join("\u0000",
+                String.valueOf(InvoiceTemplate.VERSION),
+                output.name(),
+                studentId(invoice),
+                invoice.name(),
+                Double.toString(invoice.rate()),
+                invoice.month(),
+                Integer.toString(invoice.year()),
+                Integer.toString(invoice.numberOfLessons()),
+                String.valueOf(educationLevel));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(inputs.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Totals the ledger per month, oldest first.
+     *
+     * @param year the year to total, or null for every year
+     * @return one total per month that has invoices
+     */
+    public List<LedgerTotal> totalsByMonth(Integer year) {
+        Criteria criteria = year == null ? new Criteria() : Criteria.where("period").regex("^" + year + "-");
+        return aggregate(List.of(Aggregation.match(criteria), Aggregation.group("period")
+                .count().as("invoices")
+                .sum("lessons").as("lessons")
+                .sum("amount").as("amount")));
+    }
+
+    /**
+     * Totals the ledger per student, by student ID.
+     *
+     * @param period the month to total as "yyyy-MM", or null for all time
+     * @return one total per student
+     */
+    public List<LedgerTotal> totalsByStudent(String period) {
+        return aggregate(List.of(Aggregation.match(forPeriod(period)), Aggregation.group("studentId")
+                .last("name").as("name")
+                .count().as("invoices")
+                .sum("lessons").as("lessons")
+                .sum("amount").as("amount")), "name");
+    }
+
+    /**
+     * Totals the ledger per education level. Invoices issued without a student record
+     * are grouped under "unknown".
+     *
+     * @param period the month to total as "yyyy-MM", or null for all time
+     * @return one total per education level
+     */
+    public List<LedgerTotal> totalsByEducationLevel(String period) {
+        return aggregate(List.of(Aggregation.match(forPeriod(period)),
+                Aggregation.project("lessons", "amount")
+                        .and(ConditionalOperators.ifNull("educationLevel").then("unknown")).as("educationLevel"),
+                Aggregation.group("educationLevel")
+                        .count().as("invoices")
+                        .sum("lessons").as("lessons")
+                        .sum("amount").as("amount")));
+    }
+
+    private List<LedgerTotal> aggregate(List<AggregationOperation> stages, String... extraFields) {
+        List<AggregationOperation> pipeline = new ArrayList<>(stages);
+        // Expose the group key as "key" and order the groups by it
+        pipeline.add(Aggregation.project("invoices", "lessons", "amount").andInclude(extraFields)
+                .and("key").previousOperation());
+        pipeline.add(Aggregation.sort(Sort.Direction.ASC, "key"));
+        return mongoTemplate.aggregate(Aggregation.newAggregation(InvoiceRecord.class, pipeline), LedgerTotal.class)
+                .getMappedResults();
+    }
+
+    private static Criteria forPeriod(String period) {
+        if (period == null || period.isBlank()) {
+            return new Criteria();
+        }
+        // Rejects anything that is not yyyy-MM
+        return Criteria.where("period").is(YearMonth.parse(period).toString());
+    }
+
+    private static String studentId(Invoice invoice) {
+        String studentId = invoice.studentId();
+        if (studentId == null || studentId.isBlank()) {
+            throw new IllegalArgumentException("Invoice has no student ID");
+        }
+        return studentId;
+    }
+
+    private static String period(Invoice invoice) {
+        return YearMonth.of(invoice.year(), Month.valueOf(invoice.month())).toString();
+    }
+
+    private static String toLedgerKey(String filePath) {
+        return filePath.replace('\\', '/');
+    }
+}
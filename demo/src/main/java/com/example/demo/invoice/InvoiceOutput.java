@@ -0,0 +1,24 @@
+package com.example.demo.invoice;
+
+/**
+ * How an invoice PDF is written. Selected with the {@code invoice.output} property.
+ */
+public enum InvoiceOutput {
+
+    /**
+     * iText's default writer settings with the full-resolution images.
+     */
+    STANDARD,
+
+    /**
+     * Object and cross-reference streams at the highest compression level, with the images
+     * downsampled to the resolution they are printed at. The smallest files.
+     */
+    COMPRESSED,
+
+    /**
+     * As {@link #COMPRESSED}, written as PDF/A-2b for archiving: the font is embedded as a subset
+     * and the document carries an sRGB output intent.
+     */
+    PDF_A
+}
@@ -0,0 +1,40 @@
+package com.example.demo.invoice;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * A ledger entry for an issued invoice, holding the figures that were printed on the PDF.
+ * Entries are keyed by student and month, so issuing a student's invoice for a month again replaces its entry.
+ *
+ * @param id the student ID and the month billed, e.g. "42/2025-05"
+ * @param filePath the path of the stored PDF relative to the storage directory, e.g. "2025/05/Alice.pdf"
+ * @param studentId the ID of the student billed
+ * @param name the name of the student billed
+ * @param educationLevel the student's education level, null if the invoice was not issued from a student record
+ * @param period the month billed as "yyyy-MM"
+ * @param lessons the number of lessons billed
+ * @param rate the rate per lesson in SGD
+ * @param amount the amount billed in SGD
+ * @param issuedAt when the invoice was issued
+ * @param fingerprint a digest of everything that went into the PDF; an invoice with the same fingerprint
+ *                    renders to the same PDF
+ */
+@Document(collection = "invoices")
+@CompoundIndex(name = "period_studentId", def = "{'period': 1, 'studentId': 1}")
+public record InvoiceRecord(@Id String id,
+                            @Indexed String filePath,
+                            String studentId,
+                            String name,
+                            @Indexed String educationLevel,
+                            String period,
+                            int lessons,
+                            double rate,
+                            double amount,
+                            Instant issuedAt,
+                            String fingerprint) {
+}
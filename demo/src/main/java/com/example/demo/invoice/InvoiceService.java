@@ -1,27 +1,35 @@
 package com.example.demo.invoice;
 
-import com.itextpdf.io.image.ImageDataFactory;
-import com.itextpdf.kernel.colors.ColorConstants;
-import com.itextpdf.kernel.geom.PageSize;
-import com.itextpdf.kernel.pdf.*;
-import com.itextpdf.layout.*;
-import com.itextpdf.layout.element.*;
-import com.itextpdf.layout.borders.*;
-import com.itextpdf.layout.properties.TextAlignment;
-import com.itextpdf.layout.properties.UnitValue;
-import org.springframework.core.io.ClassPathResource;
-import java.io.*;
+import com.example.demo.student.Student;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import java.io.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalAdjusters;
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.Map;
+import java.util.Objects;
 
 
 @Service
 public class InvoiceService {
 
+    @Autowired
+    private InvoiceTemplate invoiceTemplate;
+
+    // Replaced by the application's registry when running in Spring
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    // An invoice with the logo is about 430 KB; starting there spares the buffer a dozen doublings and copies
+    private static final int RENDER_BUFFER_BYTES = 512 * 1024;
+
     /**
      * Generates an invoice in PDF format for a given student based on the provided parameters.
      *
@@ -34,18 +42,92 @@ public class InvoiceService {
      * @throws IOException If an error occurs during the PDF generation process.
      */
     public byte[] generateInvoice(Long studentId, String name, double rate, String date, String day) throws IOException {
+        return render(invoiceFor(studentId, name, rate, date, day));
+    }
+
+    /**
+     * Works out the invoice for a student billed once per given day of the week in the month.
+     *
+     * @param studentId The unique identifier of the student.
+     * @param name The name of the student.
+     * @param rate The monetary rate charged for each lesson.
+     * @param date The date string representing the target month and year, formatted as ISO-8601 (e.g., "yyyy-MM-dd").
+     * @param day The day of the week used to calculate the number of lessons (e.g., "Monday").
+     * @return the invoice, ready to be rendered
+     */
+    public Invoice invoiceFor(Long studentId, String name, double rate, String date, String day) {
         Month month = getMonth(date); // returns Month
         int year = getYear(date);
         int numberOfLessons = countDaysInMonth(year, month, day);
 
-        return toPDF(
-                studentId,
-                name,
-                rate,
-                month.toString(), // pass String to PDF
+        return new Invoice(Objects.toString(studentId, null), name, rate, month.toString(), year, numberOfLessons);
+    }
+
+    /**
+     * Works out the invoice for a given number of lessons.
+     *
+     * @param studentId The unique identifier of the student.
+     * @param name The name of the student.
+     * @param rate The monetary rate charged for each lesson.
+     * @param date The date string representing the target month and year, formatted as ISO-8601 (e.g., "yyyy-MM-dd").
+     * @param numberOfLessons The number of lessons to bill.
+     * @return the invoice, ready to be rendered
+     */
+    public Invoice invoiceFor(Long studentId, String name, double rate, String date, int numberOfLessons) {
+        return new Invoice(Objects.toString(studentId, null), name, rate, getMonth(date).toString(), getYear(date), numberOfLessons);
+    }
+
+    /**
+     * Generates an invoice for a stored student, taking the rate and lesson days from the student record.
+     *
+     * @param student the student to bill
+     * @param date the date string representing the target month and year, formatted as ISO-8601 (e.g., "yyyy-MM-dd")
+     * @return a byte array representing the generated PDF invoice
+     * @throws IOException if an error occurs during the PDF generation process
+     */
+    public byte[] generateInvoice(Student student, String date) throws IOException {
+        return render(invoiceFor(student, date));
+    }
+
+    /**
+     * Works out the invoice for a stored student, taking the rate and lesson days from the student record.
+     *
+     * @param student the student to bill
+     * @param date the date string representing the target month and year, formatted as ISO-8601 (e.g., "yyyy-MM-dd")
+     * @return the invoice, ready to be rendered
+     */
+    public Invoice invoiceFor(Student student, String date) {
+        Month month = getMonth(date);
+        int year = getYear(date);
+
+        return new Invoice(
+                student.getId(),
+                student.getName(),
+                student.getRatePerLesson(),
+                month.toString(),
                 year,
-                numberOfLessons
-        );
+                countLessons(student, year, month));
+    }
+
+    /**
+     * Counts the lessons a student has in the given month. Each entry in the student's
+     * {@code days} map is a weekday and the number of lessons held on it, e.g. {"Monday": 2}.
+     *
+     * @param student the student whose lesson days are counted
+     * @param year the year of the month
+     * @param month the month to count lessons in
+     * @return the total number of lessons in the month
+     */
+    public int countLessons(Student student, int year, Month month) {
+        if (student.getDays() == null) {
+            return 0;
+        }
+        int lessons = 0;
+        for (Map.Entry<String, Integer> entry : student.getDays().entrySet()) {
+            int perDay = entry.getValue() == null ? 0 : entry.getValue();
+            lessons += countDaysInMonth(year, month, entry.getKey()) * perDay;
+        }
+        return lessons;
     }
 
     /**
@@ -61,86 +143,76 @@ public class InvoiceService {
      * @throws IOException if an error occurs while reading resource files or writing the PDF output
      */
     public byte[] toPDF(Long studentId, String name, double rate, String month, int year, int numberOfLessons) throws IOException {
-        double amount = rate * numberOfLessons;
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        PdfWriter writer = new PdfWriter(out);
-        PdfDocument pdfDoc = new PdfDocument(writer);
-        Document document = new Document(pdfDoc, PageSize.A4);
-        document.setMargins(30, 30, 30, 30);
-
-        // Logo
-        InputStream logoStream = new ClassPathResource("images/logo.png").getInputStream();
-        byte[] logoBytes = logoStream.readAllBytes();
-        Image logo = new Image(ImageDataFactory.create(logoBytes));
-        logo.setHeight(80);
-        logo.setAutoScale(true);
-
-        // Title section
-        Paragraph title = new Paragraph("OFFICIAL INVOICE\nFOR " + month)
-                .setFontSize(16)
-                .setTextAlignment(TextAlignment.RIGHT);
-        Paragraph invoiceDetails = new Paragraph(String.format(
-                "# %d/TJLC\nDate: 2 %s %d\nDue Date: 15 %s %d", year, month, year, month, year))
-                .setFontSize(10)
-                .setTextAlignment(TextAlignment.RIGHT);
-        Paragraph balanceDue = new Paragraph("Balance Due: SGD " + String.format("%.2f", amount))
-                .setBold()
-                .setTextAlignment(TextAlignment.RIGHT);
-
-        // Header table (logo left, title right)
-        Table headerTable = new Table(UnitValue.createPercentArray(new float[]{1, 2})).useAllAvailableWidth();
-        headerTable.addCell(new Cell().add(logo).setBorder(Border.NO_BORDER));
-        Cell rightCell = new Cell().add(title).add(invoiceDetails).add(balanceDue);
-        rightCell.setBorder(Border.NO_BORDER);
-        headerTable.addCell(rightCell);
-        document.add(headerTable);
-
-        // Bill To
-        document.add(new Paragraph("\nBill To:\n").setBold());
-        document.add(new Paragraph(name).setBold());
-
-        // Item Table
-        Table itemTable = new Table(UnitValue.createPercentArray(new float[]{4, 1, 2, 2})).useAllAvailableWidth();
-        itemTable.addHeaderCell(createHeaderCell("Item"));
-        itemTable.addHeaderCell(createHeaderCell("Quantity"));
-        itemTable.addHeaderCell(createHeaderCell("Rate"));
-        itemTable.addHeaderCell(createHeaderCell("Amount"));
-
-        itemTable.addCell(String.format("%s (%d Lessons)", month, numberOfLessons));
-        itemTable.addCell(String.format("%d", numberOfLessons));
-        itemTable.addCell(String.format("SGD %.2f", rate));
-        itemTable.addCell(String.format("SGD %.2f", amount));
-
-        document.add(itemTable);
-
-        // Payment Terms
-        Paragraph terms = new Paragraph("\nTerms:\nPayment Details\n\n" +
-                "1) OCBC Current Account 609-300942-001\n" +
-                "Or\n" +
-                "2) PayNOW to TUTORJOHN\nUEN no: 53373300J\n\n" +
-                "Please send us a screenshot once the payment is made. Thank you! 😊")
-                .setFontSize(10);
-
-        // QR Code Image
-        InputStream qrStream = new ClassPathResource("images/paynow_qr.png").getInputStream();
-        byte[] qrBytes = qrStream.readAllBytes();
-        Image qr = new Image(ImageDataFactory.create(qrBytes));
-        qr.setWidth(100);
-
-        // Bottom table (terms left, QR right)
-        Table bottomTable = new Table(UnitValue.createPercentArray(new float[]{3, 1})).useAllAvailableWidth();
-        bottomTable.addCell(new Cell().add(terms).setBorder(Border.NO_BORDER));
-        bottomTable.addCell(new Cell().add(new Paragraph(String.format("Total: SGD %.2f", amount)).setBold()).add(qr).setBorder(Border.NO_BORDER));
-
-        document.add(bottomTable);
-
-        document.close();
+        return render(new Invoice(Objects.toString(studentId, null), name, rate, month, year, numberOfLessons));
+    }
+
+    /**
+     * Renders an invoice as a PDF document.
+     *
+     * @param invoice the invoice to render
+     * @return a byte array representing the generated PDF document
+     */
+    public byte[] render(Invoice invoice) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(RENDER_BUFFER_BYTES);
+        render(invoice, out);
         return out.toByteArray();
     }
 
-    private Cell createHeaderCell(String text) {
-        return new Cell().add(new Paragraph(text).setBold()).setBackgroundColor(ColorConstants.LIGHT_GRAY);
+    /**
+     * Renders an invoice straight to a stream, such as a file being written, without holding the PDF
+     * in memory. The stream is closed once the document has been written.
+     *
+     * @param invoice the invoice to render
+     * @param out the stream the PDF is written to
+     */
+    public void render(Invoice invoice, OutputStream out) {
+        CountingOutputStream counted = new CountingOutputStream(out);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            invoiceTemplate.render(invoice, counted);
+        } finally {
+            sample.stop(meterRegistry.timer("invoice.render"));
+        }
+        recordSize(counted.count);
     }
+
+    private void recordSize(long size) {
+        DistributionSummary.builder("invoice.size")
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .record(size);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Returns the output mode invoices are rendered with, which is part of what makes two renders identical.
+     *
+     * @return the configured output mode
+     */
+    public InvoiceOutput getOutput() {
+        return invoiceTemplate.getOutput();
+    }
+
     private Month getMonth(String date) {
         LocalDate parsedDate = LocalDate.parse(date, DateTimeFormatter.ISO_LOCAL_DATE);
         return parsedDate.getMonth();
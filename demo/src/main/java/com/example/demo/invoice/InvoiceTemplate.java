@@ -0,0 +1,357 @@
+package com.example.demo.invoice;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.colors.ColorConstants;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.CompressionConstants;
+import com.itextpdf.kernel.pdf.PdfAConformanceLevel;
+import com.itextpdf.kernel.pdf.PdfDate;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfObject;
+import com.itextpdf.kernel.pdf.PdfOutputIntent;
+import com.itextpdf.kernel.pdf.PdfString;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.WriterProperties;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.borders.Border;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Image;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.properties.TextAlignment;
+import com.itextpdf.layout.properties.UnitValue;
+import com.itextpdf.pdfa.PdfADocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.regex.Pattern;
+
+/**
+ * The static part of the invoice layout, loaded once at startup.
+ * The logo and PayNow QR code are read from the classpath and decoded a single time,
+ * so rendering an invoice only has to lay out its variable fields around them.
+ * iText layout elements belong to the document they are added to, which is why the
+ * elements themselves are still built per invoice from the cached data below.
+ * Each image is also kept downsampled to the size it is printed at, for the compact
+ * {@link InvoiceOutput output modes}.
+ * Rendering is deterministic: the same invoice always renders to the same bytes, so that
+ * re-rendering an unchanged invoice stores no new content.
+ */
+@Component
+public class InvoiceTemplate {
+
+    /**
+     * Identifies the layout. Bump it whenever a change to this class alters the rendered PDF,
+     * so that invoices stored with the previous layout are rendered again instead of reused.
+     */
+    public static final int VERSION = 3;
+
+    private static final float[] HEADER_COLUMNS = {1, 2};
+    private static final float[] ITEM_COLUMNS = {4, 1, 2, 2};
+    private static final float[] BOTTOM_COLUMNS = {3, 1};
+    private static final String[] ITEM_HEADERS = {"Item", "Quantity", "Rate", "Amount"};
+
+    // Printed sizes of the images in points, and the resolution they are downsampled to
+    private static final float LOGO_HEIGHT = 80;
+    private static final float QR_WIDTH = 100;
+    private static final int IMAGE_DPI = 150;
+
+    // PDF/A requires embedded fonts; PDFBox ships Liberation Sans, a metric-compatible Helvetica
+    private static final String PDF_A_FONT = "org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf";
+
+    private static final String TERMS = "\nTerms:\nPayment Details\n\n" +
+            "1) OCBC Current Account 609-300942-001\n" +
+            "Or\n" +
+            "2) PayNOW to TUTORJOHN\nUEN no: 53373300J\n\n" +
+            "Please send us a screenshot once the payment is made. Thank you! 😊";
+
+    private final ImageData logo;
+    private final ImageData payNowQr;
+    private final ImageData printLogo;
+    private final ImageData printPayNowQr;
+    private final FontProgram pdfAFont;
+    private final byte[] srgbProfile;
+
+    @Value("${invoice.output:COMPRESSED}")
+    private InvoiceOutput output = InvoiceOutput.COMPRESSED;
+
+    /**
+     * Loads and decodes the static image assets.
+     *
+     * @throws IOException if an image cannot be read from the classpath
+     */
+    public InvoiceTemplate() throws IOException {
+        byte[] logoPng = readResource("images/logo.png");
+        byte[] payNowQrPng = readResource("images/paynow_qr.png");
+        this.logo = ImageDataFactory.create(logoPng);
+        this.payNowQr = ImageDataFactory.create(payNowQrPng);
+        this.printLogo = downsample(logoPng, 0, LOGO_HEIGHT);
+        this.printPayNowQr = downsample(payNowQrPng, QR_WIDTH, 0);
+        this.pdfAFont = FontProgramFactory.createFont(readResource(PDF_A_FONT));
+        this.srgbProfile = ICC_Profile.getInstance(ColorSpace.CS_sRGB).getData();
+    }
+
+    /**
+     * Returns the output mode invoices are rendered with by default.
+     *
+     * @return the configured output mode
+     */
+    public InvoiceOutput getOutput() {
+        return output;
+    }
+
+    /**
+     * Renders the invoice as a single page PDF to the given stream in the configured output mode.
+     * The stream is closed once the document has been written.
+     *
+     * @param invoice the variable fields of the invoice
+     * @param out the stream the PDF is written to
+     */
+    public void render(Invoice invoice, OutputStream out) {
+        render(invoice, out, output);
+    }
+
+    /**
+     * Renders the invoice as a single page PDF to the given stream.
+     * The stream is closed once the document has been written.
+     *
+     * @param invoice the variable fields of the invoice
+     * @param out the stream the PDF is written to
+     * @param output how the PDF is written
+     */
+    public void render(Invoice invoice, OutputStream out, InvoiceOutput output) {
+        String month = invoice.month();
+        int year = invoice.year();
+        double amount = invoice.amount();
+        boolean compact = output != InvoiceOutput.STANDARD;
+
+        PdfDocument pdfDoc = newDocument(out, output, documentId(invoice, output));
+        pinDates(pdfDoc, invoice);
+        Document document = new Document(pdfDoc, PageSize.A4);
+        document.setMargins(30, 30, 30, 30);
+        if (output == InvoiceOutput.PDF_A) {
+            // Embedded as a subset of the glyphs actually used
+            document.setFont(PdfFontFactory.createFont(pdfAFont, PdfEncodings.IDENTITY_H,
+                    PdfFontFactory.EmbeddingStrategy.FORCE_EMBEDDED));
+        }
+
+        // Header table (logo left, title right)
+        Image logoImage = new Image(compact ? printLogo : logo);
+        logoImage.setHeight(LOGO_HEIGHT);
+        logoImage.setAutoScale(true);
+
+        Paragraph title = new Paragraph("OFFICIAL INVOICE\nFOR " + month)
+                .setFontSize(16)
+                .setTextAlignment(TextAlignment.RIGHT);
+        Paragraph invoiceDetails = new Paragraph(String.format(
+                "# %d/TJLC\nDate: 2 %s %d\nDue Date: 15 %s %d", year, month, year, month, year))
+                .setFontSize(10)
+                .setTextAlignment(TextAlignment.RIGHT);
+        Paragraph balanceDue = new Paragraph("Balance Due: SGD " + String.format("%.2f", amount))
+                .setBold()
+                .setTextAlignment(TextAlignment.RIGHT);
+
+        Table headerTable = new Table(UnitValue.createPercentArray(HEADER_COLUMNS)).useAllAvailableWidth();
+        headerTable.addCell(new Cell().add(logoImage).setBorder(Border.NO_BORDER));
+        headerTable.addCell(new Cell().add(title).add(invoiceDetails).add(balanceDue).setBorder(Border.NO_BORDER));
+        document.add(headerTable);
+
+        // Bill To
+        document.add(new Paragraph("\nBill To:\n").setBold());
+        document.add(new Paragraph(invoice.name()).setBold());
+
+        // Item Table
+        Table itemTable = new Table(UnitValue.createPercentArray(ITEM_COLUMNS)).useAllAvailableWidth();
+        for (String header : ITEM_HEADERS) {
+            itemTable.addHeaderCell(createHeaderCell(header));
+        }
+        itemTable.addCell(String.format("%s (%d Lessons)", month, invoice.numberOfLessons()));
+        itemTable.addCell(String.format("%d", invoice.numberOfLessons()));
+        itemTable.addCell(String.format("SGD %.2f", invoice.rate()));
+        itemTable.addCell(String.format("SGD %.2f", amount));
+        document.add(itemTable);
+
+        // Bottom table (terms left, QR right)
+        Image qrImage = new Image(compact ? printPayNowQr : payNowQr);
+        qrImage.setWidth(QR_WIDTH);
+
+        Table bottomTable = new Table(UnitValue.createPercentArray(BOTTOM_COLUMNS)).useAllAvailableWidth();
+        bottomTable.addCell(new Cell().add(new Paragraph(TERMS).setFontSize(10)).setBorder(Border.NO_BORDER));
+        bottomTable.addCell(new Cell()
+                .add(new Paragraph(String.format("Total: SGD %.2f", amount)).setBold())
+                .add(qrImage)
+                .setBorder(Border.NO_BORDER));
+        document.add(bottomTable);
+
+        document.close();
+    }
+
+    private Cell createHeaderCell(String text) {
+        return new Cell().add(new Paragraph(text).setBold()).setBackgroundColor(ColorConstants.LIGHT_GRAY);
+    }
+
+    private PdfDocument newDocument(OutputStream out, InvoiceOutput output, PdfString documentId) {
+        // iText would otherwise make up a new ID for every document
+        WriterProperties properties = new WriterProperties()
+                .setInitialDocumentId(documentId)
+                .setModifiedDocumentId(documentId);
+        if (output == InvoiceOutput.STANDARD) {
+            return new PdfDocument(new PdfWriter(out, properties));
+        }
+
+        // Full compression packs the objects and the cross-reference table into compressed streams
+        properties.setFullCompressionMode(true)
+                .setCompressionLevel(CompressionConstants.BEST_COMPRESSION);
+        if (output == InvoiceOutput.PDF_A) {
+            return new TaggedSubsetPdfADocument(new PdfWriter(out, properties), PdfAConformanceLevel.PDF_A_2B,
+                    new PdfOutputIntent("Custom", "", "http://www.color.org", "sRGB IEC61966-2.1",
+                            new ByteArrayInputStream(srgbProfile)), subsetTag(documentId));
+        }
+        return new PdfDocument(new PdfWriter(out, properties));
+    }
+
+    /**
+     * Derives the document ID from everything that is printed on the invoice, in place of iText's
+     * time-based one. The student ID and education level are left out, as the ledger
+     * {@link InvoiceLedgerService#fingerprint fingerprint} has them only to tell its entries apart.
+     */
+    private static PdfString documentId(Invoice invoice, InvoiceOutput output) {
+        String inputs = String.join("\u0000",
+                String.valueOf(VERSION),
+                output.name(),
+                invoice.name(),
+                Double.toString(invoice.rate()),
+                invoice.month(),
+                Integer.toString(invoice.year()),
+                Integer.toString(invoice.numberOfLessons()));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(inputs.getBytes(StandardCharsets.UTF_8));
+            // A PDF file identifier is 16 bytes
+            return new PdfString(Arrays.copyOf(digest, 16)).setHexWriting(true);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Replaces the creation and modification dates, which iText sets to the current time, with the
+     * date printed on the invoice. The XMP metadata of PDF/A copies them when the document is closed.
+     */
+    private static void pinDates(PdfDocument pdfDoc, Invoice invoice) {
+        LocalDate issued = LocalDate.of(invoice.year(), Month.valueOf(invoice.month()), 2);
+        PdfString date = new PdfDate(GregorianCalendar.from(issued.atStartOfDay(ZoneOffset.UTC))).getPdfObject();
+        PdfDictionary info = pdfDoc.getTrailer().getAsDictionary(PdfName.Info);
+        info.put(PdfName.CreationDate, date);
+        info.put(PdfName.ModDate, date);
+    }
+
+    /**
+     * Spells the first six bytes of the document ID as capital letters, for a font subset tag.
+     */
+    private static String subsetTag(PdfString documentId) {
+        byte[] id = documentId.getValueBytes();
+        StringBuilder tag = new StringBuilder(6);
+        for (int i = 0; i < 6; i++) {
+            tag.append((char) ('A' + (id[i] & 0xff) % 26));
+        }
+        return tag.toString();
+    }
+
+    /**
+     * A PDF/A document that writes its embedded font subsets under a given tag. iText prefixes the
+     * name of every subset with six random capitals, which would make each render differ; this
+     * swaps them for the tag as the font dictionaries are written.
+     */
+    private static final class TaggedSubsetPdfADocument extends PdfADocument {
+
+        private static final Pattern SUBSET_NAME = Pattern.compile("[A-Z]{6}\\+.+");
+
+        private final String subsetTag;
+
+        TaggedSubsetPdfADocument(PdfWriter writer, PdfAConformanceLevel conformanceLevel,
+                                 PdfOutputIntent outputIntent, String subsetTag) {
+            super(writer, conformanceLevel, outputIntent);
+            this.subsetTag = subsetTag;
+        }
+
+        @Override
+        protected void flushObject(PdfObject pdfObject, boolean canBeInObjStm) throws IOException {
+            if (pdfObject instanceof PdfDictionary dictionary) {
+                // BaseFont of the font and its descendant, FontName of the font descriptor
+                retag(dictionary, PdfName.BaseFont);
+                retag(dictionary, PdfName.FontName);
+            }
+            super.flushObject(pdfObject, canBeInObjStm);
+        }
+
+        private void retag(PdfDictionary dictionary, PdfName key) {
+            PdfName name = dictionary.getAsName(key);
+            if (name != null && SUBSET_NAME.matcher(name.getValue()).matches()) {
+                dictionary.put(key, new PdfName(subsetTag + name.getValue().substring(6)));
+            }
+        }
+    }
+
+    /**
+     * Scales an image down to {@link #IMAGE_DPI} at the size it is printed at.
+     * Either printed dimension may be 0, in which case it follows from the other one.
+     */
+    private static ImageData downsample(byte[] png, float printedWidth, float printedHeight) throws IOException {
+        BufferedImage source = ImageIO.read(new ByteArrayInputStream(png));
+        double scale = printedWidth > 0
+                ? printedWidth / 72 * IMAGE_DPI / source.getWidth()
+                : printedHeight / 72 * IMAGE_DPI / source.getHeight();
+        if (scale >= 1) {
+            return ImageDataFactory.create(png);
+        }
+
+        int width = (int) Math.round(source.getWidth() * scale);
+        int height = (int) Math.round(source.getHeight() * scale);
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        // Re-encoded as PNG so iText can copy the compressed data into each PDF as it is
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(scaled, "png", out);
+        return ImageDataFactory.create(out.toByteArray());
+    }
+
+    private static byte[] readResource(String location) throws IOException {
+        try (InputStream in = new ClassPathResource(location).getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+}
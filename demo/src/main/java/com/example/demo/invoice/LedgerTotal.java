@@ -0,0 +1,16 @@
+package com.example.demo.invoice;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Totals over a group of ledger entries.
+ *
+ * @param key what the entries are grouped by: a period such as "2025-05", a student ID or an education level
+ * @param name the student's name when grouped by student, otherwise null
+ * @param invoices the number of invoices
+ * @param lessons the number of lessons billed
+ * @param amount the amount billed in SGD
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record LedgerTotal(String key, String name, long invoices, long lessons, double amount) {
+}
@@ -0,0 +1,55 @@
+package com.example.demo.search;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/search")
+@Tag(name = "Search Controller", description = "Full-text search over the stored invoices")
+public class SearchController {
+
+    static final int MAX_LIMIT = 200;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    /**
+     * Handles the HTTP GET request to search the stored invoices by file name and text.
+     *
+     * @param q the query, e.g. {@code alice 2025}; all words must match unless joined with {@code |}
+     * @param limit the maximum number of hits to return, at most {@value #MAX_LIMIT}
+     * @return ResponseEntity containing the matching {@link SearchHit}s, best first, or an error message
+     *         with the appropriate HTTP status
+     */
+    @Operation(summary = "Search invoices", description = "Finds stored invoices whose file name or text matches the query")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Search completed"),
+            @ApiResponse(responseCode = "400", description = "Empty query or invalid limit"),
+            @ApiResponse(responseCode = "500", description = "Server error while reading the search index")
+    })
+    @GetMapping
+    public ResponseEntity<?> search(@RequestParam String q,
+                                    @RequestParam(defaultValue = "20") int limit) {
+        if (q.isBlank() || limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Query must not be empty and limit must be between 1 and " + MAX_LIMIT);
+        }
+        try {
+            return ResponseEntity.ok(searchIndexService.search(q, limit));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error searching invoices: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.demo.search;
+
+/**
+ * A stored invoice matching a search.
+ *
+ * @param path the file's path relative to the storage directory, as accepted by {@code /api/storage/view}
+ * @param name the file name
+ * @param lastModified when the file was last written, in epoch milliseconds
+ * @param score how well the invoice matches; higher is better
+ */
+public record SearchHit(String path, String name, long lastModified, float score) {
+}
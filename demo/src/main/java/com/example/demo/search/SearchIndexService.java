@@ -0,0 +1,377 @@
+package com.example.demo.search;
+
+import com.example.demo.storage.StorageEvent;
+import com.example.demo.storage.StorageService;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * A full-text index over the stored invoice PDFs, kept on disk in a hidden folder under the storage root.
+ * On startup the index is reconciled with the storage directory: new and changed PDFs are extracted
+ * with PDFBox on one worker per core, and PDFs that are gone are dropped; PDFs packed into a month
+ * archive keep the entries they were indexed with as files. After that it follows the
+ * {@link StorageEvent}s published by {@link StorageService}, so each saved or deleted invoice is
+ * re-indexed on its own; events are applied one at a time in the order they were published, so a
+ * delete is never overtaken by the extraction of an earlier save. The reconcile's changes go through the
+ * same queue once extracted. Searches run against an in-memory view of the index that is refreshed after
+ * every event, and once at the end of the reconcile; the index is committed to disk every few seconds
+ * while it is changing.
+ */
+@Service
+public class SearchIndexService implements Closeable {
+
+    static final String INDEX_FOLDER = ".search-index";
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndexService.class);
+
+    private static final String PATH = "path";
+    private static final String NAME = "name";
+    private static final String CONTENT = "content";
+    private static final String MODIFIED = "modified";
+    private static final String SIZE = "size";
+    private static final long COMMIT_INTERVAL_SECONDS = 5;
+
+    private final StorageService storageService;
+    private final Path storageLocation;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final ExecutorService extractors = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new CustomizableThreadFactory("search-extract-"));
+    private final ExecutorService updates = Executors.newSingleThreadExecutor(
+            new CustomizableThreadFactory("search-update-"));
+    private final ScheduledExecutorService committer = Executors.newSingleThreadScheduledExecutor(
+            new CustomizableThreadFactory("search-commit-"));
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    // A PDF's index document, and the version of the file it was extracted from
+    private record Extracted(Document doc, long version) {
+    }
+
+    public SearchIndexService(StorageService storageService) throws IOException {
+        this.storageService = storageService;
+        this.storageLocation = storageService.getStorageLocation();
+        this.writer = new IndexWriter(FSDirectory.open(storageLocation.resolve(INDEX_FOLDER)),
+                new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searcherManager = new SearcherManager(writer, null);
+        committer.scheduleWithFixedDelay(this::commitIfChanged,
+                COMMIT_INTERVAL_SECONDS, COMMIT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void reconcileOnStartup() {
+        Thread reconciler = new Thread(() -> {
+            try {
+                reconcile();
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to reconcile the search index with the storage directory", e);
+            }
+        }, "search-reconcile");
+        reconciler.setDaemon(true);
+        reconciler.start();
+    }
+
+    /**
+     * Brings the index in line with the storage directory: indexes PDFs that are new or changed since
+     * they were indexed, in parallel, and removes PDFs that no longer exist. The text is extracted in
+     * parallel, but the index is only changed on the thread that applies the storage events, where each
+     * change is checked against the file again: a PDF deleted or rewritten meanwhile is left to its event.
+     *
+     * @return the number of PDFs that were (re-)indexed
+     * @throws IOException if the storage directory cannot be walked
+     */
+    public int reconcile() throws IOException {
+        Map<String, Long> indexed = indexedVersions();
+
+        Map<Path, Future<Extracted>> pending = new HashMap<>();
+        try (Stream<Path> files = Files.walk(storageLocation)) {
+            for (Path file : (Iterable<Path>) files.filter(this::isIndexable)::iterator) {
+                String path = relative(file);
+                Long version = indexed.remove(path);
+                if (version == null || version != version(file)) {
+                    pending.put(file, extractors.submit(() -> extract(file)));
+                }
+            }
+        }
+
+        List<Future<?>> applied = new ArrayList<>();
+        for (Map.Entry<Path, Future<Extracted>> extraction : pending.entrySet()) {
+            try {
+                Extracted extracted = extraction.getValue().get();
+                if (extracted != null) {
+                    applied.add(updates.submit(() -> {
+                        apply(extraction.getKey(), extracted);
+                        return null;
+                    }));
+                }
+            } catch (Exception e) {
+                log.warn("Failed to index a stored invoice", e);
+            }
+        }
+        applied.add(updates.submit(() -> {
+            // Gone unless saved again since the walk, or packed into a month archive, which still stores it
+            indexed.keySet().removeIf(path -> Files.exists(storageLocation.resolve(path))
+                    || storageService.exists(path));
+            for (String missing : indexed.keySet()) {
+                writer.deleteDocuments(new Term(PATH, missing));
+            }
+            return null;
+        }));
+        for (Future<?> future : applied) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                log.warn("Failed to reconcile a stored invoice", e);
+            }
+        }
+
+        writer.commit();
+        searcherManager.maybeRefresh();
+        log.info("Search index reconciled: {} indexed, {} removed", pending.size(), indexed.size());
+        return pending.size();
+    }
+
+    @EventListener
+    void storageChanged(StorageEvent event) {
+        Path file = storageLocation.resolve(event.path());
+        updates.execute(() -> {
+            try {
+                if (event.type() == StorageEvent.Type.WRITTEN) {
+                    index(file);
+                } else {
+                    // A deleted folder takes every invoice below it along
+                    String path = relative(file);
+                    writer.deleteDocuments(new TermQuery(new Term(PATH, path)), new PrefixQuery(new Term(PATH, path + "/")));
+                    changed();
+                }
+            } catch (IOException | UncheckedIOException e) {
+                log.warn("Failed to update the search index for {}", file, e);
+            }
+        });
+    }
+
+    /**
+     * Finds stored invoices whose file name or text matches a query. All words must match by default;
+     * the query also supports quoted phrases, {@code |} for OR, {@code -} to exclude a word and {@code *} as a suffix wildcard.
+     *
+     * @param query the query, e.g. "alice 2025" or "\"sec 3\" -chemistry"
+     * @param limit the maximum number of hits to return
+     * @return the best matching invoices, best first
+     * @throws IOException if the index cannot be read
+     */
+    public List<SearchHit> search(String query, int limit) throws IOException {
+        SimpleQueryParser parser = new SimpleQueryParser(analyzer, Map.of(NAME, 2f, CONTENT, 1f));
+        parser.setDefaultOperator(BooleanClause.Occur.MUST);
+        Query parsed = parser.parse(query);
+        if (parsed == null) {
+            // Nothing searchable left after analysis, e.g. only punctuation
+            parsed = new MatchAllDocsQuery();
+        }
+
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            TopDocs top = searcher.search(parsed, limit);
+            List<SearchHit> hits = new ArrayList<>(top.scoreDocs.length);
+            for (ScoreDoc scoreDoc : top.scoreDocs) {
+                Document doc = searcher.storedFields().document(scoreDoc.doc);
+                hits.add(new SearchHit(doc.get(PATH), doc.get(NAME),
+                        doc.getField(MODIFIED).numericValue().longValue(), scoreDoc.score));
+            }
+            return hits;
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    private void index(Path file) {
+        try {
+            Extracted extracted = extract(file);
+            if (extracted != null) {
+                writer.updateDocument(new Term(PATH, relative(file)), extracted.doc());
+                changed();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Runs on the update thread, in order with the storage events
+    private void apply(Path file, Extracted extracted) throws IOException {
+        try {
+            if (version(file) != extracted.version()) {
+                // Rewritten since it was extracted; the event of that save indexes it
+                return;
+            }
+        } catch (NoSuchFileException e) {
+            // Deleted since it was extracted; the delete event has removed it
+            return;
+        }
+        writer.updateDocument(new Term(PATH, relative(file)), extracted.doc());
+        // Searchers are refreshed once, when the reconcile is done
+        dirty.set(true);
+    }
+
+    /**
+     * Reads a PDF's text into an index document.
+     *
+     * @return the document, or null if the file is gone
+     */
+    private Extracted extract(Path file) throws IOException {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            String text;
+            try (PDDocument pdf = PDDocument.load(file.toFile())) {
+                text = new PDFTextStripper().getText(pdf);
+            }
+
+            String path = relative(file);
+            Document doc = new Document();
+            doc.add(new StringField(PATH, path, Field.Store.YES));
+            doc.add(new TextField(NAME, stripExtension(file.getFileName().toString()), Field.Store.NO));
+            doc.add(new StoredField(NAME, file.getFileName().toString()));
+            doc.add(new TextField(CONTENT, text, Field.Store.NO));
+            doc.add(new LongPoint(MODIFIED, attrs.lastModifiedTime().toMillis()));
+            doc.add(new StoredField(MODIFIED, attrs.lastModifiedTime().toMillis()));
+            doc.add(new StoredField(SIZE, attrs.size()));
+            return new Extracted(doc, version(attrs.lastModifiedTime().toMillis(), attrs.size()));
+        } catch (NoSuchFileException | FileNotFoundException e) {
+            // Deleted again before it could be indexed; the delete event removes it
+            return null;
+        }
+    }
+
+    private void changed() throws IOException {
+        dirty.set(true);
+        searcherManager.maybeRefresh();
+    }
+
+    private void commitIfChanged() {
+        if (dirty.getAndSet(false)) {
+            try {
+                writer.commit();
+            } catch (IOException | RuntimeException e) {
+                dirty.set(true);
+                log.warn("Failed to commit the search index", e);
+            }
+        }
+    }
+
+    // Path -> modification time and size of the file when it was indexed
+    private Map<String, Long> indexedVersions() throws IOException {
+        Map<String, Long> versions = new HashMap<>();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            for (var leaf : searcher.getIndexReader().leaves()) {
+                var reader = leaf.reader();
+                var liveDocs = reader.getLiveDocs();
+                var storedFields = reader.storedFields();
+                for (int i = 0; i < reader.maxDoc(); i++) {
+                    if (liveDocs == null || liveDocs.get(i)) {
+                        Document doc = storedFields.document(i);
+                        versions.put(doc.get(PATH), version(doc.getField(MODIFIED).numericValue().longValue(),
+                                doc.getField(SIZE).numericValue().longValue()));
+                    }
+                }
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+        return versions;
+    }
+
+    private static long version(Path file) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        return version(attrs.lastModifiedTime().toMillis(), attrs.size());
+    }
+
+    private static long version(long lastModified, long size) {
+        return lastModified * 31 + size;
+    }
+
+    private boolean isIndexable(Path file) {
+        if (!Files.isRegularFile(file) || !file.getFileName().toString().endsWith(".pdf")) {
+            return false;
+        }
+        for (Path name : storageLocation.relativize(file)) {
+            if (name.toString().startsWith(".")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String relative(Path file) {
+        return storageLocation.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    private static String stripExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+    @PreDestroy
+    @Override
+    public void close() throws IOException {
+        committer.shutdownNow();
+        extractors.shutdown();
+        updates.shutdown();
+        try {
+            extractors.awaitTermination(30, TimeUnit.SECONDS);
+            updates.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searcherManager.close();
+        writer.close();
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.demo.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What this node knows about the {@link StorageBackend}, kept in a hidden file, {@code .backend-state},
+ * under the storage root so that it survives restarts. For every key the node has in step with the
+ * backend it records the object's ETag as of then; a key the backend no longer lists but that was
+ * recorded here was deleted by another node, while a local file that was never recorded here has
+ * not been uploaded yet. Uploads and deletes that failed are kept as pending, to be retried by the
+ * next sync. The file is replaced atomically whenever it is saved.
+ * If the file cannot be read, the node starts over with an incomplete state, which stays incomplete:
+ * files found only here are then neither uploaded nor deleted, as there is no telling which they
+ * should be, until the file is removed by hand.
+ */
+class BackendState {
+
+    static final String FILE = ".backend-state";
+
+    private static final int MAGIC = 0x494E5642;
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * A change made here that has not reached the backend yet.
+     */
+    enum Pending {
+        UPLOAD,
+        DELETE
+    }
+
+    private final Path file;
+    private final boolean complete;
+    // Key -> ETag of the object the local file matches
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    private BackendState(Path file, boolean complete) {
+        this.file = file;
+        this.complete = complete;
+    }
+
+    /**
+     * Reads the state of a storage directory. A directory that has never been synced starts out
+     * with an empty, complete state, so that the files already in it are uploaded. If the file cannot
+     * be read, the state starts out empty and incomplete.
+     *
+     * @param storageLocation the storage directory
+     * @return the state
+     */
+    static BackendState load(Path storageLocation) {
+        Path file = storageLocation.resolve(FILE);
+        if (!Files.exists(file)) {
+            return new BackendState(file, true);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a backend state file: " + file);
+            }
+            BackendState state = new BackendState(file, in.readBoolean());
+            for (int i = in.readInt(); i > 0; i--) {
+                state.etags.put(in.readUTF(), in.readUTF());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                state.pending.put(in.readUTF(), Pending.valueOf(in.readUTF()));
+            }
+            return state;
+        } catch (IOException | IllegalArgumentException e) {
+            return new BackendState(file, false);
+        }
+    }
+
+    /**
+     * Tells whether the state was read in full. Without it, a local file that is not recorded may just
+     * as well have been deleted by another node as never been uploaded, so it is left alone.
+     *
+     * @return false if the state file could not be read, then or at an earlier start
+     */
+    boolean complete() {
+        return complete;
+    }
+
+    /**
+     * Returns the ETag a key was last in step with.
+     *
+     * @param key the object's key
+     * @return the ETag, or null if the key is not recorded
+     */
+    String etag(String key) {
+        return etags.get(key);
+    }
+
+    /**
+     * Returns every recorded key with its ETag.
+     *
+     * @return a copy of the recorded ETags
+     */
+    Map<String, String> etags() {
+        return new HashMap<>(etags);
+    }
+
+    /**
+     * Records that the local file of a key matches an object in the backend, and clears any pending change of it.
+     *
+     * @param key the object's key
+     * @param etag the object's ETag
+     */
+    void synced(String key, String etag) {
+        etags.put(key, etag);
+        pending.remove(key);
+    }
+
+    /**
+     * Forgets a key, and every key below it if it is a folder, and clears any pending change of them.
+     *
+     * @param key the key, e.g. "2025/05/Alice.pdf" or "2025/05"
+     */
+    void forget(String key) {
+        etags.keySet().removeIf(recorded -> isAtOrBelow(recorded, key));
+        pending.keySet().removeIf(recorded -> isAtOrBelow(recorded, key));
+    }
+
+    /**
+     * Returns the recorded keys of a file or of the files below a folder.
+     *
+     * @param key the key, e.g. "2025/05/Alice.pdf" or "2025/05"
+     * @return the recorded keys
+     */
+    List<String> keysAt(String key) {
+        return etags.keySet().stream().filter(recorded -> isAtOrBelow(recorded, key)).toList();
+    }
+
+    /**
+     * Records a change that has to be retried, replacing any earlier pending change of the key.
+     *
+     * @param key the object's key
+     * @param change what has to be done
+     */
+    void queue(String key, Pending change) {
+        pending.put(key, change);
+    }
+
+    /**
+     * Returns the change of a key still to be made in the backend.
+     *
+     * @param key the object's key
+     * @return the pending change, or null if there is none
+     */
+    Pending pendingChange(String key) {
+        return pending.get(key);
+    }
+
+    /**
+     * Returns the changes still to be made in the backend.
+     *
+     * @return a copy of the pending changes, by key
+     */
+    Map<String, Pending> pending() {
+        return new HashMap<>(pending);
+    }
+
+    /**
+     * Writes the state to its file, replacing the previous one atomically.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    synchronized void save() throws IOException {
+        Map<String, String> etagsNow = etags();
+        Map<String, Pending> pendingNow = pending();
+        Path temp = file.resolveSibling(FILE + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeBoolean(complete);
+                out.writeInt(etagsNow.size());
+                for (Map.Entry<String, String> entry : etagsNow.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+                out.writeInt(pendingNow.size());
+                for (Map.Entry<String, Pending> entry : pendingNow.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue().name());
+                }
+                out.flush();
+                channel.force(false);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static boolean isAtOrBelow(String recorded, String key) {
+        return key.isEmpty() || recorded.equals(key) || recorded.startsWith(key + "/");
+    }
+}
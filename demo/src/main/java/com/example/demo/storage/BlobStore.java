@@ -0,0 +1,282 @@
+package com.example.demo.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed storage for PDFs, kept in a hidden folder under the storage root.
+ * Each distinct content is stored once under its SHA-256 digest, and the visible
+ * {@code yyyy/MM/name.pdf} files are hard links to these blobs. Readers see ordinary files,
+ * while identical invoices share their disk blocks. A blob is removed once no visible file
+ * links to it any more.
+ * <p>
+ * All links to a blob are the same file on disk, so writing into one of them in place would change
+ * every invoice with that content. Stored files are therefore only ever replaced, by staging the new
+ * content under a temporary name and renaming it over the old file, and blobs are made read-only
+ * where the file system supports POSIX permissions.
+ */
+class BlobStore {
+
+    static final String BLOB_FOLDER = ".blobs";
+
+    private static final int STAGE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path blobRoot;
+    // File key (device and inode) of each blob -> its digest, to tell which blob a visible file links to
+    private final Map<Object, String> digestsByFileKey = new ConcurrentHashMap<>();
+    private volatile boolean scanned;
+
+    BlobStore(Path storageLocation) {
+        this.blobRoot = storageLocation.resolve(BLOB_FOLDER);
+    }
+
+    /**
+     * Returns the SHA-256 digest of the content as lowercase hex.
+     *
+     * @param content the content to hash
+     * @return the hex digest
+     */
+    static String digest(byte[] content) {
+        return HexFormat.of().formatHex(newDigest().digest(content));
+    }
+
+    /**
+     * Returns the SHA-256 digest of a file's content as lowercase hex.
+     *
+     * @param file the file to hash
+     * @return the hex digest
+     * @throws IOException if the file cannot be read
+     */
+    static String digest(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * The digest and size of content written by {@link #stage(Path, ContentWriter, boolean)}.
+     */
+    record Staged(String digest, long size) {
+    }
+
+    /**
+     * Writes content to a new file while hashing it, so the content never has to be held in memory.
+     *
+     * @param file the file to create; it must not exist yet
+     * @param content writes the content
+     * @param force whether to flush the file's content to the storage device before returning
+     * @return the content's digest and size
+     * @throws IOException if the file cannot be written
+     */
+    static Staged stage(Path file, ContentWriter content, boolean force) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            OutputStream out = new BufferedOutputStream(
+                    new DigestOutputStream(Channels.newOutputStream(channel), digest), STAGE_BUFFER_SIZE);
+            // The writer may close the stream; only flush it, the channel is closed here
+            content.writeTo(new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.flush();
+                }
+            });
+            out.flush();
+            if (force) {
+                channel.force(false);
+            }
+            return new Staged(HexFormat.of().formatHex(digest.digest()), channel.size());
+        }
+    }
+
+    /**
+     * Makes a fully written file the blob for its digest by linking the blob to it, unless a blob
+     * with that digest already exists.
+     *
+     * @param digest the file's digest, as returned by {@link #stage(Path, ContentWriter, boolean)}
+     * @param file the file holding the content
+     * @return the path of the blob, which is either a link to the file or an earlier blob with the same content
+     * @throws IOException if the blob cannot be created
+     * @throws UnsupportedOperationException if the file system does not support hard links
+     */
+    Path adopt(String digest, Path file) throws IOException {
+        Path blob = blobPath(digest);
+        if (Files.exists(blob)) {
+            return blob;
+        }
+
+        Files.createDirectories(blob.getParent());
+        try {
+            Files.createLink(blob, file);
+            PosixFileAttributeView permissions = Files.getFileAttributeView(blob, PosixFileAttributeView.class);
+            if (permissions != null) {
+                permissions.setPermissions(PosixFilePermissions.fromString("r--r--r--"));
+            }
+        } catch (FileAlreadyExistsException e) {
+            // Stored concurrently by another writer with the same content
+        }
+        Object fileKey = fileKey(blob);
+        if (fileKey != null) {
+            digestsByFileKey.put(fileKey, digest);
+        }
+        return blob;
+    }
+
+    /**
+     * Links a visible file to a blob, atomically replacing whatever the file pointed to before.
+     * The link is created under a hidden temporary name next to the target and then renamed over it,
+     * so readers never see a partially written file.
+     *
+     * @param blob the blob to link to
+     * @param target the visible file path
+     * @throws IOException if the link cannot be created
+     * @throws UnsupportedOperationException if the file system does not support hard links
+     */
+    void link(Path blob, Path target) throws IOException {
+        Path temp = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        Files.createLink(temp, blob);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Checks whether a visible file is already a link to the given blob.
+     *
+     * @param blob the blob
+     * @param target the visible file path
+     * @return true if both paths refer to the same file on disk
+     */
+    boolean isLinked(Path blob, Path target) throws IOException {
+        try {
+            return Files.exists(target) && Files.isSameFile(blob, target);
+        } catch (NoSuchFileException e) {
+            // The blob or the file was removed meanwhile
+            return false;
+        }
+    }
+
+    /**
+     * Returns the digest of the blob a visible file links to. The blob is found by the file's
+     * identity on disk, so the content is not read; only where the file system does not expose
+     * file keys is the file hashed instead.
+     *
+     * @param file the visible file path
+     * @return the digest, or null if the file does not exist or does not link to a blob
+     * @throws IOException if the file or the blob folder cannot be read
+     */
+    String linkedDigest(Path file) throws IOException {
+        Object fileKey = fileKey(file);
+        String digest;
+        if (fileKey == null) {
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            digest = digest(file);
+        } else {
+            if (!scanned) {
+                scan();
+            }
+            digest = digestsByFileKey.get(fileKey);
+        }
+        return digest != null && isLinked(blobPath(digest), file) ? digest : null;
+    }
+
+    /**
+     * Removes the blob with the given digest if no visible file links to it any more.
+     *
+     * @param digest the blob's digest
+     * @throws IOException if the blob cannot be inspected or deleted
+     */
+    void release(String digest) throws IOException {
+        Path blob = blobPath(digest);
+        if (Files.exists(blob) && linkCount(blob) <= 1) {
+            delete(blob);
+        }
+    }
+
+    private void delete(Path blob) throws IOException {
+        Object fileKey = fileKey(blob);
+        if (Files.deleteIfExists(blob) && fileKey != null) {
+            digestsByFileKey.remove(fileKey, blob.getFileName().toString());
+        }
+    }
+
+    // Reads the file keys of the blobs stored before this instance was created
+    private synchronized void scan() throws IOException {
+        if (scanned) {
+            return;
+        }
+        if (Files.isDirectory(blobRoot)) {
+            try (Stream<Path> blobs = Files.walk(blobRoot)) {
+                for (Path blob : (Iterable<Path>) blobs.filter(Files::isRegularFile)::iterator) {
+                    Object fileKey = fileKey(blob);
+                    if (fileKey != null) {
+                        digestsByFileKey.putIfAbsent(fileKey, blob.getFileName().toString());
+                    }
+                }
+            }
+        }
+        scanned = true;
+    }
+
+    private static Object fileKey(Path file) throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private Path blobPath(String digest) {
+        return blobRoot.resolve(digest.substring(0, 2)).resolve(digest);
+    }
+
+    private static int linkCount(Path blob) throws IOException {
+        try {
+            return (Integer) Files.getAttribute(blob, "unix:nlink");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // Link counts are not available on this file system; keep the blob
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.demo.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a file's content to the stream it is given, for storing content as it is produced
+ * rather than from a finished byte array. The stream may be closed by the writer or left open.
+ */
+@FunctionalInterface
+public interface ContentWriter {
+
+    /**
+     * Writes the content.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the content cannot be produced or written
+     */
+    void writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,123 @@
+package com.example.demo.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Makes renames durable by syncing the directories they happened in, one sync for many renames.
+ * Writers hand in the directory they renamed a file into and wait; a single background thread takes
+ * every request that queued up in the meantime and syncs each distinct directory once. During a burst
+ * of invoices into the same month folder, all writers waiting at that moment share one directory sync.
+ */
+class DirectorySync implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectorySync.class);
+
+    private record Request(Path directory, CompletableFuture<Void> done) {
+    }
+
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private Thread syncer;
+    private volatile boolean closed;
+
+    /**
+     * Waits until the directory's entries, including renames into it so far, are on disk.
+     *
+     * @param directory the directory to sync
+     * @throws IOException if the directory cannot be synced
+     */
+    void sync(Path directory) throws IOException {
+        startIfNeeded();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        requests.add(new Request(directory, done));
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while syncing " + directory);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (syncer != null) {
+            syncer.interrupt();
+        }
+    }
+
+    // The thread is only started once something is synced, so services that never sync do not hold one
+    private synchronized void startIfNeeded() throws IOException {
+        if (closed) {
+            throw new IOException("Directory sync is closed");
+        }
+        if (syncer == null) {
+            syncer = new Thread(this::run, "storage-directory-sync");
+            syncer.setDaemon(true);
+            syncer.start();
+        }
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                batch.add(requests.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            requests.drainTo(batch);
+
+            Map<Path, List<CompletableFuture<Void>>> byDirectory = new LinkedHashMap<>();
+            for (Request request : batch) {
+                byDirectory.computeIfAbsent(request.directory(), dir -> new ArrayList<>()).add(request.done());
+            }
+            batch.clear();
+
+            for (Map.Entry<Path, List<CompletableFuture<Void>>> entry : byDirectory.entrySet()) {
+                try {
+                    force(entry.getKey());
+                    entry.getValue().forEach(done -> done.complete(null));
+                } catch (IOException | RuntimeException e) {
+                    entry.getValue().forEach(done -> done.completeExceptionally(e));
+                }
+            }
+        }
+
+        // Release anyone still waiting
+        List<Request> remaining = new ArrayList<>();
+        requests.drainTo(remaining);
+        remaining.forEach(request -> request.done().completeExceptionally(new IOException("Directory sync is closed")));
+    }
+
+    private static void force(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Some platforms, notably Windows, cannot open a directory; renames there are durable without it
+            log.debug("Cannot open {} to sync it", directory, e);
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.demo.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the archive in a directory, typically a network file system mounted on every node.
+ * Objects are plain files under their key, written under a hidden temporary name and renamed
+ * into place. An object's ETag is made of the file's modification time, size and, where the file
+ * system has them, its file key, so every rename into place gives the object a new one.
+ */
+public class FileSystemBackend implements StorageBackend {
+
+    private final Path root;
+
+    /**
+     * @param root the directory holding the archive; created if it does not exist
+     * @throws IOException if the directory cannot be created
+     */
+    public FileSystemBackend(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        Files.createDirectories(this.root);
+    }
+
+    @Override
+    public String upload(String key, Path file) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.copy(file, temp);
+            String etag = etag(Files.readAttributes(temp, BasicFileAttributes.class));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return etag;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public String download(String key, Path target) throws IOException {
+        Path source = resolve(key);
+        try {
+            // Read first: if the object is replaced while it is copied, the next sync sees the newer ETag
+            String etag = etag(Files.readAttributes(source, BasicFileAttributes.class));
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            return etag;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Path target = resolve(key);
+        if (!Files.isDirectory(target)) {
+            Files.deleteIfExists(target);
+            return;
+        }
+        try (Stream<Path> files = Files.walk(target)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public List<StoredObject> list() throws IOException {
+        List<StoredObject> objects = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return !dir.equals(root) && isHidden(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && !isHidden(file)) {
+                    String key = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                    objects.add(new StoredObject(key, attrs.size(), attrs.lastModifiedTime().toMillis(), etag(attrs)));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Removed while walking, e.g. a temporary file that was just renamed
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return objects;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new SecurityException("Key outside the backend directory: " + key);
+        }
+        return path;
+    }
+
+    private static String etag(BasicFileAttributes attrs) {
+        String etag = Long.toHexString(attrs.lastModifiedTime().toMillis()) + "-" + Long.toHexString(attrs.size());
+        return attrs.fileKey() == null ? etag : etag + "-" + attrs.fileKey();
+    }
+
+    private static boolean isHidden(Path path) {
+        return path.getFileName().toString().startsWith(".");
+    }
+}
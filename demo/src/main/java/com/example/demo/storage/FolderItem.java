@@ -0,0 +1,19 @@
+package com.example.demo.storage;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * One entry of a folder listing.
+ *
+ * @param name the file or folder name
+ * @param type either "folder" or "file"
+ * @param path the path relative to the storage root, using '/' separators
+ * @param size the file size in bytes, 0 for folders
+ * @param lastModified the last modification time in epoch milliseconds
+ * @param children the first entries of a sub-folder when listing more than one level deep, otherwise null
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record FolderItem(String name, String type, String path, long size, long lastModified, List<FolderItem> children) {
+}
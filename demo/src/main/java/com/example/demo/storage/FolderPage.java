@@ -0,0 +1,13 @@
+package com.example.demo.storage;
+
+import java.util.List;
+
+/**
+ * A page of a folder listing.
+ *
+ * @param path the listed folder relative to the storage root
+ * @param items the entries on this page
+ * @param nextCursor the cursor to pass to fetch the next page, or null if this is the last page
+ */
+public record FolderPage(String path, List<FolderItem> items, String nextCursor) {
+}
@@ -0,0 +1,34 @@
+package com.example.demo.storage;
+
+import java.util.Comparator;
+
+/**
+ * Sort orders for folder listings. Every order falls back to the entry name,
+ * so entries are totally ordered and a page cursor can resume after any entry.
+ */
+public enum FolderSort {
+    NAME(Comparator.comparing(StorageEntry::name)),
+    MTIME(Comparator.comparingLong(StorageEntry::lastModified).thenComparing(StorageEntry::name)),
+    SIZE(Comparator.comparingLong(StorageEntry::size).thenComparing(StorageEntry::name));
+
+    private final Comparator<StorageEntry> comparator;
+
+    FolderSort(Comparator<StorageEntry> comparator) {
+        this.comparator = comparator;
+    }
+
+    public Comparator<StorageEntry> comparator(boolean descending) {
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    /**
+     * Parses a sort order case-insensitively, e.g. "mtime".
+     *
+     * @param value the sort order name
+     * @return the matching sort order
+     * @throws IllegalArgumentException if the value is not a known sort order
+     */
+    public static FolderSort parse(String value) {
+        return valueOf(value.toUpperCase());
+    }
+}
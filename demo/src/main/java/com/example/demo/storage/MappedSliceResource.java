@@ -0,0 +1,88 @@
+package com.example.demo.storage;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A PDF packed into a {@link MonthArchive}, served straight from the mapped segment.
+ * Every stream reads its own view of the slice, so the resource can be read any number of times.
+ */
+class MappedSliceResource extends AbstractResource {
+
+    private final ByteBuffer content;
+    private final String filename;
+    private final long lastModified;
+
+    MappedSliceResource(ByteBuffer content, String filename, long lastModified) {
+        this.content = content;
+        this.filename = filename;
+        this.lastModified = lastModified;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        ByteBuffer buffer = content.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+                buffer.position(buffer.position() + skipped);
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+
+    /**
+     * Returns the content as a read-only buffer, without copying it.
+     *
+     * @return the content
+     */
+    ByteBuffer content() {
+        return content.duplicate();
+    }
+
+    @Override
+    public long contentLength() {
+        return content.remaining();
+    }
+
+    @Override
+    public long lastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Archived file [" + filename + "]";
+    }
+}
@@ -0,0 +1,330 @@
+package com.example.demo.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A finished month's PDFs packed into one file. The PDFs are appended one after another to a hidden
+ * segment, {@code .archive}, and a small index, {@code .archive.idx}, records where each one starts,
+ * how long it is and when it was last modified. More PDFs go after the last indexed one, and a removed
+ * or replaced PDF just drops out of the index, leaving its bytes dead in the segment. Once at least
+ * half of the segment, and {@link #COMPACT_MIN_DEAD_BYTES}, is dead, the live PDFs are copied into a
+ * new segment, {@code .archive.1}, {@code .archive.2} and so on, which the index then names.
+ * The index is replaced atomically once the data it points to is on disk, so a crash during an append
+ * or a compaction leaves the previous index in place: the next append overwrites whatever was written
+ * past its end, and a new segment it does not name is deleted when the archive is next opened.
+ * PDFs are read from a read-only memory mapping of the segment.
+ */
+class MonthArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(MonthArchive.class);
+
+    static final String SEGMENT = ".archive";
+    static final String INDEX = ".archive.idx";
+
+    // A single mapping cannot be larger; files that do not fit stay loose
+    static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+    // Below this, dead bytes are not worth rewriting the segment for
+    static final long COMPACT_MIN_DEAD_BYTES = 1024 * 1024;
+
+    private static final int MAGIC = 0x494E5641;
+    // Version 2 adds the segment's generation; version 1 indexes always point at the first segment
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * A PDF in the archive.
+     *
+     * @param name the PDF's file name
+     * @param offset where the PDF starts in the segment
+     * @param length the PDF's size in bytes
+     * @param lastModified the modification time of the file it was packed from, in epoch milliseconds
+     */
+    record Entry(String name, long offset, long length, long lastModified) {
+    }
+
+    // Replaced as a whole, so readers always see an index together with a mapping that covers it
+    private record State(Map<String, Entry> entries, int generation, long end, ByteBuffer mapped) {
+    }
+
+    private final Path dir;
+    private final Path index;
+    private volatile State state;
+
+    private MonthArchive(Path dir, State state) {
+        this.dir = dir;
+        this.index = dir.resolve(INDEX);
+        this.state = state;
+    }
+
+    /**
+     * Opens the archive of a month folder.
+     *
+     * @param dir the month folder
+     * @return the archive, or null if the folder has none
+     * @throws IOException if the archive cannot be read
+     */
+    static MonthArchive open(Path dir) throws IOException {
+        Path index = dir.resolve(INDEX);
+        if (!Files.exists(index)) {
+            return null;
+        }
+
+        Map<String, Entry> entries = new HashMap<>();
+        int generation = 0;
+        long end;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != 1 && version != FORMAT_VERSION) {
+                throw new IOException("Not a month archive index: " + index);
+            }
+            if (version >= 2) {
+                generation = in.readInt();
+            }
+            end = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+                entries.put(entry.name(), entry);
+            }
+        }
+        deleteOtherSegments(dir, generation);
+        return new MonthArchive(dir, new State(Map.copyOf(entries), generation, end, map(segment(dir, generation), end)));
+    }
+
+    /**
+     * Creates an empty archive for a month folder. Nothing is written until the first {@link #append(List)}.
+     *
+     * @param dir the month folder
+     * @return the archive
+     */
+    static MonthArchive create(Path dir) {
+        return new MonthArchive(dir, new State(Map.of(), 0, 0, ByteBuffer.allocate(0)));
+    }
+
+    /**
+     * Returns the PDFs in the archive.
+     *
+     * @return the entries keyed by file name
+     */
+    Map<String, Entry> entries() {
+        return state.entries();
+    }
+
+    /**
+     * Returns a PDF in the archive.
+     *
+     * @param name the PDF's file name
+     * @return the entry, or null if the archive does not hold the PDF
+     */
+    Entry entry(String name) {
+        return state.entries().get(name);
+    }
+
+    /**
+     * Returns a PDF's content as a read-only slice of the mapped segment, without copying it.
+     *
+     * @param name the PDF's file name
+     * @return the content, or null if the archive does not hold the PDF
+     */
+    ByteBuffer read(String name) {
+        State current = state;
+        Entry entry = current.entries().get(name);
+        if (entry == null) {
+            return null;
+        }
+        return current.mapped().slice((int) entry.offset(), (int) entry.length()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Appends files to the segment and adds them to the index, replacing entries with the same name.
+     * Files are appended in the given order; those that would grow the segment past {@link #MAX_SEGMENT_BYTES}
+     * are left out. Both the segment and the index are flushed to the storage device before this returns.
+     *
+     * @param files the files to pack
+     * @return the files that were packed; the caller deletes them
+     * @throws IOException if the segment or the index cannot be written
+     */
+    synchronized List<Path> append(List<Path> files) throws IOException {
+        State current = state;
+        Map<String, Entry> entries = new HashMap<>(current.entries());
+        List<Path> packed = new ArrayList<>();
+        long position = current.end();
+        long skipped = 0;
+        Path segment = segment(dir, current.generation());
+        try (FileChannel out = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (Path file : files) {
+                long size = Files.size(file);
+                if (position + size > MAX_SEGMENT_BYTES) {
+                    skipped++;
+                    continue;
+                }
+                try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                    for (long copied = 0; copied < size; ) {
+                        copied += out.transferFrom(in, position + copied, size - copied);
+                    }
+                }
+                String name = file.getFileName().toString();
+                entries.put(name, new Entry(name, position, size, Files.getLastModifiedTime(file).toMillis()));
+                packed.add(file);
+                position += size;
+            }
+            // Drop what a failed earlier append left behind
+            out.truncate(position);
+            out.force(false);
+        }
+
+        if (skipped > 0) {
+            log.warn("The archive segment in {} is full; {} files stay loose", dir, skipped);
+        }
+
+        writeIndex(entries, current.generation(), position);
+        state = new State(Map.copyOf(entries), current.generation(), position, map(segment, position));
+        compactIfWasteful();
+        return packed;
+    }
+
+    /**
+     * Removes a PDF from the index. Its bytes stay in the segment.
+     *
+     * @param name the PDF's file name
+     * @return false if the archive does not hold the PDF
+     * @throws IOException if the index cannot be written
+     */
+    synchronized boolean remove(String name) throws IOException {
+        State current = state;
+        if (!current.entries().containsKey(name)) {
+            return false;
+        }
+        Map<String, Entry> entries = new HashMap<>(current.entries());
+        entries.remove(name);
+        writeIndex(entries, current.generation(), current.end());
+        state = new State(Map.copyOf(entries), current.generation(), current.end(), current.mapped());
+        compactIfWasteful();
+        return true;
+    }
+
+    /**
+     * Returns how much of the segment is taken by PDFs that were removed or replaced.
+     *
+     * @return the dead bytes
+     */
+    long deadBytes() {
+        State current = state;
+        return current.end() - current.entries().values().stream().mapToLong(Entry::length).sum();
+    }
+
+    /**
+     * Copies the PDFs still in the index into a new segment, dropping the dead bytes between them,
+     * and deletes the old segment. Readers holding content of the old segment keep their mapping.
+     *
+     * @throws IOException if the new segment or the index cannot be written
+     */
+    synchronized void compact() throws IOException {
+        State current = state;
+        int generation = current.generation() + 1;
+        Path segment = segment(dir, generation);
+        Map<String, Entry> entries = new HashMap<>();
+        long position = 0;
+        try (FileChannel in = FileChannel.open(segment(dir, current.generation()), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.WRITE)) {
+            List<Entry> live = current.entries().values().stream().sorted(Comparator.comparingLong(Entry::offset)).toList();
+            for (Entry entry : live) {
+                for (long copied = 0; copied < entry.length(); ) {
+                    copied += in.transferTo(entry.offset() + copied, entry.length() - copied, out);
+                }
+                entries.put(entry.name(), new Entry(entry.name(), position, entry.length(), entry.lastModified()));
+                position += entry.length();
+            }
+            out.force(false);
+        }
+
+        writeIndex(entries, generation, position);
+        state = new State(Map.copyOf(entries), generation, position, map(segment, position));
+        log.info("Compacted the archive in {}: {} bytes reclaimed", dir, current.end() - position);
+        deleteOtherSegments(dir, generation);
+    }
+
+    private void compactIfWasteful() throws IOException {
+        long dead = deadBytes();
+        if (dead >= COMPACT_MIN_DEAD_BYTES && dead * 2 >= state.end()) {
+            compact();
+        }
+    }
+
+    private void writeIndex(Map<String, Entry> entries, int generation, long end) throws IOException {
+        Path temp = index.resolveSibling(INDEX + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(generation);
+                out.writeLong(end);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    out.writeUTF(entry.name());
+                    out.writeLong(entry.offset());
+                    out.writeLong(entry.length());
+                    out.writeLong(entry.lastModified());
+                }
+                out.flush();
+                channel.force(false);
+            }
+            Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static Path segment(Path dir, int generation) {
+        return dir.resolve(generation == 0 ? SEGMENT : SEGMENT + "." + generation);
+    }
+
+    // Segments left behind by a compaction, or by one that failed before its index was written
+    private static void deleteOtherSegments(Path dir, int generation) {
+        for (int other = 0; other < generation; other++) {
+            deleteQuietly(segment(dir, other));
+        }
+        deleteQuietly(segment(dir, generation + 1));
+    }
+
+    private static void deleteQuietly(Path segment) {
+        try {
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            // Mapped elsewhere on some platforms; tried again the next time the archive is opened or compacted
+            log.debug("Failed to delete the unused archive segment {}", segment, e);
+        }
+    }
+
+    private static ByteBuffer map(Path segment, long end) throws IOException {
+        if (end == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        }
+    }
+}
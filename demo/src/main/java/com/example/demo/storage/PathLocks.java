@@ -0,0 +1,91 @@
+package com.example.demo.storage;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Striped read-write locks keyed by path within the storage directory.
+ * Locking a path also takes its ancestors in shared mode, so a recursive delete of a folder, which holds
+ * the folder exclusively, waits for saves below it and keeps new ones out while it runs. Saves of
+ * different files only share their folders' locks and proceed in parallel; saves of the same file queue.
+ * A fixed number of stripes bounds memory however many paths there are, at the cost of the occasional
+ * collision between unrelated paths. Stripes are always taken in index order, so lockers never deadlock.
+ */
+class PathLocks {
+
+    private final ReentrantReadWriteLock[] stripes;
+
+    /**
+     * @param stripes the number of stripes, rounded up to a power of two
+     */
+    PathLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Locks a path and, in shared mode, each of its ancestors. Not reentrant across different paths:
+     * a thread must release what it holds before locking another path.
+     *
+     * @param relativePath the path relative to the storage directory
+     * @param exclusive whether to lock the path itself exclusively, or shared like its ancestors
+     * @return the held locks, to be closed to release them
+     */
+    Held lock(Path relativePath, boolean exclusive) {
+        // Stripe -> whether any of the paths on it needs it exclusively
+        TreeMap<Integer, Boolean> wanted = new TreeMap<>();
+        Path path = relativePath.normalize();
+        wanted.merge(stripe(path), exclusive, Boolean::logicalOr);
+        for (Path ancestor = path.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            wanted.merge(stripe(ancestor), false, Boolean::logicalOr);
+        }
+
+        List<Lock> held = new ArrayList<>(wanted.size());
+        try {
+            for (Map.Entry<Integer, Boolean> entry : wanted.entrySet()) {
+                ReentrantReadWriteLock stripe = stripes[entry.getKey()];
+                Lock lock = entry.getValue() ? stripe.writeLock() : stripe.readLock();
+                lock.lock();
+                held.add(lock);
+            }
+        } catch (RuntimeException | Error e) {
+            new Held(held).close();
+            throw e;
+        }
+        return new Held(held);
+    }
+
+    private int stripe(Path path) {
+        int hash = path.toString().replace(File.separatorChar, '/').hashCode();
+        // Spread the high bits down, as HashMap does, before masking
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    /**
+     * Locks held by {@link #lock(Path, boolean)}, released in reverse order on close.
+     */
+    static final class Held implements AutoCloseable {
+
+        private final List<Lock> locks;
+
+        private Held(List<Lock> locks) {
+            this.locks = locks;
+        }
+
+        @Override
+        public void close() {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.demo.storage;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Keeps the archive in a bucket of an S3-compatible object store, such as AWS S3 or MinIO.
+ * The client is expected to be built with multipart uploads enabled: large files are then sent
+ * in parts over several connections at once, and saves on different threads upload concurrently
+ * over the client's shared connection pool.
+ */
+public class S3Backend implements StorageBackend {
+
+    // The most keys a single DeleteObjects request accepts
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final S3AsyncClient client;
+    private final String bucket;
+    private final String prefix;
+
+    /**
+     * @param client the client; closed with the backend
+     * @param bucket the bucket holding the archive
+     * @param prefix prepended to every key, e.g. "invoices/", or empty to use the whole bucket
+     */
+    public S3Backend(S3AsyncClient client, String bucket, String prefix) {
+        this.client = client;
+        this.bucket = bucket;
+        this.prefix = prefix == null || prefix.isEmpty() || prefix.endsWith("/") ? nullToEmpty(prefix) : prefix + "/";
+    }
+
+    @Override
+    public String upload(String key, Path file) throws IOException {
+        return join(client.putObject(PutObjectRequest.builder()
+                .bucket(bucket)
+                .key(prefix + key)
+                .contentType("application/pdf")
+                .build(), AsyncRequestBody.fromFile(file))).eTag();
+    }
+
+    @Override
+    public String download(String key, Path target) throws IOException {
+        // The transformer refuses to overwrite, so download next to the target and rename
+        Path temp = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            GetObjectResponse object = join(client.getObject(
+                    GetObjectRequest.builder().bucket(bucket).key(prefix + key).build(),
+                    AsyncResponseTransformer.toFile(temp)));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return object.eTag();
+        } catch (NoSuchKeyException e) {
+            return null;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        List<ObjectIdentifier> objects = new ArrayList<>();
+        objects.add(ObjectIdentifier.builder().key(prefix + key).build());
+        for (S3Object object : listObjects(prefix + key + "/")) {
+            objects.add(ObjectIdentifier.builder().key(object.key()).build());
+        }
+
+        for (int start = 0; start < objects.size(); start += DELETE_BATCH_SIZE) {
+            List<ObjectIdentifier> batch = objects.subList(start, Math.min(start + DELETE_BATCH_SIZE, objects.size()));
+            join(client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucket)
+                    .delete(Delete.builder().objects(batch).quiet(true).build())
+                    .build()));
+        }
+    }
+
+    @Override
+    public List<StoredObject> list() throws IOException {
+        List<StoredObject> objects = new ArrayList<>();
+        for (S3Object object : listObjects(prefix)) {
+            String key = object.key().substring(prefix.length());
+            if (!key.isEmpty() && !key.endsWith("/")) {
+                objects.add(new StoredObject(key, object.size(), object.lastModified().toEpochMilli(), object.eTag()));
+            }
+        }
+        return objects;
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    private List<S3Object> listObjects(String keyPrefix) throws IOException {
+        List<S3Object> objects = new ArrayList<>();
+        String continuationToken = null;
+        do {
+            ListObjectsV2Response page = join(client.listObjectsV2(ListObjectsV2Request.builder()
+                    .bucket(bucket)
+                    .prefix(keyPrefix)
+                    .continuationToken(continuationToken)
+                    .build()));
+            objects.addAll(page.contents());
+            continuationToken = page.nextContinuationToken();
+        } while (continuationToken != null);
+        return objects;
+    }
+
+    // Waits for a request; a missing key is reported as such, any other failure as an IOException
+    private static <T> T join(CompletableFuture<T> request) throws IOException {
+        try {
+            return request.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof NoSuchKeyException noSuchKey) {
+                throw noSuchKey;
+            }
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.demo.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Where the archive is kept for good, shared by every node that runs the application.
+ * Each node works on its own copy of the archive in its storage directory, which the listing,
+ * search and thumbnails are served from; {@link StorageService} writes every saved invoice and
+ * every delete through to the backend, and pulls in what the other nodes saved or deleted.
+ * Objects are addressed by their path under the storage directory, e.g. "2025/05/Alice.pdf".
+ * Every object carries an ETag that changes whenever the object is stored again, which is how
+ * nodes tell which of their files are out of date.
+ */
+public interface StorageBackend extends Closeable {
+
+    /**
+     * Stores a file under a key, replacing any object with the same key.
+     * Readers of the backend see either the old or the new content, never a partial object.
+     *
+     * @param key the object's key
+     * @param file the file holding the content
+     * @return the ETag of the stored object
+     * @throws IOException if the object cannot be stored
+     */
+    String upload(String key, Path file) throws IOException;
+
+    /**
+     * Copies an object into a file, replacing the file if it exists.
+     *
+     * @param key the object's key
+     * @param target the file to write
+     * @return the ETag of the object that was copied, or null if there is no object with this key
+     * @throws IOException if the object cannot be read or the file cannot be written
+     */
+    String download(String key, Path target) throws IOException;
+
+    /**
+     * Removes an object, or every object below a folder key.
+     *
+     * @param key the object's key, or a folder such as "2025/05"
+     * @throws IOException if the objects cannot be removed
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Lists every object in the backend.
+     *
+     * @return the objects, in no particular order
+     * @throws IOException if the backend cannot be listed
+     */
+    List<StoredObject> list() throws IOException;
+
+    /**
+     * An object in the backend.
+     *
+     * @param key the object's key
+     * @param size the object's size in bytes
+     * @param lastModified when the object was last stored, in epoch milliseconds
+     * @param etag changes whenever the object is stored again
+     */
+    record StoredObject(String key, long size, long lastModified, String etag) {
+    }
+}
@@ -6,8 +6,10 @@ import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -17,7 +19,9 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.time.Duration;
 
 @RestController
 @RequestMapping("/api/storage")
@@ -45,7 +49,7 @@ public class StorageController {
     @GetMapping("/listfoldertree")
     public ResponseEntity<?> getFiletree() {
         try {
-            Path location = Paths.get("pdf-storage");
+            Path location = storageService.getStorageLocation();
             List<FileNode> tree = storageService.listFilesAndFolders(location);
             return ResponseEntity.ok(tree);
         } catch (IOException e) {
@@ -54,28 +58,168 @@ public class StorageController {
         }
     }
 
+    /**
+     * Handles the HTTP GET request to list a single folder one page at a time, so the file browser
+     * can load each folder level lazily instead of fetching the whole tree.
+     *
+     * @param path the folder to list, relative to the storage directory; a leading "pdf-storage" is accepted
+     * @param cursor the cursor returned with the previous page, omitted for the first page
+     * @param limit the maximum number of entries to return
+     * @param sort the sort order: name, mtime or size
+     * @param order asc or desc
+     * @param depth the number of folder levels to include, 1 for the folder's own entries only
+     * @return ResponseEntity containing a {@link FolderPage} if successful, or an error message
+     *         with the appropriate HTTP status if the request is invalid or the folder does not exist
+     */
+    @Operation(summary = "List folder", description = "Lists the entries of a single folder with cursor-based pagination")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully listed folder"),
+            @ApiResponse(responseCode = "400", description = "Invalid paging or sort parameters"),
+            @ApiResponse(responseCode = "403", description = "Access denied"),
+            @ApiResponse(responseCode = "404", description = "Folder not found")
+    })
+    @GetMapping("/listfolders")
+    public ResponseEntity<?> listFolder(@RequestParam(defaultValue = "") String path,
+                                        @RequestParam(required = false) String cursor,
+                                        @RequestParam(defaultValue = "100") int limit,
+                                        @RequestParam(defaultValue = "name") String sort,
+                                        @RequestParam(defaultValue = "asc") String order,
+                                        @RequestParam(defaultValue = "1") int depth) {
+        try {
+            if (!order.equalsIgnoreCase("asc") && !order.equalsIgnoreCase("desc")) {
+                throw new IllegalArgumentException("order must be asc or desc");
+            }
+            FolderPage page = storageService.listFolder(path, cursor, limit, FolderSort.parse(sort),
+                    order.equalsIgnoreCase("desc"), depth);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid request: " + e.getMessage());
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Access denied: Invalid folder path");
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Folder not found: " + path);
+        }
+    }
+
     /**
      * Handles the HTTP GET request to view a PDF file from the specified file path.
-     * The method retrieves the PDF content from the storage and returns it as a response
-     * with appropriate headers for displaying the file inline in the browser.
+     * The file is streamed from disk rather than loaded into memory. Responses carry an ETag and
+     * Last-Modified header so that conditional requests are answered with 304 NOT MODIFIED,
+     * and Range requests are answered with 206 PARTIAL CONTENT.
      *
      * @param filepath the relative file path of the PDF to be viewed
-     * @return ResponseEntity containing the byte array of the PDF content with proper
-     *         HTTP headers if successful, or a 404 NOT FOUND response if the file is not found
+     * @return ResponseEntity containing the PDF resource with proper HTTP headers for
+     *         displaying the file inline in the browser, or a 404 NOT FOUND response if the file is not found
      */
-    @Operation(summary = "View PDF file", description = "Retrieves and displays a PDF file from the storage")
+    @Operation(summary = "View PDF file", description = "Streams a PDF file from the storage, supporting Range and conditional requests")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "PDF file retrieved successfully"),
+            @ApiResponse(responseCode = "206", description = "Requested byte range of the PDF file"),
+            @ApiResponse(responseCode = "304", description = "PDF file not modified since the cached copy"),
             @ApiResponse(responseCode = "404", description = "PDF file not found")
     })
     @GetMapping("/view")
-    public ResponseEntity<byte[]> viewPDF(@RequestParam String filepath) {
+    public ResponseEntity<Resource> viewPDF(@RequestParam String filepath) {
         try {
-            byte[] pdfContent = storageService.loadFile(filepath);
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_PDF);
-            headers.setContentDisposition(ContentDisposition.inline().filename(Paths.get(filepath).getFileName().toString()).build());
-            return new ResponseEntity<>(pdfContent, headers, HttpStatus.OK);
+            Resource pdf = storageService.loadAsResource(filepath);
+            long lastModified = pdf.lastModified();
+            String etag = "\"" + Long.toHexString(pdf.contentLength()) + "-" + Long.toHexString(lastModified) + "\"";
+
+            // ETag and Last-Modified let Spring answer If-None-Match/If-Modified-Since with 304,
+            // and a Resource body lets it answer Range requests with 206
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_PDF)
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            ContentDisposition.inline().filename(Paths.get(filepath).getFileName().toString()).build().toString())
+                    .cacheControl(CacheControl.noCache())
+                    .eTag(etag)
+                    .lastModified(lastModified)
+                    .body(pdf);
+        } catch (IOException | SecurityException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    /**
+     * Handles the HTTP GET request to retrieve a small PNG of a stored PDF's first page, so the
+     * file browser can preview an invoice without downloading the whole PDF. Thumbnails are rendered
+     * on first request (or in the background when the invoice is saved) and cached on disk.
+     * Browsers may reuse a thumbnail for an hour and revalidate it with its ETag after that.
+     *
+     * @param filepath the relative file path of the PDF
+     * @return ResponseEntity containing the PNG thumbnail, a 404 NOT FOUND response if the file is not found,
+     *         or a 422 UNPROCESSABLE ENTITY response if the file cannot be rendered as a PDF
+     */
+    @Operation(summary = "View PDF thumbnail", description = "Returns a PNG of the first page of a stored PDF")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Thumbnail retrieved successfully"),
+            @ApiResponse(responseCode = "304", description = "Thumbnail not modified since the cached copy"),
+            @ApiResponse(responseCode = "404", description = "PDF file not found"),
+            @ApiResponse(responseCode = "422", description = "File cannot be rendered as a PDF")
+    })
+    @GetMapping("/thumbnail")
+    public ResponseEntity<Resource> viewThumbnail(@RequestParam String filepath) {
+        try {
+            Resource thumbnail = storageService.loadThumbnail(filepath);
+            // The thumbnail's name is derived from the PDF's path, size and modification time
+            String name = thumbnail.getFilename();
+            String etag = "\"" + name.substring(0, 32) + "\"";
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.IMAGE_PNG)
+                    .cacheControl(CacheControl.maxAge(Duration.ofHours(1)).cachePrivate())
+                    .eTag(etag)
+                    .body(thumbnail);
+        } catch (FileNotFoundException | SecurityException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+        }
+    }
+
+    /**
+     * Handles the HTTP GET request to download several PDFs in one response, either merged into a
+     * single PDF or packed into a ZIP archive. The export is streamed while it is being built.
+     *
+     * @param folder a folder whose PDFs are all exported, e.g. "2025/05"
+     * @param paths individual files to export, in addition to the folder's
+     * @param format pdf for a single merged PDF, zip for an archive of the original files
+     * @return ResponseEntity streaming the export as an attachment, or an empty response with the
+     *         appropriate HTTP status if the selection is invalid or a file does not exist
+     */
+    @Operation(summary = "Export files", description = "Streams a folder or a list of PDFs as one merged PDF or a ZIP archive")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Export streamed successfully"),
+            @ApiResponse(responseCode = "400", description = "No files selected or invalid format"),
+            @ApiResponse(responseCode = "403", description = "Access denied"),
+            @ApiResponse(responseCode = "404", description = "Folder or file not found")
+    })
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) String folder,
+                                                        @RequestParam(name = "path", required = false) List<String> paths,
+                                                        @RequestParam(defaultValue = "zip") String format) {
+        try {
+            boolean zip = format.equalsIgnoreCase("zip");
+            if (!zip && !format.equalsIgnoreCase("pdf")) {
+                throw new IllegalArgumentException("format must be pdf or zip");
+            }
+            List<Path> files = storageService.resolveExport(folder, paths);
+
+            String baseName = folder == null || folder.isBlank()
+                    ? "invoices"
+                    : folder.replaceAll("^/+|/+$", "").replace('/', '-');
+            StreamingResponseBody body = zip
+                    ? out -> storageService.writeZip(files, out)
+                    : out -> storageService.writeMergedPdf(files, out);
+            return ResponseEntity.ok()
+                    .contentType(zip ? MediaType.parseMediaType("application/zip") : MediaType.APPLICATION_PDF)
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            ContentDisposition.attachment().filename(baseName + (zip ? ".zip" : ".pdf")).build().toString())
+                    .body(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
@@ -151,6 +295,36 @@ public class StorageController {
     }
 
 
+    /**
+     * Handles the HTTP POST request to pack a finished month's PDFs into the month's archive.
+     * The PDFs stay listed, viewable and exportable as before.
+     *
+     * @param month the month in the format yyyy-MM
+     * @return ResponseEntity containing the number of PDFs packed, or an error message with the
+     *         appropriate HTTP status if the month cannot be archived
+     */
+    @Operation(summary = "Archive month", description = "Packs a finished month's PDFs into a single archive file")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Month archived successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid or unfinished month"),
+            @ApiResponse(responseCode = "404", description = "Month folder not found"),
+            @ApiResponse(responseCode = "500", description = "Server error while archiving the month")
+    })
+    @PostMapping("/archive")
+    public ResponseEntity<String> archiveMonth(@RequestParam String month) {
+        try {
+            int packed = storageService.archiveMonth(month);
+            return ResponseEntity.ok("Archived " + packed + " files");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Month not found: " + month);
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error archiving month");
+        }
+    }
+
+
 //    // Endpoint to download a PDF by its filename
 //    @GetMapping("/download/{filename}")
 //    public ResponseEntity<byte[]> downloadPDF(@PathVariable String filename) {
@@ -0,0 +1,12 @@
+package com.example.demo.storage;
+
+/**
+ * A file or folder as held in the in-memory {@link StorageIndex}.
+ *
+ * @param name the file or folder name
+ * @param folder whether the entry is a folder
+ * @param size the file size in bytes, 0 for folders
+ * @param lastModified the last modification time in epoch milliseconds
+ */
+public record StorageEntry(String name, boolean folder, long size, long lastModified) {
+}
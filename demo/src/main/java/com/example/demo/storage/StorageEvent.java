@@ -0,0 +1,20 @@
+package com.example.demo.storage;
+
+import java.nio.file.Path;
+
+/**
+ * Published by {@link StorageService} after it has changed a stored file, so that anything derived from
+ * the stored files can be brought up to date without polling the storage directory.
+ *
+ * @param type what happened
+ * @param path the file, or for a deleted folder the folder, relative to the storage directory
+ */
+public record StorageEvent(Type type, Path path) {
+
+    public enum Type {
+        /** A file was created or its content replaced. */
+        WRITTEN,
+        /** A file or a folder with everything in it was deleted. */
+        DELETED
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.demo.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A resident copy of the storage directory tree.
+ * The tree is walked once on {@link #start()} and then kept current from two sides:
+ * {@link StorageService} reports its own writes and deletes as they happen, and a
+ * {@link WatchService} picks up changes made to the directory by anything else.
+ * Listing the storage is then served from memory without touching the disk.
+ * PDFs packed into a {@link MonthArchive} are listed alongside the files in their folder.
+ */
+class StorageIndex implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageIndex.class);
+    private static final Path ROOT = Paths.get("");
+    // Orders directories by their path elements, so that everything below a directory directly follows it
+    private static final Comparator<Path> BY_ELEMENTS = (a, b) -> {
+        int common = Math.min(a.getNameCount(), b.getNameCount());
+        for (int i = 0; i < common; i++) {
+            int order = a.getName(i).compareTo(b.getName(i));
+            if (order != 0) {
+                return order;
+            }
+        }
+        return Integer.compare(a.getNameCount(), b.getNameCount());
+    };
+
+    /**
+     * Looks up the PDFs packed into the archive of a directory under the storage root.
+     */
+    interface Archived {
+
+        /**
+         * @param dir the directory
+         * @return the archived entries in it, keyed by name
+         */
+        Map<String, StorageEntry> entries(Path dir);
+
+        /**
+         * @param file the file's path
+         * @return the file's archived entry, or null if it is not packed
+         */
+        StorageEntry entry(Path file);
+    }
+
+    private static final Archived NOT_ARCHIVED = new Archived() {
+        @Override
+        public Map<String, StorageEntry> entries(Path dir) {
+            return Map.of();
+        }
+
+        @Override
+        public StorageEntry entry(Path file) {
+            return null;
+        }
+    };
+
+    private final Path root;
+    private final Archived archived;
+    // Relative directory path -> the entries directly inside it; replaced as a whole by a rebuild
+    private volatile NavigableMap<Path, Map<String, StorageEntry>> directories =
+            new ConcurrentSkipListMap<>(BY_ELEMENTS);
+    // The index a rebuild is walking into, so that changes reported meanwhile are not lost
+    private volatile NavigableMap<Path, Map<String, StorageEntry>> rebuilding;
+    private final Map<WatchKey, Path> watchKeys = new ConcurrentHashMap<>();
+    private WatchService watchService;
+
+    StorageIndex(Path root) {
+        this(root, NOT_ARCHIVED);
+    }
+
+    /**
+     * @param root the storage directory
+     * @param archived looks up the archived entries under the storage root
+     */
+    StorageIndex(Path root, Archived archived) {
+        this.root = root;
+        this.archived = archived;
+    }
+
+    /**
+     * Builds the index and starts watching the storage directory for changes.
+     *
+     * @throws IOException if the storage directory cannot be walked or watched
+     */
+    void start() throws IOException {
+        watchService = root.getFileSystem().newWatchService();
+        rebuild();
+
+        Thread watcher = new Thread(this::watch, "storage-index-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Walks the storage directory again and replaces the index with the result.
+     * Listings keep being served from the previous index until the walk is done.
+     *
+     * @throws IOException if the storage directory cannot be walked
+     */
+    synchronized void rebuild() throws IOException {
+        NavigableMap<Path, Map<String, StorageEntry>> fresh = new ConcurrentSkipListMap<>(BY_ELEMENTS);
+        rebuilding = fresh;
+        try {
+            indexTree(root, fresh);
+            directories = fresh;
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    /**
+     * Returns the entries directly inside a directory.
+     *
+     * @param relativeDir the directory relative to the storage root, empty for the root itself
+     * @return the entries keyed by name, or null if the directory is not indexed
+     */
+    Map<String, StorageEntry> children(Path relativeDir) {
+        return directories.get(relativeDir);
+    }
+
+    /**
+     * Builds the folder tree in the same shape as a recursive walk of the storage directory:
+     * top-level folders sorted descending by name, each with all of its descendants.
+     *
+     * @return the top-level folders with their children
+     */
+    List<FileNode> tree() {
+        // One index throughout, even if a rebuild replaces it meanwhile
+        NavigableMap<Path, Map<String, StorageEntry>> snapshot = directories;
+        List<StorageEntry> topLevel = new ArrayList<>();
+        for (StorageEntry entry : snapshot.getOrDefault(ROOT, Map.of()).values()) {
+            if (entry.folder()) {
+                topLevel.add(entry);
+            }
+        }
+        topLevel.sort(Comparator.comparing(StorageEntry::name).reversed());
+
+        List<FileNode> result = new ArrayList<>();
+        for (StorageEntry entry : topLevel) {
+            FileNode folderNode = new FileNode(entry.name(), true, entry.name());
+            addChildren(snapshot, folderNode, Paths.get(entry.name()), entry.name());
+            result.add(folderNode);
+        }
+        return result;
+    }
+
+    private void addChildren(NavigableMap<Path, Map<String, StorageEntry>> snapshot, FileNode parentNode,
+                             Path relativeDir, String parentPathString) {
+        List<StorageEntry> entries = new ArrayList<>(snapshot.getOrDefault(relativeDir, Map.of()).values());
+        entries.sort(Comparator.comparing(StorageEntry::name));
+
+        for (StorageEntry entry : entries) {
+            String fullPath = parentPathString + "/" + entry.name();
+            FileNode node = new FileNode(entry.name(), entry.folder(), fullPath);
+            parentNode.addChild(node);
+            if (entry.folder()) {
+                addChildren(snapshot, node, relativeDir.resolve(entry.name()), fullPath);
+            }
+        }
+    }
+
+    /**
+     * Records a file that has been written or modified.
+     *
+     * @param file the file's path under the storage root
+     */
+    void fileWritten(Path file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            for (NavigableMap<Path, Map<String, StorageEntry>> target : targets()) {
+                put(target, file, attrs);
+            }
+        } catch (NoSuchFileException e) {
+            deleted(file);
+        } catch (IOException e) {
+            log.warn("Failed to index file {}", file, e);
+        }
+    }
+
+    /**
+     * Records a directory that has been created, along with any of its ancestors
+     * and contents that are not indexed yet.
+     *
+     * @param dir the directory's path under the storage root
+     */
+    void directoryCreated(Path dir) {
+        for (NavigableMap<Path, Map<String, StorageEntry>> target : targets()) {
+            Path top = dir.normalize();
+            while (top.getParent() != null && !top.getParent().equals(root)
+                    && !target.containsKey(relative(top.getParent()))) {
+                top = top.getParent();
+            }
+            try {
+                indexTree(top, target);
+            } catch (IOException e) {
+                log.warn("Failed to index directory {}", top, e);
+            }
+        }
+    }
+
+    /**
+     * Removes a file or directory, including everything below it, from the index.
+     *
+     * @param path the path under the storage root that was deleted
+     */
+    void deleted(Path path) {
+        Path rel = relative(path);
+        String name = rel.getFileName().toString();
+        for (NavigableMap<Path, Map<String, StorageEntry>> target : targets()) {
+            Map<String, StorageEntry> siblings = target.get(parent(rel));
+            if (siblings != null) {
+                siblings.remove(name);
+                // A file packed into its folder's archive is still there
+                StorageEntry packed = archived.entry(path.normalize());
+                if (packed != null) {
+                    siblings.put(name, packed);
+                }
+            }
+            if (target.containsKey(rel)) {
+                // The directory and its descendants, which sort right after it
+                Iterator<Path> below = target.tailMap(rel, true).keySet().iterator();
+                while (below.hasNext() && below.next().startsWith(rel)) {
+                    below.remove();
+                }
+            }
+        }
+    }
+
+    // The index to update, plus the one being rebuilt if a rebuild is under way
+    private List<NavigableMap<Path, Map<String, StorageEntry>>> targets() {
+        NavigableMap<Path, Map<String, StorageEntry>> fresh = rebuilding;
+        return fresh == null ? List.of(directories) : List.of(directories, fresh);
+    }
+
+    private void indexTree(Path start, NavigableMap<Path, Map<String, StorageEntry>> target) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && isHidden(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                target.putIfAbsent(relative(dir), new ConcurrentHashMap<>());
+                // Files of their own, visited next, take the place of archived entries with the same name
+                target.get(relative(dir)).putAll(archived.entries(dir.normalize()));
+                if (!dir.equals(root)) {
+                    put(target, dir, attrs);
+                }
+                watchKeys.put(dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!isHidden(file)) {
+                    put(target, file, attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void put(NavigableMap<Path, Map<String, StorageEntry>> target, Path path, BasicFileAttributes attrs) {
+        Path rel = relative(path);
+        StorageEntry entry = new StorageEntry(rel.getFileName().toString(), attrs.isDirectory(),
+                attrs.isDirectory() ? 0 : attrs.size(), attrs.lastModifiedTime().toMillis());
+        target.computeIfAbsent(parent(rel), dir -> new ConcurrentHashMap<>()).put(entry.name(), entry);
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = watchKeys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                    log.debug("Watch events lost for {}, rebuilding the index", dir);
+                    try {
+                        rebuild();
+                    } catch (IOException e) {
+                        log.warn("Failed to rebuild the storage index", e);
+                    }
+                    continue;
+                }
+
+                Path child = dir.resolve((Path) event.context());
+                if (isHidden(child)) {
+                    continue;
+                }
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    deleted(child);
+                } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+                    directoryCreated(child);
+                } else {
+                    fileWritten(child);
+                }
+            }
+
+            if (!key.reset()) {
+                watchKeys.remove(key);
+            }
+        }
+    }
+
+    // Hidden entries such as the blob store and temporary files are not listed
+    private static boolean isHidden(Path path) {
+        return path.getFileName().toString().startsWith(".");
+    }
+
+    private Path relative(Path path) {
+        return root.relativize(path.normalize());
+    }
+
+    private static Path parent(Path rel) {
+        return rel.getParent() == null ? ROOT : rel.getParent();
+    }
+}
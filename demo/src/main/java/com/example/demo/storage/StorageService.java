@@ -1,10 +1,46 @@
 package com.example.demo.storage;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -16,8 +52,75 @@ import java.util.stream.Collectors;
 @Service
 public class StorageService {
 
+    private static final Logger log = LoggerFactory.getLogger(StorageService.class);
+
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_LIST_DEPTH = 5;
+    private static final int MAX_EXPORT_FILES = 1000;
+    private static final long DEFAULT_THUMBNAIL_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_SAVE_ATTEMPTS = 5;
+    private static final int LOCK_STRIPES = 256;
+    private static final Duration ARCHIVE_START_DELAY = Duration.ofMinutes(5);
+
     // Define a directory where PDFs will be stored
-    private final Path storageLocation = Paths.get("pdf-storage");
+    private final Path storageLocation;
+
+    // Resident copy of the storage tree, used to serve listings from memory
+    private final StorageIndex index;
+
+    // Deduplicated content that the visible invoice files link to
+    private final BlobStore blobStore;
+
+    // First-page previews for the file browser
+    private final ThumbnailCache thumbnails;
+
+    @Value("${storage.thumbnails.max-bytes:" + DEFAULT_THUMBNAIL_CACHE_BYTES + "}")
+    private long thumbnailCacheBytes = DEFAULT_THUMBNAIL_CACHE_BYTES;
+
+    // Off outside Spring, so benchmarks and tests only measure the write itself
+    @Value("${storage.thumbnails.render-on-save:true}")
+    private boolean renderThumbnailsOnSave;
+
+    // Whether saved files and their renames are flushed to disk before a save returns; off outside Spring
+    @Value("${storage.fsync:true}")
+    private boolean fsync;
+
+    // Shares folder syncs between concurrent saves
+    private final DirectorySync directorySync = new DirectorySync();
+
+    // Serializes saves and deletes that touch the same path
+    private final PathLocks locks = new PathLocks(LOCK_STRIPES);
+
+    // Replaced by the application's registry when running in Spring
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    // Not set when the service is used outside Spring
+    @Autowired(required = false)
+    private ApplicationEventPublisher eventPublisher;
+
+    // Shared copy of the archive, see storage.backend; without one this directory is the only copy
+    @Autowired(required = false)
+    private StorageBackend backend;
+
+    @Value("${storage.sync-interval:PT1M}")
+    private Duration syncInterval = Duration.ofMinutes(1);
+
+    // Months at least this old are packed into archives; 0, the default outside Spring, never packs them
+    @Value("${storage.archive.after-months:0}")
+    private int archiveAfterMonths;
+
+    @Value("${storage.archive.interval:PT24H}")
+    private Duration archiveInterval = Duration.ofHours(24);
+
+    // Runs the backend sync and the archiving of finished months
+    private ScheduledExecutorService maintenance;
+
+    // Month folder -> its archive, for folders that have one
+    private final Map<Path, MonthArchive> archives = new ConcurrentHashMap<>();
+
+    // What this node last stored in or fetched from the backend, and what it still has to; loaded on first use
+    private BackendState backendState;
 
     /**
      * Constructs a new instance of the StorageService class.
@@ -28,43 +131,130 @@ public class StorageService {
      * @throws IOException if an I/O error occurs while creating the directory
      */
     public StorageService() throws IOException {
+        this(Paths.get("pdf-storage"));
+    }
+
+    /**
+     * Constructs a storage service rooted at the given directory, creating it if needed.
+     * In the application the directory is set with {@code storage.location}; tests and benchmarks
+     * work on a scratch directory.
+     *
+     * @param storageLocation the directory where PDFs are stored
+     * @throws IOException if an I/O error occurs while creating the directory
+     */
+    @Autowired
+    public StorageService(@Value("${storage.location:pdf-storage}") Path storageLocation) throws IOException {
+        this.storageLocation = storageLocation.normalize();
+        this.index = new StorageIndex(this.storageLocation, new StorageIndex.Archived() {
+            @Override
+            public Map<String, StorageEntry> entries(Path dir) {
+                return archivedEntries(dir);
+            }
+
+            @Override
+            public StorageEntry entry(Path file) {
+                MonthArchive.Entry entry = archivedEntry(file);
+                return entry == null ? null : toStorageEntry(entry);
+            }
+        });
+        this.blobStore = new BlobStore(this.storageLocation);
+
         // Create the directory if it does not exist
         if (!Files.exists(storageLocation)) {
             Files.createDirectories(storageLocation);
         }
+        this.thumbnails = new ThumbnailCache(this.storageLocation, DEFAULT_THUMBNAIL_CACHE_BYTES);
+    }
+
+    @PostConstruct
+    void startIndex() throws IOException {
+        thumbnails.setMaxBytes(thumbnailCacheBytes);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            index.start();
+        } finally {
+            sample.stop(meterRegistry.timer("storage.tree.walk", "source", "index"));
+        }
+
+        if (backend == null && archiveAfterMonths < 1) {
+            return;
+        }
+        CustomizableThreadFactory threads = new CustomizableThreadFactory("storage-maintenance-");
+        threads.setDaemon(true);
+        maintenance = Executors.newSingleThreadScheduledExecutor(threads);
+        if (backend != null) {
+            maintenance.scheduleWithFixedDelay(() -> {
+                try {
+                    syncWithBackend();
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Failed to sync the storage directory with the backend", e);
+                }
+            }, 0, syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (archiveAfterMonths > 0) {
+            maintenance.scheduleWithFixedDelay(() -> {
+                try {
+                    archiveFinishedMonths();
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Failed to archive finished months", e);
+                }
+            }, ARCHIVE_START_DELAY.toMillis(), archiveInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stopIndex() throws IOException {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+        directorySync.close();
+        thumbnails.close();
+        index.close();
+        if (backendState != null) {
+            backendState.save();
+        }
     }
 
     /**
      * Lists all files and folders within a given directory path, organizing them as FileNode objects.
      * Each folder is further populated with its children in a hierarchical structure.
+     * The storage location itself is served from the in-memory index; any other directory is walked.
      *
      * @param rootDir the root directory path from which the files and folders are to be listed
      * @return a list of FileNode objects, where each object represents a folder with its children
      * @throws IOException if an I/O error occurs accessing the directory or its contents
      */
     public List<FileNode> listFilesAndFolders(Path rootDir) throws IOException {
-        List<FileNode> result = new ArrayList<>();
+        if (rootDir.normalize().equals(storageLocation)) {
+            return index.tree();
+        }
 
-        List<Path> paths = new ArrayList<>();
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(rootDir)) {
-            for (Path path : stream) {
-                if (Files.isDirectory(path)) {
-                    paths.add(path);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            List<FileNode> result = new ArrayList<>();
+
+            List<Path> paths = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(rootDir)) {
+                for (Path path : stream) {
+                    if (Files.isDirectory(path)) {
+                        paths.add(path);
+                    }
                 }
             }
-        }
 
-        // Sort descending by folder name
-        paths.sort((a, b) -> b.getFileName().toString().compareTo(a.getFileName().toString()));
+            // Sort descending by folder name
+            paths.sort((a, b) -> b.getFileName().toString().compareTo(a.getFileName().toString()));
 
-        for (Path path : paths) {
-            String folderName = path.getFileName().toString();
-            FileNode folderNode = new FileNode(folderName, true, folderName);
-            addChildren(folderNode, path, folderName);
-            result.add(folderNode);
+            for (Path path : paths) {
+                String folderName = path.getFileName().toString();
+                FileNode folderNode = new FileNode(folderName, true, folderName);
+                addChildren(folderNode, path, folderName);
+                result.add(folderNode);
+            }
+            return result;
+        } finally {
+            sample.stop(meterRegistry.timer("storage.tree.walk", "source", "walk"));
         }
-
-        return result;
     }
 
 
@@ -97,8 +287,242 @@ public class StorageService {
                 }
             }
         } catch (IOException e) {
-            e.printStackTrace(); // or log
+            log.warn("Failed to list directory {}", currentPath, e);
+        }
+    }
+
+    /**
+     * Lists one page of the entries directly inside a folder, served from the in-memory index.
+     * Pages are addressed by an opaque cursor holding the last entry of the previous page, so paging
+     * stays consistent while files are added or removed. With a depth above 1 each sub-folder on the
+     * page also carries its first entries, up to the same limit, down to the given depth.
+     *
+     * @param folder the folder relative to the storage location; a leading "pdf-storage/" is accepted
+     * @param cursor the cursor returned with the previous page, or null for the first page
+     * @param limit the maximum number of entries per page and per nested folder
+     * @param sort the sort order of the entries
+     * @param descending whether to reverse the sort order
+     * @param depth the number of folder levels to include, 1 for the folder's own entries only
+     * @return the requested page of the folder listing
+     * @throws FileNotFoundException if the folder does not exist
+     * @throws IllegalArgumentException if the limit, depth or cursor is invalid
+     * @throws SecurityException if the path resolves outside the storage location
+     */
+    public FolderPage listFolder(String folder, String cursor, int limit, FolderSort sort,
+                                 boolean descending, int depth) throws IOException {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (depth < 1 || depth > MAX_LIST_DEPTH) {
+            throw new IllegalArgumentException("depth must be between 1 and " + MAX_LIST_DEPTH);
+        }
+
+        Path relativeDir = storageLocation.relativize(resolveFolder(folder));
+        Map<String, StorageEntry> children = index.children(relativeDir);
+        if (children == null) {
+            throw new FileNotFoundException("Folder not found: " + folder);
+        }
+
+        Comparator<StorageEntry> order = sort.comparator(descending);
+        List<StorageEntry> entries = new ArrayList<>(children.values());
+        entries.sort(order);
+
+        int start = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            int found = Collections.binarySearch(entries, decodeCursor(cursor), order);
+            start = found >= 0 ? found + 1 : -found - 1;
+        }
+        int end = Math.min(start + limit, entries.size());
+
+        List<FolderItem> items = new ArrayList<>(end - start);
+        for (StorageEntry entry : entries.subList(start, end)) {
+            items.add(toFolderItem(relativeDir, entry, order, limit, depth - 1));
+        }
+        String nextCursor = end < entries.size() ? encodeCursor(entries.get(end - 1)) : null;
+
+        return new FolderPage(toPathString(relativeDir), items, nextCursor);
+    }
+
+    private FolderItem toFolderItem(Path relativeDir, StorageEntry entry, Comparator<StorageEntry> order,
+                                    int limit, int remainingDepth) {
+        Path relativePath = relativeDir.resolve(entry.name());
+        List<FolderItem> children = null;
+
+        if (entry.folder() && remainingDepth > 0) {
+            children = new ArrayList<>();
+            List<StorageEntry> nested = new ArrayList<>(index.children(relativePath) == null
+                    ? List.of() : index.children(relativePath).values());
+            nested.sort(order);
+            for (StorageEntry child : nested.subList(0, Math.min(limit, nested.size()))) {
+                children.add(toFolderItem(relativePath, child, order, limit, remainingDepth - 1));
+            }
+        }
+
+        return new FolderItem(entry.name(), entry.folder() ? "folder" : "file", toPathString(relativePath),
+                entry.size(), entry.lastModified(), children);
+    }
+
+    // Accepts paths as the file browser sends them, e.g. "pdf-storage/2025/05"
+    private Path resolveFolder(String folder) {
+        String rootName = storageLocation.getFileName().toString();
+        String relative = folder == null ? "" : folder.replace('\\', '/');
+        if (relative.equals(rootName) || relative.startsWith(rootName + "/")) {
+            relative = relative.substring(rootName.length());
+        }
+        while (relative.startsWith("/")) {
+            relative = relative.substring(1);
+        }
+
+        Path dir = storageLocation.resolve(relative).normalize();
+        if (!dir.startsWith(storageLocation) || isHidden(dir)) {
+            throw new SecurityException("Path traversal outside storage location is not allowed");
         }
+        return dir;
+    }
+
+    /**
+     * Returns the directory the files are stored in.
+     *
+     * @return the storage directory
+     */
+    public Path getStorageLocation() {
+        return storageLocation;
+    }
+
+    private void publish(StorageEvent.Type type, Path path) {
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new StorageEvent(type, storageLocation.relativize(path)));
+        }
+    }
+
+    // Hidden entries (the blob store, temporary files) are internal to the service
+    private boolean isHidden(Path path) {
+        for (Path name : storageLocation.relativize(path)) {
+            if (name.toString().startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String toPathString(Path relativePath) {
+        return relativePath.toString().replace(File.separatorChar, '/');
+    }
+
+    private static String encodeCursor(StorageEntry last) {
+        String key = last.size() + "/" + last.lastModified() + "/" + last.name();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static StorageEntry decodeCursor(String cursor) {
+        String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("/", 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return new StorageEntry(parts[2], false, Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+    }
+
+    /**
+     * Collects the PDFs for an export: every PDF below a folder, sorted by path, followed by
+     * the individually listed files in the order given. Everything is validated up front so that
+     * an invalid request is rejected before any of the export is streamed.
+     *
+     * @param folder a folder to export, e.g. "2025/05", or null
+     * @param paths individual files to export, relative to the storage directory, or null
+     * @return the files to export
+     * @throws IllegalArgumentException if nothing or too many files are selected
+     * @throws SecurityException if a path points outside the storage directory
+     * @throws FileNotFoundException if the folder or one of the files does not exist
+     * @throws IOException if the folder cannot be walked
+     */
+    public List<Path> resolveExport(String folder, List<String> paths) throws IOException {
+        // A file selected twice is exported once, at its first position
+        Set<Path> files = new LinkedHashSet<>();
+        if (folder != null && !folder.isEmpty()) {
+            Path dir = resolveFolder(folder);
+            if (!Files.isDirectory(dir)) {
+                throw new FileNotFoundException("Folder not found: " + folder);
+            }
+            List<Path> found = new ArrayList<>();
+            try (Stream<Path> walk = Files.walk(dir)) {
+                for (Path path : (Iterable<Path>) walk::iterator) {
+                    if (isHidden(path)) {
+                        continue;
+                    }
+                    if (Files.isDirectory(path)) {
+                        // PDFs packed into the folder's archive, unless a file of the same name replaced them
+                        archivedEntries(path).keySet().forEach(name -> found.add(path.resolve(name)));
+                    } else if (Files.isRegularFile(path)) {
+                        found.add(path);
+                    }
+                }
+            }
+            found.stream()
+                    .filter(file -> file.getFileName().toString().endsWith(".pdf"))
+                    .sorted()
+                    .forEach(files::add);
+        }
+        if (paths != null) {
+            for (String path : paths) {
+                Path file = resolveFolder(path);
+                if (!Files.isRegularFile(file) && archivedEntry(file) == null) {
+                    throw new FileNotFoundException("File not found: " + path);
+                }
+                files.add(file);
+            }
+        }
+
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No files selected for export");
+        }
+        if (files.size() > MAX_EXPORT_FILES) {
+            throw new IllegalArgumentException("At most " + MAX_EXPORT_FILES + " files can be exported at once");
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Writes the files into a ZIP archive, one entry at a time, named by their path under the
+     * storage directory. Each file is copied straight from disk into the stream.
+     *
+     * @param files the files to archive, as returned by {@link #resolveExport(String, List)}
+     * @param out the stream to write the archive to; left open
+     * @throws IOException if a file cannot be read or the stream cannot be written
+     */
+    public void writeZip(List<Path> files, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // PDF content is already compressed; spend as little CPU as possible on it
+        zip.setLevel(Deflater.BEST_SPEED);
+        for (Path file : files) {
+            zip.putNextEntry(new ZipEntry(toPathString(storageLocation.relativize(file))));
+            try (InputStream in = openExported(file)) {
+                in.transferTo(zip);
+            }
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    /**
+     * Merges the files into a single PDF in the given order. Intermediate document structures are
+     * kept in temporary files rather than on the heap, and the result is written directly to the stream.
+     *
+     * @param files the PDFs to merge, as returned by {@link #resolveExport(String, List)}
+     * @param out the stream to write the merged PDF to; left open
+     * @throws IOException if a file is not a readable PDF or the stream cannot be written
+     */
+    public void writeMergedPdf(List<Path> files, OutputStream out) throws IOException {
+        // Archived PDFs are read from their mapped slices, loose ones from disk
+        PDFMergerUtility merger = new PDFMergerUtility();
+        for (Path file : files) {
+            if (Files.isRegularFile(file)) {
+                merger.addSource(file.toFile());
+            } else {
+                merger.addSource(openExported(file));
+            }
+        }
+        merger.setDestinationStream(out);
+        merger.mergeDocuments(MemoryUsageSetting.setupTempFileOnly());
     }
 
     /**
@@ -113,12 +537,77 @@ public class StorageService {
     // Load a PDF by its file name (for downloading/viewing)
     public byte[] loadFile(String relativePath) throws IOException {
         Path filePath = storageLocation.resolve(relativePath).normalize();
-        if (!Files.exists(filePath)) {
+        MappedSliceResource packed = Files.exists(filePath) ? null : archivedResource(filePath);
+        if (packed != null) {
+            ByteBuffer content = packed.content();
+            byte[] bytes = new byte[content.remaining()];
+            content.get(bytes);
+            return bytes;
+        }
+        if (!Files.exists(filePath) && !fetchFromBackend(filePath)) {
             throw new FileNotFoundException("File not found: " + filePath);
         }
-        return Files.readAllBytes(filePath);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return Files.readAllBytes(filePath);
+        } finally {
+            sample.stop(meterRegistry.timer("storage.read"));
+        }
+    }
+
+
+    /**
+     * Resolves a stored file as a {@link Resource} so it can be streamed to the client
+     * without reading the whole file into memory. A file packed into its month's archive is
+     * served from a memory-mapped slice of the archive.
+     *
+     * @param relativePath the relative path to the file within the storage directory
+     * @return a resource backed by the stored file
+     * @throws FileNotFoundException if no regular file exists at the given path
+     * @throws SecurityException if the path resolves outside the storage location
+     */
+    public Resource loadAsResource(String relativePath) throws IOException {
+        Path filePath = storageLocation.resolve(relativePath).normalize();
+        if (!filePath.startsWith(storageLocation) || isHidden(filePath)) {
+            throw new SecurityException("Path traversal outside storage location is not allowed");
+        }
+        if (!Files.isRegularFile(filePath)) {
+            MappedSliceResource packed = archivedResource(filePath);
+            if (packed != null) {
+                return packed;
+            }
+            if (!fetchFromBackend(filePath)) {
+                throw new FileNotFoundException("File not found: " + filePath);
+            }
+        }
+        return new FileSystemResource(filePath);
     }
 
+    /**
+     * Resolves the first-page thumbnail of a stored PDF, rendering it if it is not cached yet.
+     *
+     * @param relativePath the PDF's path within the storage directory; a leading "pdf-storage" is accepted
+     * @return a resource backed by the PNG thumbnail
+     * @throws FileNotFoundException if no regular file exists at the given path
+     * @throws SecurityException if the path resolves outside the storage location
+     * @throws IOException if the file is not a PDF that can be rendered
+     */
+    public Resource loadThumbnail(String relativePath) throws IOException {
+        Path filePath = resolveFolder(relativePath);
+        MappedSliceResource packed = Files.isRegularFile(filePath) ? null : archivedResource(filePath);
+        if (packed == null && !Files.isRegularFile(filePath)) {
+            throw new FileNotFoundException("File not found: " + filePath);
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return packed == null
+                    ? thumbnails.serve(filePath)
+                    : thumbnails.serve(filePath, packed.contentLength(), packed.lastModified(),
+                            () -> PDDocument.load(packed.getInputStream(), MemoryUsageSetting.setupMainMemoryOnly()));
+        } finally {
+            sample.stop(meterRegistry.timer("storage.thumbnail"));
+        }
+    }
 
 /**
  * Deletes a file or directory from the storage location.
@@ -132,34 +621,73 @@ public class StorageService {
 public boolean deleteFile(String filePath) throws IOException {
     Path targetLocation = storageLocation.resolve(filePath).normalize();
     // Security check to prevent path traversal
-    if (!targetLocation.startsWith(storageLocation)) {
+    if (!targetLocation.startsWith(storageLocation) || isHidden(targetLocation)) {
         throw new SecurityException("Path traversal outside storage location is not allowed");
     }
 
-    if (!Files.exists(targetLocation)) {
-        return false;
-    }
-
-    if (Files.isDirectory(targetLocation)) {
-        try (Stream<Path> files = Files.walk(targetLocation)) {
-            files.sorted(Comparator.reverseOrder()) // Delete children before parents
-                 .forEach(path -> {
-                     try {
-                         Files.delete(path);
-                     } catch (IOException e) {
-                         throw new UncheckedIOException(e);
-                     }
-                 });
-        } catch (UncheckedIOException e) {
-            throw e.getCause();
+    Timer.Sample sample = Timer.start(meterRegistry);
+    // Exclusive on the path itself: a folder is only deleted once no save below it is in progress
+    try (PathLocks.Held held = locks.lock(storageLocation.relativize(targetLocation), true)) {
+        MonthArchive archive = archive(targetLocation.getParent());
+        boolean archived = archive != null && archive.remove(targetLocation.getFileName().toString());
+        if (!Files.exists(targetLocation)) {
+            if (!archived) {
+                return false;
+            }
+            index.deleted(targetLocation);
+            publish(StorageEvent.Type.DELETED, targetLocation);
+        } else {
+            deleteLocally(targetLocation);
+        }
+        if (backend != null && !targetLocation.equals(storageLocation)) {
+            deleteFromBackend(targetLocation);
         }
-    } else {
-        Files.delete(targetLocation);
+    } finally {
+        sample.stop(meterRegistry.timer("storage.delete"));
     }
-    
+    log.info("Deleted {}", targetLocation);
+
     return true;
 }
 
+    // The caller holds an exclusive lock on the path
+    private void deleteLocally(Path targetLocation) throws IOException {
+        if (Files.isDirectory(targetLocation)) {
+            archives.keySet().removeIf(dir -> dir.startsWith(targetLocation));
+            // The blobs the deleted files link to, released once the files are gone
+            Set<String> digests = new HashSet<>();
+            try (Stream<Path> files = Files.walk(targetLocation)) {
+                files.sorted(Comparator.reverseOrder()) // Delete children before parents
+                     .forEach(path -> {
+                         try {
+                             String digest = blobStore.linkedDigest(path);
+                             if (digest != null) {
+                                 digests.add(digest);
+                             }
+                             Files.delete(path);
+                         } catch (IOException e) {
+                             throw new UncheckedIOException(e);
+                         }
+                     });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            index.deleted(targetLocation);
+            publish(StorageEvent.Type.DELETED, targetLocation);
+            for (String digest : digests) {
+                blobStore.release(digest);
+            }
+        } else {
+            String digest = blobStore.linkedDigest(targetLocation);
+            Files.delete(targetLocation);
+            index.deleted(targetLocation);
+            publish(StorageEvent.Type.DELETED, targetLocation);
+            if (digest != null) {
+                blobStore.release(digest);
+            }
+        }
+    }
+
     /**
      * Creates a subdirectory at the specified path within the storage location.
      * If the directory does not already exist, it will be created, including any necessary but nonexistent parent directories.
@@ -170,13 +698,8 @@ public boolean deleteFile(String filePath) throws IOException {
      */
     public boolean createDirectory(String targetDir, String folderName) throws IOException {
         Path targetLocation = storageLocation.resolve(targetDir).resolve(folderName);
-        if (!Files.exists(targetLocation)) {
-            Files.createDirectories(targetLocation);
-            System.out.println("Created subdirectory: " + targetLocation.toAbsolutePath());
-            return true;
-        } else {
-            System.out.println("Subdirectory already exists: " + targetLocation.toAbsolutePath());
-            return false;
+        try (PathLocks.Held held = locks.lock(storageLocation.relativize(targetLocation.normalize()), false)) {
+            return createDirectories(targetLocation);
         }
     }
 
@@ -216,19 +739,652 @@ public boolean deleteFile(String filePath) throws IOException {
 
 
     public String saveInvoice(byte[] pdfContent, String fileName, String date) throws IOException {
-        Path targetFolder = createSubdirectory(date);
-        Path targetLocation = targetFolder.resolve(fileName);
+        return saveInvoice(fileName, date, out -> out.write(pdfContent));
+    }
+
+    /**
+     * Saves an invoice as it is being written, so the document is never held in memory as a whole.
+     * The content goes to a hidden temporary file in the month's folder, which is renamed over the target
+     * once it is complete: readers, and concurrent writers of the same name, only ever see whole files,
+     * and the last rename wins. With {@code storage.fsync} on, the file and the rename are on disk
+     * before this returns; renames into the same folder at the same time share one folder sync.
+     * With a {@link StorageBackend} configured, the file is also stored there before this returns; if that
+     * fails, the upload is retried by the next {@link #syncWithBackend()} and the save still succeeds.
+     *
+     * @param fileName the name of the file to save, e.g. "Alice.pdf"
+     * @param date the date representing the target month and year in the format "yyyy-MM-dd"
+     * @param content writes the PDF
+     * @return the path of the stored file relative to the storage directory
+     * @throws IllegalArgumentException if the file name does not name a file directly in the month's folder
+     * @throws IOException if the file cannot be written
+     */
+    public String saveInvoice(String fileName, String date, ContentWriter content) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failed";
+        Path targetFolder = monthFolder(date);
+        Path targetLocation = invoiceFile(targetFolder, fileName);
+        // The name is a single visible file name, so the temporary file is a hidden sibling of the target
+        Path temp = targetFolder.resolve("." + fileName + "." + UUID.randomUUID() + ".tmp");
 
-        if (Files.exists(targetLocation)) {
-            System.out.println("File already exists, overwriting: " + targetLocation);
+        try {
+            BlobStore.Staged staged;
+            // Rendered while the file is only held shared, so saves of the same file render side by side;
+            // a delete of the month or year folder still waits for them
+            try (PathLocks.Held held = locks.lock(storageLocation.relativize(targetLocation), false)) {
+                createDirectories(targetFolder);
+                staged = BlobStore.stage(temp, content, fsync);
+            }
+            String digest = staged.digest();
+
+            // Saves of the same file queue up here, only to move their staged content into place
+            try (PathLocks.Held held = locks.lock(storageLocation.relativize(targetLocation), true)) {
+                if (!moveIntoPlace(temp, digest, targetLocation)) {
+                    log.atDebug().addKeyValue("path", targetLocation).addKeyValue("digest", digest)
+                            .log("File unchanged, skipping write");
+                    outcome = "unchanged";
+                    return storageLocation.relativize(targetLocation).toString();
+                }
+                // The new file replaces the copy packed into the month's archive, which must not reappear if it is deleted
+                MonthArchive archive = archive(targetFolder);
+                if (archive != null) {
+                    archive.remove(fileName);
+                }
+                if (backend != null) {
+                    uploadToBackend(targetLocation);
+                }
+
+                index.fileWritten(targetLocation);
+                publish(StorageEvent.Type.WRITTEN, targetLocation);
+                if (renderThumbnailsOnSave) {
+                    thumbnails.renderLater(targetLocation);
+                }
+                log.atDebug().addKeyValue("path", targetLocation).addKeyValue("digest", digest)
+                        .addKeyValue("bytes", staged.size()).log("File saved successfully");
+                outcome = "written";
+
+                return storageLocation.relativize(targetLocation).toString();
+            }
+        } finally {
+            sample.stop(meterRegistry.timer("storage.write", "outcome", outcome));
+            Files.deleteIfExists(temp);
         }
+    }
+
+    /**
+     * Moves staged content into place through the blob store: the target becomes a link to the content's
+     * blob, or, without hard links, the staged file itself. The blob the target linked to before is released.
+     * The caller holds an exclusive lock on the target.
+     *
+     * @param temp the staged content, in the target's folder
+     * @param digest the content's digest
+     * @param targetLocation where the content belongs
+     * @return false if the target already holds exactly this content
+     * @throws IOException if the content cannot be moved into place
+     */
+    private boolean moveIntoPlace(Path temp, String digest, Path targetLocation) throws IOException {
+        Path blob = null;
+        String previousDigest = null;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                blob = blobStore.adopt(digest, temp);
+            } catch (UnsupportedOperationException e) {
+                // No hard links on this file system; keep a plain file instead
+                blob = null;
+            }
+
+            try {
+                if (blob != null && blobStore.isLinked(blob, targetLocation)) {
+                    return false;
+                }
 
-        Files.write(targetLocation, pdfContent, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        System.out.println("File saved successfully to: " + targetLocation.toAbsolutePath());
+                previousDigest = null;
+                if (Files.exists(targetLocation)) {
+                    log.debug("File already exists, overwriting: {}", targetLocation);
+                    // Looked up rather than hashed again; null if the file is not linked to a blob
+                    previousDigest = blobStore.linkedDigest(targetLocation);
+                }
 
-        return storageLocation.relativize(targetLocation).toString();
+                if (blob == null || Files.isSameFile(blob, temp)) {
+                    // The new file is its own blob (or there are no blobs); it only has to be renamed into place
+                    Files.move(temp, targetLocation, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    blobStore.link(blob, targetLocation);
+                }
+                break;
+            } catch (NoSuchFileException e) {
+                // A concurrent save or delete released the blob or removed the target; the staged
+                // file still holds the content, so start over from it
+                if (attempt == MAX_SAVE_ATTEMPTS || !Files.exists(temp)) {
+                    throw e;
+                }
+            }
+        }
+        if (fsync) {
+            directorySync.sync(targetLocation.getParent());
+            if (blob != null) {
+                directorySync.sync(blob.getParent());
+            }
+        }
+        if (previousDigest != null && !previousDigest.equals(digest)) {
+            blobStore.release(previousDigest);
+        }
+        return true;
     }
+
+    /**
+     * Creates the month folder for a date, if it does not exist yet.
+     *
+     * @param date the date in format yyyy-MM-dd
+     * @return the month folder
+     * @throws IOException if the folder cannot be created
+     */
     public Path createSubdirectory(String date) throws IOException {
+        Path subDir = monthFolder(date);
+        try (PathLocks.Held held = locks.lock(storageLocation.relativize(subDir), false)) {
+            createDirectories(subDir);
+        }
+        return subDir;
+    }
+
+    // The caller holds a lock on the directory or on a path below it
+    private boolean createDirectories(Path dir) throws IOException {
+        // Create the directories if they don't exist
+        if (!Files.exists(dir)) {
+            Files.createDirectories(dir);
+            index.directoryCreated(dir);
+            log.info("Created subdirectory: {}", dir.toAbsolutePath());
+            return true;
+        } else {
+            log.debug("Subdirectory already exists: {}", dir.toAbsolutePath());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the path {@link #saveInvoice(byte[], String, String)} stores a file at for the given date,
+     * without creating anything.
+     *
+     * @param fileName the name of the file
+     * @param date the date in format yyyy-MM-dd
+     * @return the path relative to the storage directory, e.g. "2025/05/Alice.pdf"
+     * @throws IllegalArgumentException if the file name does not name a file directly in the month's folder
+     */
+    public String invoicePath(String fileName, String date) {
+        return toPathString(storageLocation.relativize(invoiceFile(monthFolder(date), fileName)));
+    }
+
+    /**
+     * Checks whether a file exists within the storage location, on its own or packed into an archive.
+     *
+     * @param relativePath the path of the file relative to the storage directory
+     * @return true if the path is a regular file inside the storage directory
+     */
+    public boolean exists(String relativePath) {
+        Path filePath = storageLocation.resolve(relativePath).normalize();
+        return filePath.startsWith(storageLocation)
+                && (Files.isRegularFile(filePath) || archivedEntry(filePath) != null);
+    }
+
+    /**
+     * Brings the storage directory and the backend in line with each other. Uploads and deletes that
+     * failed earlier are retried first. Files whose ETag in the backend differs from the one recorded
+     * here, because other nodes saved them, are downloaded; files recorded here but gone from the backend
+     * were deleted by other nodes and are deleted here too; and files never recorded, such as an archive
+     * from before the backend was configured, are uploaded. Files packed into month archives are
+     * handled like files of their own. Runs every {@code storage.sync-interval}.
+     *
+     * @throws IOException if the backend cannot be listed
+     */
+    void syncWithBackend() throws IOException {
+        BackendState state = backendState();
+        int retried = retryPending(state);
+
+        // Recorded before listing: a file recorded differently by the time it is looked at was saved,
+        // fetched or deleted here meanwhile, and that already took care of it
+        Map<String, String> seen = state.etags();
+        Map<String, StorageBackend.StoredObject> remote = new HashMap<>();
+        for (StorageBackend.StoredObject object : backend.list()) {
+            if (!isHiddenKey(object.key())) {
+                remote.put(object.key(), object);
+            }
+        }
+        Map<String, StorageEntry> local = new HashMap<>();
+        collectFiles(Paths.get(""), local);
+
+        int downloaded = 0, deleted = 0, uploaded = 0, unknown = 0;
+        for (StorageBackend.StoredObject object : remote.values()) {
+            String key = object.key();
+            Path filePath = storageLocation.resolve(key).normalize();
+            if (Objects.equals(object.etag(), seen.get(key)) || !isStorable(filePath)) {
+                continue;
+            }
+            try (PathLocks.Held held = locks.lock(storageLocation.relativize(filePath), true)) {
+                if (Objects.equals(state.etag(key), seen.get(key)) && download(filePath)) {
+                    downloaded++;
+                }
+            }
+        }
+        for (String key : local.keySet()) {
+            if (remote.containsKey(key)) {
+                continue;
+            }
+            Path filePath = storageLocation.resolve(key).normalize();
+            try (PathLocks.Held held = locks.lock(storageLocation.relativize(filePath), true)) {
+                boolean archived = !Files.isRegularFile(filePath) && archivedEntry(filePath) != null;
+                if (!(archived || Files.isRegularFile(filePath)) || state.pendingChange(key) != null
+                        || !Objects.equals(state.etag(key), seen.get(key))) {
+                    continue;
+                }
+                if (seen.containsKey(key)) {
+                    if (archived) {
+                        archive(filePath.getParent()).remove(filePath.getFileName().toString());
+                        index.deleted(filePath);
+                        publish(StorageEvent.Type.DELETED, filePath);
+                    } else {
+                        deleteLocally(filePath);
+                    }
+                    state.forget(key);
+                    deleted++;
+                } else if (state.complete()) {
+                    uploadToBackend(filePath);
+                    uploaded++;
+                } else {
+                    // Without the state it cannot be told whether other nodes deleted it
+                    unknown++;
+                }
+            }
+        }
+        // Gone from both sides
+        for (Map.Entry<String, String> recorded : seen.entrySet()) {
+            String key = recorded.getKey();
+            if (!remote.containsKey(key) && !local.containsKey(key)) {
+                try (PathLocks.Held held = locks.lock(storageLocation.relativize(storageLocation.resolve(key).normalize()), true)) {
+                    if (recorded.getValue().equals(state.etag(key)) && state.pendingChange(key) == null) {
+                        state.forget(key);
+                    }
+                }
+            }
+        }
+        state.save();
+
+        if (retried + downloaded + deleted + uploaded > 0) {
+            log.info("Synced with the storage backend: {} retried, {} downloaded, {} deleted, {} uploaded",
+                    retried, downloaded, deleted, uploaded);
+        }
+        if (unknown > 0) {
+            log.warn("{} files are not in the storage backend and were not uploaded, as the backend state could not be read",
+                    unknown);
+        }
+    }
+
+    // Makes the uploads and deletes that failed before; returns how many went through
+    private int retryPending(BackendState state) {
+        int retried = 0;
+        for (Map.Entry<String, BackendState.Pending> change : state.pending().entrySet()) {
+            String key = change.getKey();
+            Path filePath = storageLocation.resolve(key).normalize();
+            try (PathLocks.Held held = locks.lock(storageLocation.relativize(filePath), true)) {
+                if (state.pendingChange(key) != change.getValue()) {
+                    // Saved or deleted again meanwhile, which made or queued the change itself
+                    continue;
+                }
+                if (change.getValue() == BackendState.Pending.DELETE) {
+                    backend.delete(key);
+                    state.forget(key);
+                } else if (Files.isRegularFile(filePath) || archivedEntry(filePath) != null) {
+                    state.synced(key, upload(key, filePath));
+                } else {
+                    state.forget(key);
+                }
+                retried++;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed again to {} {} in the storage backend", change.getValue().name().toLowerCase(), key, e);
+            }
+        }
+        return retried;
+    }
+
+    // Loaded on first use rather than at startup, as the backend may be set after the service is started
+    private synchronized BackendState backendState() {
+        if (backendState == null) {
+            backendState = BackendState.load(storageLocation);
+            if (!backendState.complete()) {
+                log.warn("The storage backend state could not be read; files only found here are not uploaded until it is rebuilt");
+            }
+        }
+        return backendState;
+    }
+
+    // The caller holds an exclusive lock on the file; a failed upload is queued rather than failing the save
+    private void uploadToBackend(Path filePath) {
+        String key = toKey(filePath);
+        BackendState state = backendState();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            state.synced(key, upload(key, filePath));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to upload {} to the storage backend; retrying with the next sync", key, e);
+            state.queue(key, BackendState.Pending.UPLOAD);
+            saveBackendState(state);
+        } finally {
+            sample.stop(meterRegistry.timer("storage.backend", "operation", "upload"));
+        }
+    }
+
+    // The caller holds an exclusive lock on the file; a file packed into its month's archive is uploaded from a copy
+    private String upload(String key, Path filePath) throws IOException {
+        if (Files.isRegularFile(filePath)) {
+            return backend.upload(key, filePath);
+        }
+        MappedSliceResource packed = archivedResource(filePath);
+        if (packed == null) {
+            throw new FileNotFoundException("File not found: " + filePath);
+        }
+        Path temp = filePath.resolveSibling("." + filePath.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (InputStream in = packed.getInputStream()) {
+                Files.copy(in, temp);
+            }
+            return backend.upload(key, temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // The caller holds an exclusive lock on the path; a failed delete is queued for every object below it
+    private void deleteFromBackend(Path targetLocation) {
+        String key = toKey(targetLocation);
+        BackendState state = backendState();
+        List<String> keys = state.keysAt(key);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            backend.delete(key);
+            state.forget(key);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to delete {} from the storage backend; retrying with the next sync", key, e);
+            state.forget(key);
+            for (String deleted : keys) {
+                state.queue(deleted, BackendState.Pending.DELETE);
+            }
+            saveBackendState(state);
+        } finally {
+            sample.stop(meterRegistry.timer("storage.backend", "operation", "delete"));
+        }
+    }
+
+    // The queue of pending changes must outlive a crash; the ETags alone are saved with the next sync
+    private void saveBackendState(BackendState state) {
+        try {
+            state.save();
+        } catch (IOException e) {
+            log.warn("Failed to save the storage backend state", e);
+        }
+    }
+
+    /**
+     * Downloads a file from the backend into the storage directory, replacing the local copy.
+     *
+     * @param filePath where the file belongs in the storage directory
+     * @return false if there is no backend, it does not hold the file, or the local copy has changes
+     *         the backend does not have yet
+     * @throws IOException if the file cannot be downloaded
+     */
+    private boolean fetchFromBackend(Path filePath) throws IOException {
+        if (backend == null || !isStorable(filePath)) {
+            return false;
+        }
+        try (PathLocks.Held held = locks.lock(storageLocation.relativize(filePath), true)) {
+            return download(filePath);
+        }
+    }
+
+    // The caller holds an exclusive lock on the file
+    private boolean download(Path filePath) throws IOException {
+        String key = toKey(filePath);
+        BackendState state = backendState();
+        if (state.pendingChange(key) != null) {
+            return false;
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Path temp = filePath.resolveSibling("." + filePath.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            createDirectories(filePath.getParent());
+            String etag = backend.download(key, temp);
+            if (etag == null) {
+                return false;
+            }
+            if (fsync) {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+            // Only the downloaded content is hashed; the local copy's digest is looked up
+            moveIntoPlace(temp, BlobStore.digest(temp), filePath);
+            state.synced(key, etag);
+            MonthArchive archive = archive(filePath.getParent());
+            if (archive != null) {
+                archive.remove(filePath.getFileName().toString());
+            }
+            index.fileWritten(filePath);
+            publish(StorageEvent.Type.WRITTEN, filePath);
+        } finally {
+            sample.stop(meterRegistry.timer("storage.backend", "operation", "download"));
+            Files.deleteIfExists(temp);
+        }
+        log.atDebug().addKeyValue("path", filePath).log("File downloaded from the storage backend");
+        return true;
+    }
+
+    // A path a file can be stored at: inside the storage directory, and not one of its hidden files
+    private boolean isStorable(Path filePath) {
+        return filePath.startsWith(storageLocation) && !filePath.equals(storageLocation) && !isHidden(filePath);
+    }
+
+    // Every file below a folder in the index, keyed the way the backend names them
+    private void collectFiles(Path relativeDir, Map<String, StorageEntry> files) {
+        Map<String, StorageEntry> children = index.children(relativeDir);
+        if (children == null) {
+            return;
+        }
+        for (StorageEntry entry : children.values()) {
+            Path relativePath = relativeDir.resolve(entry.name());
+            if (entry.folder()) {
+                collectFiles(relativePath, files);
+            } else {
+                files.put(toPathString(relativePath), entry);
+            }
+        }
+    }
+
+    private String toKey(Path path) {
+        return toPathString(storageLocation.relativize(path));
+    }
+
+    private static boolean isHiddenKey(String key) {
+        for (String name : key.split("/")) {
+            if (name.startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Packs the PDFs of a finished month into the month's archive and deletes them as files, so the
+     * month takes one segment file and its index instead of a file per invoice. Listings, views and
+     * exports are unchanged: packed PDFs are listed as before and served from the archive. Invoices
+     * saved into the month later are files of their own again until the month is packed once more.
+     *
+     * @param month the month in the format yyyy-MM, before the current month
+     * @return the number of PDFs packed
+     * @throws IllegalArgumentException if the month is invalid or not finished yet
+     * @throws FileNotFoundException if the month has no folder
+     * @throws IOException if the archive cannot be written
+     */
+    public int archiveMonth(String month) throws IOException {
+        YearMonth yearMonth;
+        try {
+            yearMonth = YearMonth.parse(month);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Month must be in format yyyy-MM");
+        }
+        if (!yearMonth.isBefore(YearMonth.now())) {
+            throw new IllegalArgumentException("Only finished months can be archived");
+        }
+
+        Path dir = monthFolder(yearMonth + "-01");
+        Timer.Sample sample = Timer.start(meterRegistry);
+        // Exclusive on the month: saves and deletes in it wait until the files are packed
+        try (PathLocks.Held held = locks.lock(storageLocation.relativize(dir), true)) {
+            if (!Files.isDirectory(dir)) {
+                throw new FileNotFoundException("Folder not found: " + month);
+            }
+            List<Path> files;
+            try (Stream<Path> list = Files.list(dir)) {
+                files = list.filter(file -> !isHidden(file) && file.getFileName().toString().endsWith(".pdf"))
+                        .filter(Files::isRegularFile)
+                        .sorted()
+                        .toList();
+            }
+            if (files.isEmpty()) {
+                return 0;
+            }
+
+            MonthArchive archive = archive(dir);
+            if (archive == null) {
+                archive = MonthArchive.create(dir);
+                archives.put(dir, archive);
+            }
+            List<Path> packed = archive.append(files);
+            if (fsync) {
+                directorySync.sync(dir);
+            }
+            for (Path file : packed) {
+                // Looked up rather than hashed; null if the file is not linked to a blob
+                String digest = blobStore.linkedDigest(file);
+                Files.delete(file);
+                // Listed from the archive from now on, with the same size and modification time
+                index.deleted(file);
+                if (digest != null) {
+                    blobStore.release(digest);
+                }
+            }
+
+            log.info("Archived {} of {} files in {}", packed.size(), files.size(), dir);
+            return packed.size();
+        } finally {
+            sample.stop(meterRegistry.timer("storage.archive"));
+        }
+    }
+
+    /**
+     * Archives every month that is at least {@code storage.archive.after-months} old and still has
+     * files of its own. Runs every {@code storage.archive.interval}.
+     *
+     * @throws IOException if a month cannot be archived
+     */
+    void archiveFinishedMonths() throws IOException {
+        YearMonth cutoff = YearMonth.now().minusMonths(archiveAfterMonths - 1L);
+        Map<String, StorageEntry> years = index.children(Paths.get(""));
+        if (years == null) {
+            return;
+        }
+        for (StorageEntry year : years.values()) {
+            Map<String, StorageEntry> months = year.folder() ? index.children(Paths.get(year.name())) : null;
+            if (months == null) {
+                continue;
+            }
+            for (StorageEntry month : months.values()) {
+                YearMonth yearMonth;
+                try {
+                    yearMonth = YearMonth.parse(year.name() + "-" + month.name());
+                } catch (DateTimeParseException e) {
+                    // Not a month folder, e.g. one created by hand
+                    continue;
+                }
+                if (month.folder() && yearMonth.isBefore(cutoff)) {
+                    archiveMonth(yearMonth.toString());
+                }
+            }
+        }
+    }
+
+    // The archive of a folder, opened the first time it is needed
+    private MonthArchive archive(Path dir) {
+        if (dir == null) {
+            return null;
+        }
+        MonthArchive archive = archives.get(dir);
+        if (!Files.exists(dir.resolve(MonthArchive.INDEX))) {
+            // Deleted, along with its folder, since it was opened, e.g. by hand or by another node's sync
+            if (archive != null) {
+                archives.remove(dir, archive);
+            }
+            return null;
+        }
+        if (archive == null) {
+            try {
+                archive = MonthArchive.open(dir);
+            } catch (IOException e) {
+                log.warn("Failed to open the archive in {}", dir, e);
+                return null;
+            }
+            MonthArchive opened = archives.putIfAbsent(dir, archive);
+            if (opened != null) {
+                archive = opened;
+            }
+        }
+        return archive;
+    }
+
+    private Map<String, StorageEntry> archivedEntries(Path dir) {
+        MonthArchive archive = archive(dir);
+        if (archive == null) {
+            return Map.of();
+        }
+        Map<String, StorageEntry> entries = new HashMap<>();
+        for (MonthArchive.Entry entry : archive.entries().values()) {
+            entries.put(entry.name(), toStorageEntry(entry));
+        }
+        return entries;
+    }
+
+    private static StorageEntry toStorageEntry(MonthArchive.Entry entry) {
+        return new StorageEntry(entry.name(), false, entry.length(), entry.lastModified());
+    }
+
+    private MonthArchive.Entry archivedEntry(Path filePath) {
+        MonthArchive archive = archive(filePath.getParent());
+        return archive == null ? null : archive.entry(filePath.getFileName().toString());
+    }
+
+    private MappedSliceResource archivedResource(Path filePath) {
+        if (!filePath.startsWith(storageLocation) || isHidden(filePath)) {
+            return null;
+        }
+        MonthArchive archive = archive(filePath.getParent());
+        if (archive == null) {
+            return null;
+        }
+        String name = filePath.getFileName().toString();
+        MonthArchive.Entry entry = archive.entry(name);
+        ByteBuffer content = archive.read(name);
+        return entry == null || content == null ? null : new MappedSliceResource(content, name, entry.lastModified());
+    }
+
+    private InputStream openExported(Path file) throws IOException {
+        if (Files.isRegularFile(file)) {
+            return Files.newInputStream(file);
+        }
+        MappedSliceResource packed = archivedResource(file);
+        if (packed == null) {
+            throw new FileNotFoundException("File not found: " + file);
+        }
+        return packed.getInputStream();
+    }
+
+    private Path monthFolder(String date) {
         // Parse year and month from date (expected format: yyyy-MM-dd)
         String[] parts = date.split("-");
         if (parts.length != 3) {
@@ -238,16 +1394,21 @@ public boolean deleteFile(String filePath) throws IOException {
         String month = parts[1];
 
         // Construct the subdirectory path
-        Path subDir = storageLocation.resolve(Paths.get(year, month));
+        return storageLocation.resolve(Paths.get(year, month));
+    }
 
-        // Create the directories if they don't exist
-        if (!Files.exists(subDir)) {
-            Files.createDirectories(subDir);
-            System.out.println("Created subdirectory: " + subDir.toAbsolutePath());
-        } else {
-            System.out.println("Subdirectory already exists: " + subDir.toAbsolutePath());
+    /**
+     * Resolves the file an invoice is saved as. The name must be a file directly in the month's folder,
+     * inside the storage directory, and not hidden, which would let it replace internal files such
+     * as a month's archive.
+     */
+    private Path invoiceFile(Path folder, String fileName) {
+        Path normalizedFolder = folder.normalize();
+        Path file = normalizedFolder.resolve(fileName).normalize();
+        if (!normalizedFolder.startsWith(storageLocation) || normalizedFolder.equals(storageLocation)
+                || !normalizedFolder.equals(file.getParent()) || file.getFileName().toString().startsWith(".")) {
+            throw new IllegalArgumentException("Not a file name in the month's folder: " + fileName);
         }
-
-        return subDir;
+        return file;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,367 @@
+package com.example.demo.storage;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * First-page PNG thumbnails of the stored PDFs, kept in a hidden folder under the storage root.
+ * A thumbnail is keyed by the PDF's path, size and modification time, so a rewritten invoice gets
+ * a fresh thumbnail and the stale one simply ages out. The folder is bounded in bytes: when it grows
+ * past the limit the least recently served thumbnails are deleted first, except those that are being
+ * read at the time.
+ */
+class ThumbnailCache {
+
+    static final String THUMBNAIL_FOLDER = ".thumbnails";
+    static final int WIDTH = 240;
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    private final Path storageLocation;
+    private final Path thumbnailRoot;
+    private volatile long maxBytes;
+
+    // Thumbnail key -> file size, least recently used first; guarded by this
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    // Thumbnail key -> number of open streams; guarded by this
+    private final Map<String, Integer> readers = new HashMap<>();
+
+    // Thumbnails being rendered, until they are in the cache, so concurrent requests render each once
+    private final Map<String, CompletableFuture<Path>> rendering = new ConcurrentHashMap<>();
+    private ExecutorService backgroundRenderer;
+
+    ThumbnailCache(Path storageLocation, long maxBytes) throws IOException {
+        this.storageLocation = storageLocation;
+        this.thumbnailRoot = storageLocation.resolve(THUMBNAIL_FOLDER);
+        this.maxBytes = maxBytes;
+        Files.createDirectories(thumbnailRoot);
+        loadExisting();
+    }
+
+    void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        synchronized (this) {
+            evict();
+        }
+    }
+
+    /**
+     * Returns the thumbnail of a PDF's first page, rendering it if it is not cached yet.
+     *
+     * @param pdf the PDF under the storage root
+     * @return the path of the PNG thumbnail
+     * @throws IOException if the PDF cannot be read or rendered
+     */
+    Path get(Path pdf) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(pdf, BasicFileAttributes.class);
+        return get(pdf, attrs.size(), attrs.lastModifiedTime().toMillis(),
+                () -> PDDocument.load(pdf.toFile(), MemoryUsageSetting.setupMainMemoryOnly()));
+    }
+
+    /**
+     * Returns the thumbnail of a PDF that is not a file of its own, such as one packed into a
+     * {@link MonthArchive}, rendering it if it is not cached yet.
+     *
+     * @param pdf the PDF's path under the storage root
+     * @param pdfSize the PDF's size in bytes
+     * @param lastModified the PDF's modification time in epoch milliseconds
+     * @param loader loads the PDF if it has to be rendered
+     * @return the path of the PNG thumbnail
+     * @throws IOException if the PDF cannot be read or rendered
+     */
+    Path get(Path pdf, long pdfSize, long lastModified, DocumentLoader loader) throws IOException {
+        String key = key(pdf, pdfSize, lastModified);
+        Path thumbnail = thumbnailRoot.resolve(key + ".png");
+        synchronized (this) {
+            if (entries.get(key) != null && Files.exists(thumbnail)) {
+                return thumbnail;
+            }
+        }
+
+        CompletableFuture<Path> claim = new CompletableFuture<>();
+        CompletableFuture<Path> inFlight = rendering.putIfAbsent(key, claim);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+        try {
+            if (!Files.exists(thumbnail)) {
+                render(pdf, loader, thumbnail);
+            }
+            long size = Files.size(thumbnail);
+            synchronized (this) {
+                Long previous = entries.put(key, size);
+                totalBytes += size - (previous == null ? 0 : previous);
+                evict();
+            }
+            claim.complete(thumbnail);
+            return thumbnail;
+        } catch (IOException | RuntimeException e) {
+            claim.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Only now that the thumbnail is in the cache can the next request skip the claim
+            rendering.remove(key, claim);
+        }
+    }
+
+    /**
+     * Returns the thumbnail of a PDF's first page as a resource to be served, see {@link #get(Path)}.
+     * The thumbnail is not evicted while a stream of it is open, and is rendered again if it was
+     * evicted before it is read.
+     *
+     * @param pdf the PDF under the storage root
+     * @return the thumbnail
+     * @throws IOException if the PDF cannot be read or rendered
+     */
+    Resource serve(Path pdf) throws IOException {
+        return new ServedThumbnail(get(pdf), () -> get(pdf));
+    }
+
+    /**
+     * Returns the thumbnail of a PDF that is not a file of its own as a resource to be served,
+     * see {@link #get(Path, long, long, DocumentLoader)} and {@link #serve(Path)}.
+     *
+     * @param pdf the PDF's path under the storage root
+     * @param pdfSize the PDF's size in bytes
+     * @param lastModified the PDF's modification time in epoch milliseconds
+     * @param loader loads the PDF if it has to be rendered
+     * @return the thumbnail
+     * @throws IOException if the PDF cannot be read or rendered
+     */
+    Resource serve(Path pdf, long pdfSize, long lastModified, DocumentLoader loader) throws IOException {
+        return new ServedThumbnail(get(pdf, pdfSize, lastModified, loader),
+                () -> get(pdf, pdfSize, lastModified, loader));
+    }
+
+    private static Path await(CompletableFuture<Path> rendered) throws IOException {
+        try {
+            return rendered.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw new IOException(cause.getMessage(), cause);
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Renders a PDF's thumbnail on a background thread, so it is ready before it is first requested.
+     * Failures are logged and otherwise ignored; the thumbnail is then rendered on request instead.
+     *
+     * @param pdf the PDF under the storage root
+     */
+    synchronized void renderLater(Path pdf) {
+        if (backgroundRenderer == null) {
+            CustomizableThreadFactory threads = new CustomizableThreadFactory("thumbnail-render-");
+            threads.setDaemon(true);
+            backgroundRenderer = Executors.newSingleThreadExecutor(threads);
+        }
+        backgroundRenderer.execute(() -> {
+            try {
+                get(pdf);
+            } catch (NoSuchFileException e) {
+                // Deleted again before it was rendered
+            } catch (IOException | RuntimeException e) {
+                log.debug("Failed to render thumbnail for {}", pdf, e);
+            }
+        });
+    }
+
+    synchronized void close() {
+        if (backgroundRenderer != null) {
+            backgroundRenderer.shutdownNow();
+        }
+    }
+
+    private void render(Path pdf, DocumentLoader loader, Path thumbnail) throws IOException {
+        BufferedImage image;
+        try (PDDocument document = loader.load()) {
+            if (document.getNumberOfPages() == 0) {
+                throw new IOException("PDF has no pages: " + pdf);
+            }
+            float scale = WIDTH / document.getPage(0).getCropBox().getWidth();
+            image = new PDFRenderer(document).renderImage(0, scale, ImageType.RGB);
+        }
+
+        Path temp = thumbnail.resolveSibling(thumbnail.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            ImageIO.write(image, "png", temp.toFile());
+            Files.move(temp, thumbnail, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Caller holds the monitor
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (readers.containsKey(entry.getKey())) {
+                // Evicted once the last stream of it is closed
+                continue;
+            }
+            try {
+                Files.deleteIfExists(thumbnailRoot.resolve(entry.getKey() + ".png"));
+            } catch (IOException e) {
+                log.warn("Failed to evict thumbnail {}", entry.getKey(), e);
+            }
+            totalBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private synchronized void opened(String key) {
+        readers.merge(key, 1, Integer::sum);
+    }
+
+    private synchronized void closed(String key) {
+        if (readers.merge(key, -1, Integer::sum) == 0) {
+            readers.remove(key);
+            evict();
+        }
+    }
+
+    // Usage is not persisted, so after a restart the oldest thumbnails are evicted first
+    private void loadExisting() throws IOException {
+        List<Path> existing;
+        try (Stream<Path> files = Files.list(thumbnailRoot)) {
+            existing = files.filter(file -> file.getFileName().toString().endsWith(".png"))
+                    .sorted(Comparator.comparing(file -> file.toFile().lastModified()))
+                    .toList();
+        }
+        synchronized (this) {
+            for (Path file : existing) {
+                String name = file.getFileName().toString();
+                long size = file.toFile().length();
+                entries.put(name.substring(0, name.length() - ".png".length()), size);
+                totalBytes += size;
+            }
+            evict();
+        }
+    }
+
+    private String key(Path pdf, long size, long lastModified) {
+        String version = storageLocation.relativize(pdf) + "|" + size + "|" + lastModified;
+        return BlobStore.digest(version.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Loads the PDF a thumbnail is rendered from.
+     */
+    interface DocumentLoader {
+        PDDocument load() throws IOException;
+    }
+
+    private interface Lookup {
+        Path get() throws IOException;
+    }
+
+    /**
+     * A thumbnail handed out to be served. Each stream keeps the thumbnail from being evicted until
+     * it is closed.
+     */
+    private class ServedThumbnail extends AbstractResource {
+
+        private final Path file;
+        private final String key;
+        private final Lookup lookup;
+
+        ServedThumbnail(Path file, Lookup lookup) {
+            this.file = file;
+            String name = file.getFileName().toString();
+            this.key = name.substring(0, name.length() - ".png".length());
+            this.lookup = lookup;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            opened(key);
+            InputStream in;
+            try {
+                // Evicted since it was looked up; rendered again, and kept now that it is being read
+                if (!Files.exists(file)) {
+                    lookup.get();
+                }
+                in = Files.newInputStream(file);
+            } catch (IOException | RuntimeException e) {
+                closed(key);
+                throw e;
+            }
+            return new FilterInputStream(in) {
+                private boolean released;
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (!released) {
+                            released = true;
+                            closed(key);
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            if (!Files.exists(file)) {
+                lookup.get();
+            }
+            return Files.size(file);
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return Files.getLastModifiedTime(file).toMillis();
+        }
+
+        @Override
+        public String getFilename() {
+            return file.getFileName().toString();
+        }
+
+        @Override
+        public String getDescription() {
+            return "Thumbnail [" + file + "]";
+        }
+    }
+}
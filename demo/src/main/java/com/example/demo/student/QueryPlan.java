@@ -0,0 +1,14 @@
+package com.example.demo.student;
+
+import java.util.List;
+
+/**
+ * The plan MongoDB chose for a student query, as reported by explain.
+ *
+ * @param filter the query filter as JSON
+ * @param stages the stages of the winning plan from the outermost inwards, e.g. FETCH, IXSCAN
+ * @param indexes the indexes the plan scans, empty for a collection scan
+ * @param collectionScan true if the plan reads the whole collection
+ */
+public record QueryPlan(String filter, List<String> stages, List<String> indexes, boolean collectionScan) {
+}
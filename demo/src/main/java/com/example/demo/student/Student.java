@@ -1,18 +1,26 @@
 package com.example.demo.student;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.WildcardIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.List;
 import java.util.Map;
 
+// Indexes are created by StudentIndexService; see there for the queries they serve
 @Document(collection = "students")
+@CompoundIndex(name = "educationLevel_name", def = "{'educationLevel': 1, 'name': 1}")
 public class Student {
     @Id
     private String id;
+    @Indexed
     private String name;
     private String educationLevel;
+    @Indexed
     private List<String> subjects;
+    @WildcardIndexed
     private Map<String, Integer> days; // e.g., {"Monday": 2}
     private double ratePerLesson;
 
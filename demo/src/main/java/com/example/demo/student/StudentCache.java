@@ -0,0 +1,29 @@
+package com.example.demo.student;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The cached reads behind {@link StudentService}. Students are cached as {@link StudentSnapshot}s;
+ * the entries are evicted by the writes in {@link StudentService} and {@link StudentImportService}.
+ */
+@Component
+class StudentCache {
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Cacheable(cacheNames = StudentService.ROSTER_CACHE, key = "'all'")
+    public List<StudentSnapshot> roster() {
+        return studentRepository.findAll().stream().map(StudentSnapshot::of).toList();
+    }
+
+    @Cacheable(cacheNames = StudentService.STUDENT_CACHE)
+    public Optional<StudentSnapshot> byId(String id) {
+        return studentRepository.findById(id).map(StudentSnapshot::of);
+    }
+}
@@ -2,10 +2,20 @@ package com.example.demo.student;
 
 import com.example.demo.student.Student;
 import com.example.demo.student.StudentRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.data.web.PagedModel;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/students")
@@ -13,16 +23,126 @@ public class StudentController {
     @Autowired
     private StudentService studentService;
 
+    @Autowired
+    private StudentImportService studentImportService;
+
+    @Autowired
+    private StudentIndexService studentIndexService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @GetMapping
     public List<Student> getAllStudents() {
         return studentService.getAllStudents();
     }
 
+    /**
+     * Lists one page of students, optionally filtered by education level, subject and lesson day.
+     * Use the page, size and sort parameters to page through the results, e.g. {@code ?page=2&size=50&sort=name,desc}.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<PagedModel<Student>> searchStudents(@RequestParam(required = false) String educationLevel,
+                                                              @RequestParam(required = false) String subject,
+                                                              @RequestParam(required = false) String day,
+                                                              @PageableDefault(size = 50, sort = "name") Pageable pageable) {
+        try {
+            StudentFilter filter = new StudentFilter(educationLevel, subject, day);
+            return ResponseEntity.ok(new PagedModel<>(studentService.findStudents(filter, pageable)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Exports the students matching the same filters as newline-delimited JSON, one student per line.
+     * Students are written as they are read from the database cursor, so the roster is never held in memory.
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportStudents(@RequestParam(required = false) String educationLevel,
+                                                                @RequestParam(required = false) String subject,
+                                                                @RequestParam(required = false) String day) {
+        StudentFilter filter = new StudentFilter(educationLevel, subject, day);
+        try {
+            // Rejects an invalid filter before the response is committed
+            filter.toQuery();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        StreamingResponseBody body = out -> {
+            try (Stream<Student> students = studentService.streamStudents(filter)) {
+                for (Student student : (Iterable<Student>) students::iterator) {
+                    out.write(objectMapper.writeValueAsBytes(student));
+                    out.write('\n');
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @PostMapping
     public Student createStudent(@RequestBody Student student) {
         return studentService.createStudent(student);
     }
 
+    /**
+     * Creates any missing indexes on the students collection and lists the indexes that exist.
+     */
+    @PostMapping("/indexes")
+    public List<String> ensureIndexes() {
+        return studentIndexService.ensureIndexes();
+    }
+
+    /**
+     * Shows the plan MongoDB picks for a student search with the given filters,
+     * to check that it uses an index instead of scanning the collection.
+     */
+    @GetMapping("/indexes/explain")
+    public ResponseEntity<QueryPlan> explainSearch(@RequestParam(required = false) String educationLevel,
+                                                   @RequestParam(required = false) String subject,
+                                                   @RequestParam(required = false) String day) {
+        try {
+            return ResponseEntity.ok(studentIndexService.explain(new StudentFilter(educationLevel, subject, day)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Creates or replaces students in bulk from a JSON array. Students are matched by id;
+     * rows without an id are created. The result lists the outcome of every row.
+     * If the upload is malformed part way through, the response is 400 with the rows handled until then.
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StudentImportResult> importJson(InputStream body) {
+        try {
+            return ResponseEntity.ok(studentImportService.importJson(body));
+        } catch (StudentImportException e) {
+            // Rows in batches written before the upload broke off stay written
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getImported());
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Creates or replaces students in bulk from CSV with a header row,
+     * e.g. {@code id,name,educationLevel,subjects,days,ratePerLesson}.
+     * If the upload is malformed part way through, the response is 400 with the rows handled until then.
+     */
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<StudentImportResult> importCsv(InputStream body) {
+        try {
+            return ResponseEntity.ok(studentImportService.importCsv(body));
+        } catch (StudentImportException e) {
+            // Rows in batches written before the upload broke off stay written
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getImported());
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Student> getStudentById(@PathVariable String id) {
         return studentService.getStudentById(id)
@@ -0,0 +1,43 @@
+package com.example.demo.student;
+
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.DayOfWeek;
+import java.time.format.TextStyle;
+import java.util.Locale;
+
+/**
+ * Optional criteria for listing students. Criteria that are null are not applied,
+ * and the ones that are set must all match.
+ *
+ * @param educationLevel the exact education level, e.g. "Sec 3"
+ * @param subject a subject the student takes
+ * @param day a weekday the student has lessons on, e.g. "monday"
+ */
+public record StudentFilter(String educationLevel, String subject, String day) {
+
+    /**
+     * Builds the Mongo query for this filter.
+     *
+     * @return a query matching the students that satisfy every criterion
+     * @throws IllegalArgumentException if the day is not a weekday name
+     */
+    public Query toQuery() {
+        Criteria criteria = new Criteria();
+        if (educationLevel != null && !educationLevel.isBlank()) {
+            criteria.and("educationLevel").is(educationLevel);
+        }
+        if (subject != null && !subject.isBlank()) {
+            // Matches any element of the subjects array
+            criteria.and("subjects").is(subject);
+        }
+        if (day != null && !day.isBlank()) {
+            // Lesson days are stored as map keys, e.g. {"Monday": 2}
+            String key = DayOfWeek.valueOf(day.trim().toUpperCase(Locale.ROOT))
+                    .getDisplayName(TextStyle.FULL, Locale.ENGLISH);
+            criteria.and("days." + key).gt(0);
+        }
+        return new Query(criteria);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.demo.student;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an upload turns out to be malformed part way through an import. Rows in batches that
+ * were already written stay written; the result describes them.
+ */
+public class StudentImportException extends IOException {
+
+    private final StudentImportResult imported;
+
+    public StudentImportException(String message, StudentImportResult imported, Throwable cause) {
+        super(message, cause);
+        this.imported = imported;
+    }
+
+    /**
+     * Returns the outcome of the rows handled before the import stopped.
+     *
+     * @return the rows written or rejected so far
+     */
+    public StudentImportResult getImported() {
+        return imported;
+    }
+}
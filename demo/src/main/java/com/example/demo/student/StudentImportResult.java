@@ -0,0 +1,27 @@
+package com.example.demo.student;
+
+import java.util.List;
+
+/**
+ * The outcome of a bulk student import: totals per status and the result of every row.
+ *
+ * @param created the number of new students
+ * @param updated the number of existing students that were replaced
+ * @param rejected the number of rows that were invalid or failed to write
+ * @param rows the result of each row, in upload order
+ */
+public record StudentImportResult(int created, int updated, int rejected, List<StudentImportRow> rows) {
+
+    static StudentImportResult of(List<StudentImportRow> rows) {
+        int created = 0;
+        int updated = 0;
+        for (StudentImportRow row : rows) {
+            if (row.status().equals(StudentImportRow.CREATED)) {
+                created++;
+            } else if (row.status().equals(StudentImportRow.UPDATED)) {
+                updated++;
+            }
+        }
+        return new StudentImportResult(created, updated, rows.size() - created - updated, rows);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.demo.student;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The outcome of importing one row of a bulk student import.
+ *
+ * @param row the 1-based position of the row in the upload, not counting a CSV header
+ * @param id the student's id, generated for new students that did not supply one
+ * @param status one of created, updated, invalid or failed
+ * @param error why the row was rejected, null if it was applied
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StudentImportRow(int row, String id, String status, String error) {
+
+    static final String CREATED = "created";
+    static final String UPDATED = "updated";
+    static final String INVALID = "invalid";
+    static final String FAILED = "failed";
+}
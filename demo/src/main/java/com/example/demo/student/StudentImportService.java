@@ -0,0 +1,315 @@
+package com.example.demo.student;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Imports students in bulk from a CSV or JSON upload. Rows are parsed and validated one at a time
+ * as the upload is read, and valid rows are written in batches of unordered bulk upserts keyed by id,
+ * so one bad row neither stops the import nor costs a round trip of its own. An upload that is malformed
+ * as a whole stops the import with a {@link StudentImportException} describing the rows written before it.
+ * The student caches are cleared once an import ends, whether it succeeded or not.
+ */
+@Service
+public class StudentImportService {
+
+    static final int BATCH_SIZE = 500;
+
+    private static final CsvMapper CSV_MAPPER = new CsvMapper();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    private CacheManager cacheManager;
+
+    /**
+     * Imports a JSON array of students. Each element has the same shape as the student API's request body.
+     *
+     * @param in the upload
+     * @return the outcome of every row
+     * @throws IllegalArgumentException if the upload is not a JSON array
+     * @throws StudentImportException if an element is not an object, or the JSON is malformed part way through
+     * @throws IOException if the upload cannot be read
+     */
+    public StudentImportResult importJson(InputStream in) throws IOException {
+        // Lesson counts are whole numbers; 2.5 must not be read as 2
+        ObjectReader reader = objectMapper.readerFor(Student.class)
+                .without(DeserializationFeature.ACCEPT_FLOAT_AS_INT);
+        Batch batch = new Batch();
+        try (JsonParser parser = objectMapper.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected a JSON array of students");
+            }
+            int row = 0;
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                row++;
+                if (token != JsonToken.START_OBJECT) {
+                    throw new StudentImportException("Element " + row + " is not a student object",
+                            batch.written(), null);
+                }
+                // Reading the element as a tree consumes it whole, so a row with wrongly typed
+                // values is rejected on its own without losing track of the rows after it
+                JsonNode node = parser.readValueAsTree();
+                Student student;
+                try {
+                    student = reader.treeToValue(node, Student.class);
+                } catch (JsonProcessingException e) {
+                    batch.reject(row, node.path("id").textValue(), e.getOriginalMessage());
+                    continue;
+                }
+                batch.add(row, student);
+            }
+            return batch.finish();
+        } catch (JsonProcessingException e) {
+            throw new StudentImportException("Malformed JSON: " + e.getOriginalMessage(), batch.written(), e);
+        } finally {
+            evictCaches();
+        }
+    }
+
+    /**
+     * Imports students from CSV with a header row. The columns are id, name, educationLevel, subjects,
+     * days and ratePerLesson, where subjects is a semicolon separated list such as {@code Math;Physics}
+     * and days lists lessons per weekday such as {@code Monday:2;Thursday:1}. Only name is required.
+     *
+     * @param in the upload
+     * @return the outcome of every row
+     * @throws StudentImportException if the CSV is malformed part way through
+     * @throws IOException if the upload cannot be read
+     */
+    public StudentImportResult importCsv(InputStream in) throws IOException {
+        Batch batch = new Batch();
+        CsvSchema schema = CsvSchema.emptySchema().withHeader();
+        try (MappingIterator<Map<String, String>> rows = CSV_MAPPER.readerForMapOf(String.class).with(schema).readValues(in)) {
+            int row = 0;
+            while (rows.hasNextValue()) {
+                row++;
+                Map<String, String> values = rows.nextValue();
+                try {
+                    batch.add(row, fromCsv(values));
+                } catch (IllegalArgumentException e) {
+                    batch.reject(row, blankToNull(values.get("id")), e.getMessage());
+                }
+            }
+            return batch.finish();
+        } catch (JsonProcessingException e) {
+            throw new StudentImportException("Malformed CSV: " + e.getOriginalMessage(), batch.written(), e);
+        } finally {
+            evictCaches();
+        }
+    }
+
+    // Cleared even when the import fails, as rows in batches written before the failure stay written
+    private void evictCaches() {
+        if (cacheManager == null) {
+            return;
+        }
+        for (String name : List.of(StudentService.ROSTER_CACHE, StudentService.STUDENT_CACHE)) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+    }
+
+    private static Student fromCsv(Map<String, String> values) {
+        Student student = new Student();
+        student.setId(blankToNull(values.get("id")));
+        student.setName(blankToNull(values.get("name")));
+        student.setEducationLevel(blankToNull(values.get("educationLevel")));
+
+        String subjects = blankToNull(values.get("subjects"));
+        if (subjects != null) {
+            student.setSubjects(Arrays.stream(subjects.split(";")).map(String::trim).filter(s -> !s.isEmpty()).toList());
+        }
+
+        String days = blankToNull(values.get("days"));
+        if (days != null) {
+            Map<String, Integer> lessons = new LinkedHashMap<>();
+            for (String day : days.split(";")) {
+                String[] parts = day.split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("days must look like Monday:2;Thursday:1");
+                }
+                lessons.put(parts[0].trim(), parseLessons(parts[1]));
+            }
+            student.setDays(lessons);
+        }
+
+        String rate = blankToNull(values.get("ratePerLesson"));
+        if (rate != null) {
+            student.setRatePerLesson(parseNumber(rate, "ratePerLesson").doubleValue());
+        }
+        return student;
+    }
+
+    /**
+     * Checks a student before it is written, and brings its lesson days into the stored form, e.g. "Monday".
+     *
+     * @param student the student to check
+     * @throws IllegalArgumentException describing the first problem found
+     */
+    static void validate(Student student) {
+        if (student.getName() == null || student.getName().isBlank()) {
+            throw new IllegalArgumentException("name is required");
+        }
+        if (student.getRatePerLesson() < 0) {
+            throw new IllegalArgumentException("ratePerLesson must not be negative");
+        }
+        if (student.getDays() != null) {
+            Map<String, Integer> days = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> entry : student.getDays().entrySet()) {
+                DayOfWeek day;
+                try {
+                    day = DayOfWeek.valueOf(entry.getKey().trim().toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown lesson day: " + entry.getKey());
+                }
+                if (entry.getValue() == null || entry.getValue() < 0) {
+                    throw new IllegalArgumentException("Lessons on " + entry.getKey() + " must not be negative");
+                }
+                days.put(day.getDisplayName(TextStyle.FULL, Locale.ENGLISH), entry.getValue());
+            }
+            student.setDays(days);
+        }
+    }
+
+    private static Number parseNumber(String value, String column) {
+        try {
+            return Double.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " is not a number: " + value);
+        }
+    }
+
+    private static int parseLessons(String value) {
+        try {
+            return new BigDecimal(value.trim()).intValueExact();
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("days is not a number: " + value);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("days must be whole numbers of lessons: " + value);
+        }
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    /**
+     * Collects validated rows and writes them to Mongo every {@link #BATCH_SIZE} rows.
+     */
+    private class Batch {
+
+        private final List<StudentImportRow> results = new ArrayList<>();
+        private final List<Integer> rows = new ArrayList<>(BATCH_SIZE);
+        private final List<Student> students = new ArrayList<>(BATCH_SIZE);
+
+        void add(int row, Student student) {
+            try {
+                validate(student);
+            } catch (IllegalArgumentException e) {
+                reject(row, student.getId(), e.getMessage());
+                return;
+            }
+            if (student.getId() == null) {
+                student.setId(new ObjectId().toHexString());
+            }
+            rows.add(row);
+            students.add(student);
+            if (students.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void reject(int row, String id, String error) {
+            results.add(new StudentImportRow(row, id, StudentImportRow.INVALID, error));
+        }
+
+        StudentImportResult finish() {
+            flush();
+            return written();
+        }
+
+        // The rows rejected or written so far; rows still waiting for their batch are not included
+        StudentImportResult written() {
+            List<StudentImportRow> sorted = new ArrayList<>(results);
+            sorted.sort((a, b) -> Integer.compare(a.row(), b.row()));
+            return StudentImportResult.of(sorted);
+        }
+
+        private void flush() {
+            if (students.isEmpty()) {
+                return;
+            }
+
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Student.class);
+            for (Student student : students) {
+                bulk.replaceOne(new Query(Criteria.where("_id").is(student.getId())), student,
+                        FindAndReplaceOptions.options().upsert());
+            }
+
+            String[] errors = new String[students.size()];
+            BulkWriteResult result;
+            try {
+                result = bulk.execute();
+            } catch (BulkOperationException e) {
+                // Unordered: the other writes in the batch were still applied
+                result = e.getResult();
+                for (BulkWriteError error : e.getErrors()) {
+                    errors[error.getIndex()] = error.getMessage();
+                }
+            }
+
+            boolean[] created = new boolean[students.size()];
+            for (BulkWriteUpsert upsert : result.getUpserts()) {
+                created[upsert.getIndex()] = true;
+            }
+            for (int i = 0; i < students.size(); i++) {
+                String status = errors[i] != null ? StudentImportRow.FAILED
+                        : created[i] ? StudentImportRow.CREATED : StudentImportRow.UPDATED;
+                results.add(new StudentImportRow(rows.get(i), students.get(i).getId(), status, errors[i]));
+            }
+            rows.clear();
+            students.clear();
+        }
+    }
+}
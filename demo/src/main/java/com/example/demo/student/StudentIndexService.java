@@ -0,0 +1,96 @@
+package com.example.demo.student;
+
+import com.example.demo.configs.MongoIndexes;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manages the indexes of the students collection and reports how student queries are planned.
+ * The indexes are declared on {@link Student}:
+ * <ul>
+ *     <li>educationLevel + name, for filtering by level and listing by name,</li>
+ *     <li>name, for lookups and sorting by name,</li>
+ *     <li>subjects, a multikey index over the array,</li>
+ *     <li>a wildcard index over days, whose keys are weekday names such as {@code days.Monday}.</li>
+ * </ul>
+ * They are created once the application is ready, in the background so that startup does not wait
+ * for the database, and can be created again on demand.
+ */
+@Service
+public class StudentIndexService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${students.indexes.create-on-startup:true}")
+    private boolean createOnStartup;
+
+    @EventListener(ApplicationReadyEvent.class)
+    void createIndexesOnStartup() {
+        if (!createOnStartup) {
+            return;
+        }
+        MongoIndexes.ensureInBackground(mongoTemplate, Student.class);
+    }
+
+    /**
+     * Creates the indexes declared on {@link Student} that do not exist yet.
+     * Existing indexes with the same definition are left as they are.
+     *
+     * @return the names of all indexes on the students collection
+     */
+    public List<String> ensureIndexes() {
+        return MongoIndexes.ensure(mongoTemplate, Student.class);
+    }
+
+    /**
+     * Asks MongoDB how it would run the student search for a filter, sorted by name,
+     * without running it.
+     *
+     * @param filter the criteria to plan
+     * @return the winning plan
+     */
+    public QueryPlan explain(StudentFilter filter) {
+        Query query = filter.toQuery().with(Sort.by("name"));
+        Document explain = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Student.class))
+                .find(query.getQueryObject())
+                .sort(query.getSortObject())
+                .explain();
+
+        Document winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+        // Plans run by the slot-based engine nest the classic plan one level deeper
+        if (winningPlan.containsKey("queryPlan")) {
+            winningPlan = winningPlan.get("queryPlan", Document.class);
+        }
+
+        List<String> stages = new ArrayList<>();
+        List<String> indexes = new ArrayList<>();
+        collectStages(winningPlan, stages, indexes);
+        return new QueryPlan(query.getQueryObject().toJson(), stages, indexes, stages.contains("COLLSCAN"));
+    }
+
+    private static void collectStages(Document stage, List<String> stages, List<String> indexes) {
+        stages.add(stage.getString("stage"));
+        if (stage.containsKey("indexName") && !indexes.contains(stage.getString("indexName"))) {
+            indexes.add(stage.getString("indexName"));
+        }
+        if (stage.containsKey("inputStage")) {
+            collectStages(stage.get("inputStage", Document.class), stages, indexes);
+        }
+        if (stage.containsKey("inputStages")) {
+            for (Document input : stage.getList("inputStages", Document.class)) {
+                collectStages(input, stages, indexes);
+            }
+        }
+    }
+}
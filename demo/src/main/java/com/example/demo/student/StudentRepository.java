@@ -3,7 +3,11 @@ package com.example.demo.student;
 import com.example.demo.student.Student;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface StudentRepository extends MongoRepository<Student, String> {
     List<Student> findByEducationLevel(String educationLevel);
+
+    // Backed by a Mongo cursor; callers must close the stream
+    Stream<Student> streamAllBy();
 }
\ No newline at end of file
@@ -3,32 +3,94 @@ package com.example.demo.student;
 import com.example.demo.student.Student;
 import com.example.demo.student.StudentRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+/**
+ * Reads and writes students. Reads are served from the in-process caches
+ * {@value #ROSTER_CACHE} and {@value #STUDENT_CACHE}, which every write through this service invalidates.
+ * The caches hold immutable snapshots; every read returns students of its own that the caller may modify.
+ */
 @Service
 public class StudentService {
+
+    public static final String ROSTER_CACHE = "studentRoster";
+    public static final String STUDENT_CACHE = "students";
+
     @Autowired
     private StudentRepository studentRepository;
 
+    @Autowired
+    private StudentCache studentCache;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     public List<Student> getAllStudents() {
-        return studentRepository.findAll();
+        return studentCache.roster().stream().map(StudentSnapshot::toStudent).toList();
+    }
+
+    /**
+     * Returns one page of the students matching a filter. Only the requested page is loaded;
+     * the total is counted by the database.
+     *
+     * @param filter the criteria to match
+     * @param pageable the page number, size and sort order
+     * @return the page of matching students
+     */
+    public Page<Student> findStudents(StudentFilter filter, Pageable pageable) {
+        Query query = filter.toQuery();
+        List<Student> content = mongoTemplate.find(Query.of(query).with(pageable), Student.class);
+        return PageableExecutionUtils.getPage(content, pageable, () -> mongoTemplate.count(query, Student.class));
+    }
+
+    /**
+     * Streams the students matching a filter from a database cursor, sorted by name.
+     * Students are fetched in batches as the stream is consumed.
+     *
+     * @param filter the criteria to match
+     * @return the matching students; the caller must close the stream
+     */
+    public Stream<Student> streamStudents(StudentFilter filter) {
+        Query query = filter.toQuery().with(Sort.by("name"));
+        return mongoTemplate.stream(query, Student.class);
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = ROSTER_CACHE, allEntries = true),
+            @CacheEvict(cacheNames = STUDENT_CACHE, allEntries = true)
+    })
     public Student createStudent(Student student) {
         return studentRepository.save(student);
     }
 
 
     public Optional<Student> getStudentById(String id) {
-        return studentRepository.findById(id);
+        return studentCache.byId(id).map(StudentSnapshot::toStudent);
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = ROSTER_CACHE, allEntries = true),
+            @CacheEvict(cacheNames = STUDENT_CACHE, key = "#id")
+    })
     public void deleteStudent(String id) {
         studentRepository.deleteById(id);
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = ROSTER_CACHE, allEntries = true),
+            @CacheEvict(cacheNames = STUDENT_CACHE, key = "#id")
+    })
     public Student updateStudent(String id, Student updatedStudent) {
         return studentRepository.findById(id)
                 .map(student -> {
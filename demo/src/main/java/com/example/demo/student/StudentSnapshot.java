@@ -0,0 +1,32 @@
+package com.example.demo.student;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable copy of a {@link Student}, as held in the student caches. Every read turns it back into
+ * a new {@code Student}, so a caller changing the student it was given does not change what others are served.
+ */
+record StudentSnapshot(String id, String name, String educationLevel, List<String> subjects,
+                       Map<String, Integer> days, double ratePerLesson) {
+
+    static StudentSnapshot of(Student student) {
+        return new StudentSnapshot(student.getId(), student.getName(), student.getEducationLevel(),
+                student.getSubjects() == null ? null : List.copyOf(student.getSubjects()),
+                student.getDays() == null ? null : Map.copyOf(student.getDays()),
+                student.getRatePerLesson());
+    }
+
+    Student toStudent() {
+        Student student = new Student();
+        student.setId(id);
+        student.setName(name);
+        student.setEducationLevel(educationLevel);
+        student.setSubjects(subjects == null ? null : new ArrayList<>(subjects));
+        student.setDays(days == null ? null : new HashMap<>(days));
+        student.setRatePerLesson(ratePerLesson);
+        return student;
+    }
+}
@@ -1,11 +1,25 @@
 package com.example.demo;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
 
 @SpringBootTest
 class DemoApplicationTests {
 
+	// Keeps the files the application creates on startup out of the real storage directory
+	@TempDir
+	static Path storage;
+
+	@DynamicPropertySource
+	static void storageLocation(DynamicPropertyRegistry registry) {
+		registry.add("storage.location", () -> storage.toString());
+	}
+
 	@Test
 	void contextLoads() {
 	}
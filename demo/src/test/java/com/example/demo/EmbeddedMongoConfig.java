@@ -0,0 +1,33 @@
+package com.example.demo;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * A {@link MongoTemplate} backed by an in-process, in-memory Mongo server, so that queries and
+ * aggregation pipelines run for real in the default build. It does not plan queries with indexes;
+ * tests of query plans need a real mongod, see the {@code mongo-test} profile.
+ */
+@TestConfiguration(proxyBeanMethods = false)
+public class EmbeddedMongoConfig {
+
+    @Bean(destroyMethod = "shutdownNow")
+    MongoServer mongoServer() {
+        return new MongoServer(new MemoryBackend());
+    }
+
+    @Bean(destroyMethod = "close")
+    MongoClient mongoClient(MongoServer mongoServer) {
+        return MongoClients.create(mongoServer.bindAndGetConnectionString());
+    }
+
+    @Bean
+    MongoTemplate mongoTemplate(MongoClient mongoClient) {
+        return new MongoTemplate(mongoClient, "test");
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares request throughput and p99 latency of the platform-thread Tomcat pool against
+ * virtual-thread request handling. Tomcat is capped at a small pool so that, as in production,
+ * the number of concurrent clients exceeds the number of platform threads.
+ * Run with {@code mvn test -Pload-test,java21} on a Java 21 runtime.
+ * <p>
+ * The figures are logged for reading side by side; how the two modes compare depends on the machine.
+ * The test only fails if either mode drops a request or leaves one waiting longer than
+ * {@link #LATENCY_BOUND}.
+ */
+@Tag("load")
+class RequestThreadingLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestThreadingLoadTest.class);
+
+    private static final int CLIENTS = 200;
+    private static final int REQUESTS_PER_CLIENT = 50;
+    private static final int PLATFORM_THREADS = 20;
+    private static final Duration LATENCY_BOUND = Duration.ofSeconds(5);
+
+    @TempDir
+    static Path storage;
+
+    @BeforeAll
+    static void createFiles() throws Exception {
+        Path dir = Files.createDirectories(storage.resolve("loadtest"));
+        byte[] content = new byte[256 * 1024];
+        Arrays.fill(content, (byte) 'x');
+        Files.write(dir.resolve("sample.pdf"), content);
+    }
+
+    @Test
+    void compareVirtualAndPlatformThreads() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "Virtual threads need a Java 21 runtime");
+
+        Result platform = run(false);
+        Result virtual = run(true);
+
+        log.info("{} platform threads, {} clients:\n{}\n{}\n{}", PLATFORM_THREADS, CLIENTS,
+                String.format("%-10s %12s %10s %10s %10s", "mode", "req/s", "p50 ms", "p99 ms", "max ms"),
+                platform.format("platform"), virtual.format("virtual"));
+
+        for (Result result : new Result[]{platform, virtual}) {
+            assertThat(result.errors).isZero();
+            assertThat(result.maxMillis).isLessThan(LATENCY_BOUND.toMillis());
+        }
+    }
+
+    private Result run(boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(DemoApplication.class)
+                .properties("server.port=0",
+                        "storage.location=" + storage,
+                        "server.tomcat.threads.max=" + PLATFORM_THREADS,
+                        "spring.threads.virtual.enabled=" + virtualThreads)
+                .run()) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            URI uri = URI.create("http://localhost:" + port + "/api/storage/view?filepath=loadtest/sample.pdf");
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+            load(client, uri, REQUESTS_PER_CLIENT / 5); // warm up
+            return load(client, uri, REQUESTS_PER_CLIENT);
+        }
+    }
+
+    private Result load(HttpClient client, URI uri, int requestsPerClient) throws InterruptedException {
+        long[] latencies = new long[CLIENTS * requestsPerClient];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        long start = System.nanoTime();
+        for (int c = 0; c < CLIENTS; c++) {
+            clients.execute(() -> {
+                for (int i = 0; i < requestsPerClient; i++) {
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                        if (response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[next.getAndIncrement()] = System.nanoTime() - sent;
+                }
+            });
+        }
+        clients.shutdown();
+        assertThat(clients.awaitTermination(5, TimeUnit.MINUTES)).as("every client finished").isTrue();
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result(latencies.length * 1e9 / elapsed,
+                latencies[latencies.length / 2] / 1e6,
+                latencies[(int) (latencies.length * 0.99)] / 1e6,
+                latencies[latencies.length - 1] / 1e6,
+                errors.get());
+    }
+
+    private record Result(double throughput, double p50Millis, double p99Millis, double maxMillis, int errors) {
+
+        String format(String mode) {
+            return String.format("%-10s %12.1f %10.2f %10.2f %10.2f", mode, throughput, p50Millis, p99Millis,
+                    maxMillis);
+        }
+    }
+}
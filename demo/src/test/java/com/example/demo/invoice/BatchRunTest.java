@@ -0,0 +1,23 @@
+package com.example.demo.invoice;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchRunTest {
+
+    @Test
+    void keepsTheFirstErrorsAndCountsTheRest() {
+        BatchRun run = new BatchRun("run-1", "2025-05-01");
+
+        for (int i = 0; i < BatchRun.MAX_ERRORS + 50; i++) {
+            run.failed("Student " + i, new IOException("disk full"));
+        }
+
+        assertThat(run.getFailed()).isEqualTo(BatchRun.MAX_ERRORS + 50);
+        assertThat(run.getErrors()).hasSize(BatchRun.MAX_ERRORS)
+                .startsWith("Student 0: disk full");
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.demo.invoice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class InvoiceJobServiceTest {
+
+    private static final Invoice INVOICE = new Invoice("1", "Alice", 45.0, "MAY", 2025, 4);
+
+    @Mock
+    private InvoiceService invoiceService;
+
+    @Mock
+    private InvoiceLedgerService invoiceLedgerService;
+
+    @InjectMocks
+    private InvoiceJobService invoiceJobService;
+
+    @BeforeEach
+    void startWorkers() {
+        ReflectionTestUtils.setField(invoiceJobService, "workers", 2);
+        ReflectionTestUtils.setField(invoiceJobService, "queueCapacity", 100);
+        ReflectionTestUtils.setField(invoiceJobService, "retention", Duration.ofHours(1));
+        invoiceJobService.init();
+        when(invoiceService.getOutput()).thenReturn(InvoiceOutput.COMPRESSED);
+        when(invoiceService.invoiceFor(1L, "Alice", 45.0, "2025-05-01", 4)).thenReturn(INVOICE);
+    }
+
+    @AfterEach
+    void stopWorkers() {
+        invoiceJobService.shutdown();
+    }
+
+    @Test
+    void concurrentSubmissionsWithTheSameKeyQueueOneJob() throws Exception {
+        when(invoiceLedgerService.issue(eq(INVOICE), any(), eq("2025-05-01"))).thenReturn("2025/05/Alice.pdf");
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService requests = Executors.newFixedThreadPool(8);
+        List<InvoiceJob> jobs = new ArrayList<>();
+        try {
+            List<Future<InvoiceJob>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(requests.submit(() -> {
+                    start.await();
+                    return invoiceJobService.submitManual(1L, "Alice", 45.0, "2025-05-01", 4, "key-1");
+                }));
+            }
+            start.countDown();
+            for (Future<InvoiceJob> result : results) {
+                jobs.add(result.get());
+            }
+        } finally {
+            requests.shutdownNow();
+        }
+
+        assertThat(jobs).extracting(InvoiceJob::getId).containsOnly(jobs.get(0).getId());
+        assertThat(jobs.get(0).getDone().get(5, TimeUnit.SECONDS).getFilePath()).isEqualTo("2025/05/Alice.pdf");
+        verify(invoiceLedgerService, times(1)).issue(eq(INVOICE), any(), eq("2025-05-01"));
+    }
+
+    @Test
+    void keyReusedForADifferentInvoiceIsRejected() {
+        when(invoiceService.invoiceFor(1L, "Alice", 45.0, "2025-05-01", 5))
+                .thenReturn(new Invoice("1", "Alice", 45.0, "MAY", 2025, 5));
+
+        InvoiceJob job = invoiceJobService.submitManual(1L, "Alice", 45.0, "2025-05-01", 4, "key-1");
+
+        assertThat(invoiceJobService.submitManual(1L, "Alice", 45.0, "2025-05-01", 4, "key-1")).isSameAs(job);
+        assertThatThrownBy(() -> invoiceJobService.submitManual(1L, "Alice", 45.0, "2025-05-01", 5, "key-1"))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    @Test
+    void failedJobReleasesItsKey() throws Exception {
+        when(invoiceLedgerService.issue(eq(INVOICE), any(), eq("2025-05-01")))
+                .thenThrow(new IOException("disk full"))
+                .thenReturn("2025/05/Alice.pdf");
+
+        InvoiceJob failed = invoiceJobService.submitManual(1L, "Alice", 45.0, "2025-05-01", 4, "key-1");
+        assertThat(failed.getDone().get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(InvoiceJob.Status.FAILED);
+
+        InvoiceJob retried = invoiceJobService.submitManual(1L, "Alice", 45.0, "2025-05-01", 4, "key-1");
+        assertThat(retried.getId()).isNotEqualTo(failed.getId());
+        assertThat(retried.getDone().get(5, TimeUnit.SECONDS).getFilePath()).isEqualTo("2025/05/Alice.pdf");
+        assertThat(invoiceJobService.submitManual(1L, "Alice", 45.0, "2025-05-01", 4, "key-1")).isSameAs(retried);
+        assertThat(invoiceJobService.getJob(failed.getId())).contains(failed);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.demo.invoice;
+
+import com.example.demo.EmbeddedMongoConfig;
+import com.example.demo.storage.StorageEvent;
+import com.example.demo.storage.StorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * The ledger's reports and upkeep, run against an in-process Mongo.
+ */
+@SpringBootTest(classes = {InvoiceLedgerService.class, EmbeddedMongoConfig.class})
+class InvoiceLedgerAggregationTest {
+
+    @Autowired
+    private InvoiceLedgerService invoiceLedgerService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @MockitoBean
+    private InvoiceService invoiceService;
+
+    @MockitoBean
+    private StorageService storageService;
+
+    @BeforeEach
+    void recordInvoices() {
+        mongoTemplate.dropCollection(InvoiceRecord.class);
+        record(new Invoice("1", "Alice", 45.0, "APRIL", 2025, 4), "Sec 3", "2025/04/Alice.pdf");
+        record(new Invoice("1", "Alice", 45.0, "MAY", 2025, 5), "Sec 3", "2025/05/Alice.pdf");
+        record(new Invoice("2", "Bob", 50.0, "MAY", 2025, 2), "JC 1", "2025/05/Bob_2.pdf");
+        record(new Invoice("3", "Cara", 40.0, "MAY", 2025, 3), null, "2025/05/Cara_3.pdf");
+        record(new Invoice("1", "Alice", 45.0, "JANUARY", 2024, 1), "Sec 2", "2024/01/Alice.pdf");
+    }
+
+    @Test
+    void totalsByMonthSumsEachMonthOfTheYear() {
+        assertThat(invoiceLedgerService.totalsByMonth(2025)).containsExactly(
+                new LedgerTotal("2025-04", null, 1, 4, 180.0),
+                new LedgerTotal("2025-05", null, 3, 10, 445.0));
+        assertThat(invoiceLedgerService.totalsByMonth(null)).extracting(LedgerTotal::key)
+                .containsExactly("2024-01", "2025-04", "2025-05");
+    }
+
+    @Test
+    void totalsByStudentSumsEachStudent() {
+        assertThat(invoiceLedgerService.totalsByStudent(null)).containsExactly(
+                new LedgerTotal("1", "Alice", 3, 10, 450.0),
+                new LedgerTotal("2", "Bob", 1, 2, 100.0),
+                new LedgerTotal("3", "Cara", 1, 3, 120.0));
+        assertThat(invoiceLedgerService.totalsByStudent("2025-05")).extracting(LedgerTotal::key, LedgerTotal::lessons)
+                .containsExactly(tuple("1", 5L),
+                        tuple("2", 2L),
+                        tuple("3", 3L));
+    }
+
+    @Test
+    void totalsByEducationLevelGroupsUnknownLevelsTogether() {
+        assertThat(invoiceLedgerService.totalsByEducationLevel("2025-05")).containsExactly(
+                new LedgerTotal("JC 1", null, 1, 2, 100.0),
+                new LedgerTotal("Sec 3", null, 1, 5, 225.0),
+                new LedgerTotal("unknown", null, 1, 3, 120.0));
+    }
+
+    @Test
+    void reissuingAStudentsMonthReplacesItsEntry() {
+        record(new Invoice("1", "Alicia", 45.0, "MAY", 2025, 6), "Sec 3", "2025/05/Alicia_1.pdf");
+
+        assertThat(invoiceLedgerService.totalsByMonth(2025)).extracting(LedgerTotal::key, LedgerTotal::invoices)
+                .containsExactly(tuple("2025-04", 1L),
+                        tuple("2025-05", 3L));
+        assertThat(mongoTemplate.findById("1/2025-05", InvoiceRecord.class).filePath()).isEqualTo("2025/05/Alicia_1.pdf");
+    }
+
+    @Test
+    void deletedFilesAndFoldersLeaveTheLedger() {
+        invoiceLedgerService.storageChanged(new StorageEvent(StorageEvent.Type.DELETED, Paths.get("2025", "05", "Bob_2.pdf")));
+        assertThat(invoiceLedgerService.totalsByStudent("2025-05")).extracting(LedgerTotal::key)
+                .containsExactly("1", "3");
+
+        // A sibling folder whose name starts the same is left alone
+        invoiceLedgerService.storageChanged(new StorageEvent(StorageEvent.Type.DELETED, Paths.get("2025", "0")));
+        invoiceLedgerService.storageChanged(new StorageEvent(StorageEvent.Type.DELETED, Paths.get("2025")));
+        assertThat(invoiceLedgerService.totalsByMonth(null)).extracting(LedgerTotal::key).containsExactly("2024-01");
+
+        invoiceLedgerService.storageChanged(new StorageEvent(StorageEvent.Type.WRITTEN, Paths.get("2024", "01", "Alice.pdf")));
+        assertThat(invoiceLedgerService.totalsByMonth(null)).hasSize(1);
+        invoiceLedgerService.storageChanged(new StorageEvent(StorageEvent.Type.DELETED, Paths.get("")));
+        assertThat(invoiceLedgerService.totalsByMonth(null)).isEmpty();
+    }
+
+    private void record(Invoice invoice, String educationLevel, String filePath) {
+        invoiceLedgerService.record(invoice, educationLevel, filePath,
+                InvoiceLedgerService.fingerprint(invoice, educationLevel, InvoiceOutput.COMPRESSED));
+    }
+}
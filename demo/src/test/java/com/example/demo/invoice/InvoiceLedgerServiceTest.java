@@ -0,0 +1,203 @@
+package com.example.demo.invoice;
+
+import com.example.demo.storage.ContentWriter;
+import com.example.demo.storage.StorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class InvoiceLedgerServiceTest {
+
+    @Mock
+    private InvoiceService invoiceService;
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    private InvoiceLedgerService invoiceLedgerService;
+
+    @BeforeEach
+    void configureOutput() {
+        when(invoiceService.getOutput()).thenReturn(InvoiceOutput.COMPRESSED);
+    }
+
+    @Test
+    void issueStoresPdfAndRecordsPrintedFigures() throws Exception {
+        Invoice invoice = new Invoice("s1", "Alice", 45.0, "MAY", 2025, 4);
+        byte[] pdf = {1, 2, 3};
+        when(storageService.invoicePath("Alice.pdf", "2025-05-01")).thenReturn("2025/05/Alice.pdf");
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        when(storageService.saveInvoice(eq("Alice.pdf"), eq("2025-05-01"), any())).thenAnswer(writesTo(stored));
+        doAnswer(call -> {
+            call.<OutputStream>getArgument(1).write(pdf);
+            return null;
+        }).when(invoiceService).render(eq(invoice), any(OutputStream.class));
+        when(mongoTemplate.save(any(InvoiceRecord.class))).thenAnswer(call -> call.getArgument(0));
+
+        String filePath = invoiceLedgerService.issue(invoice, "Sec 3", "2025-05-01");
+
+        assertThat(filePath).isEqualTo("2025/05/Alice.pdf");
+        assertThat(stored.toByteArray()).isEqualTo(pdf);
+        ArgumentCaptor<InvoiceRecord> recorded = ArgumentCaptor.forClass(InvoiceRecord.class);
+        verify(mongoTemplate).save(recorded.capture());
+        InvoiceRecord record = recorded.getValue();
+        assertThat(record.id()).isEqualTo("s1/2025-05");
+        assertThat(record.filePath()).isEqualTo("2025/05/Alice.pdf");
+        assertThat(record.studentId()).isEqualTo("s1");
+        assertThat(record.educationLevel()).isEqualTo("Sec 3");
+        assertThat(record.period()).isEqualTo("2025-05");
+        assertThat(record.lessons()).isEqualTo(4);
+        assertThat(record.amount()).isEqualTo(180.0);
+        assertThat(record.fingerprint()).isEqualTo(InvoiceLedgerService.fingerprint(invoice, "Sec 3", InvoiceOutput.COMPRESSED));
+    }
+
+    @Test
+    void issueReusesStoredFileWhenInputsAreUnchanged() throws Exception {
+        Invoice invoice = new Invoice("s1", "Alice", 45.0, "MAY", 2025, 4);
+        when(storageService.invoicePath("Alice.pdf", "2025-05-01")).thenReturn("2025/05/Alice.pdf");
+        when(storageService.exists("2025/05/Alice.pdf")).thenReturn(true);
+        when(mongoTemplate.findById("s1/2025-05", InvoiceRecord.class)).thenReturn(new InvoiceRecord(
+                "s1/2025-05", "2025/05/Alice.pdf", "s1", "Alice", null, "2025-05", 4, 45.0, 180.0, Instant.now(),
+                InvoiceLedgerService.fingerprint(invoice, null, InvoiceOutput.COMPRESSED)));
+
+        assertThat(invoiceLedgerService.issue(invoice, null, "2025-05-01")).isEqualTo("2025/05/Alice.pdf");
+
+        verify(invoiceService, never()).render(any(), any(OutputStream.class));
+        verify(storageService, never()).saveInvoice(any(), any(), any(ContentWriter.class));
+    }
+
+    @Test
+    void issueRejectsInvoiceWithoutStudentId() {
+        Invoice invoice = new Invoice(null, "Alice", 45.0, "MAY", 2025, 4);
+
+        assertThatThrownBy(() -> invoiceLedgerService.issue(invoice, null, "2025-05-01"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> InvoiceLedgerService.fingerprint(invoice, null, InvoiceOutput.COMPRESSED))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void issueDeletesStoredFileWhenItCannotBeRecorded() throws Exception {
+        Invoice invoice = new Invoice("s1", "Alice", 45.0, "MAY", 2025, 4);
+        when(storageService.invoicePath("Alice.pdf", "2025-05-01")).thenReturn("2025/05/Alice.pdf");
+        when(storageService.saveInvoice(any(), any(), any(ContentWriter.class))).thenAnswer(writesTo(new ByteArrayOutputStream()));
+        when(mongoTemplate.save(any(InvoiceRecord.class))).thenThrow(new IllegalStateException("ledger unavailable"));
+
+        assertThatThrownBy(() -> invoiceLedgerService.issue(invoice, null, "2025-05-01"))
+                .isInstanceOf(IllegalStateException.class);
+
+        verify(storageService).deleteFile("2025/05/Alice.pdf");
+    }
+
+    @Test
+    void issueDeletesTheStudentsEarlierInvoiceStoredUnderAnotherName() throws Exception {
+        Invoice invoice = new Invoice("s1", "Alice", 45.0, "MAY", 2025, 4);
+        when(storageService.invoicePath("Alice.pdf", "2025-05-01")).thenReturn("2025/05/Alice.pdf");
+        when(mongoTemplate.findById("s1/2025-05", InvoiceRecord.class)).thenReturn(new InvoiceRecord(
+                "s1/2025-05", "2025/05/Alicia.pdf", "s1", "Alicia", null, "2025-05", 4, 45.0, 180.0, Instant.now(),
+                "earlier"));
+        when(storageService.saveInvoice(any(), any(), any(ContentWriter.class))).thenAnswer(writesTo(new ByteArrayOutputStream()));
+
+        assertThat(invoiceLedgerService.issue(invoice, null, "2025-05-01")).isEqualTo("2025/05/Alice.pdf");
+
+        verify(mongoTemplate).save(any(InvoiceRecord.class));
+        verify(storageService).deleteFile("2025/05/Alicia.pdf");
+        verify(storageService, never()).deleteFile("2025/05/Alice.pdf");
+    }
+
+    @Test
+    void idempotencyKeyReplaysFirstResultAndRejectsDifferentInvoice() throws Exception {
+        Invoice invoice = new Invoice("s1", "Alice", 45.0, "MAY", 2025, 4);
+        when(storageService.saveInvoice(any(), any(), any(ContentWriter.class))).thenAnswer(writesTo(new ByteArrayOutputStream()));
+
+        invoiceLedgerService.issue("key-1", invoice, null, "2025-05-01");
+        assertThat(invoiceLedgerService.issue("key-1", invoice, null, "2025-05-01")).isEqualTo("2025/05/Alice.pdf");
+
+        verify(invoiceService, times(1)).render(eq(invoice), any(OutputStream.class));
+        Invoice changed = new Invoice("s1", "Alice", 45.0, "MAY", 2025, 5);
+        assertThatThrownBy(() -> invoiceLedgerService.issue("key-1", changed, null, "2025-05-01"))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    @Test
+    void concurrentRequestsWithTheSameKeyIssueOnce() throws Exception {
+        Invoice invoice = new Invoice("s1", "Alice", 45.0, "MAY", 2025, 4);
+        CountDownLatch start = new CountDownLatch(1);
+        when(storageService.saveInvoice(any(), any(), any(ContentWriter.class))).thenAnswer(call -> {
+            // Long enough for the other requests to arrive while the first is being issued
+            Thread.sleep(100);
+            return writesTo(new ByteArrayOutputStream()).answer(call);
+        });
+
+        ExecutorService requests = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(requests.submit(() -> {
+                    start.await();
+                    return invoiceLedgerService.issue("key-1", invoice, null, "2025-05-01");
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                assertThat(result.get()).isEqualTo("2025/05/Alice.pdf");
+            }
+        } finally {
+            requests.shutdownNow();
+        }
+
+        verify(storageService, times(1)).saveInvoice(any(), any(), any(ContentWriter.class));
+    }
+
+    @Test
+    void failedRequestFreesItsKeyForARetry() throws Exception {
+        Invoice invoice = new Invoice("s1", "Alice", 45.0, "MAY", 2025, 4);
+        when(storageService.saveInvoice(any(), any(), any(ContentWriter.class)))
+                .thenThrow(new IOException("disk full"))
+                .thenAnswer(writesTo(new ByteArrayOutputStream()));
+
+        assertThatThrownBy(() -> invoiceLedgerService.issue("key-1", invoice, null, "2025-05-01"))
+                .hasMessage("disk full");
+        assertThat(invoiceLedgerService.issue("key-1", invoice, null, "2025-05-01")).isEqualTo("2025/05/Alice.pdf");
+    }
+
+    // Runs the content writer passed to StorageService.saveInvoice against the given stream
+    private static Answer<String> writesTo(OutputStream out) {
+        return call -> {
+            call.<ContentWriter>getArgument(2).writeTo(out);
+            return "2025/05/Alice.pdf";
+        };
+    }
+}
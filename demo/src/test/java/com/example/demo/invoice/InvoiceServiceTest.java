@@ -0,0 +1,28 @@
+package com.example.demo.invoice;
+
+import com.example.demo.student.Student;
+import org.junit.jupiter.api.Test;
+
+import java.time.Month;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InvoiceServiceTest {
+
+    private final InvoiceService invoiceService = new InvoiceService();
+
+    @Test
+    void countsLessonsForEveryLessonDay() {
+        Student student = new Student();
+        student.setDays(Map.of("Monday", 2, "thursday", 1));
+
+        // May 2025 has four Mondays and five Thursdays
+        assertThat(invoiceService.countLessons(student, 2025, Month.MAY)).isEqualTo(13);
+    }
+
+    @Test
+    void studentWithoutLessonDaysHasNoLessons() {
+        assertThat(invoiceService.countLessons(new Student(), 2025, Month.MAY)).isZero();
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.demo.invoice;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InvoiceTemplateTest {
+
+    @Test
+    void rendersVariableFieldsAroundStaticLayout() throws Exception {
+        InvoiceTemplate template = new InvoiceTemplate();
+
+        for (String name : new String[]{"Alice Tan", "Bob Lim"}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            template.render(new Invoice("1", name, 45.0, "MAY", 2025, 4), out);
+
+            try (PDDocument pdf = PDDocument.load(out.toByteArray())) {
+                assertThat(pdf.getNumberOfPages()).isEqualTo(1);
+                String text = new PDFTextStripper().getText(pdf);
+                assertThat(text).contains(name, "FOR MAY", "MAY (4 Lessons)", "SGD 180.00", "OCBC Current Account");
+            }
+        }
+    }
+
+    @Test
+    void compactOutputModesShrinkTheFile() throws Exception {
+        InvoiceTemplate template = new InvoiceTemplate();
+        Invoice invoice = new Invoice("1", "Alice Tan", 45.0, "MAY", 2025, 4);
+
+        ByteArrayOutputStream standard = new ByteArrayOutputStream();
+        template.render(invoice, standard, InvoiceOutput.STANDARD);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        template.render(invoice, compressed, InvoiceOutput.COMPRESSED);
+        ByteArrayOutputStream pdfA = new ByteArrayOutputStream();
+        template.render(invoice, pdfA, InvoiceOutput.PDF_A);
+
+        assertThat(compressed.size()).isLessThan(standard.size() / 2);
+        assertThat(pdfA.size()).isLessThan(standard.size() / 2);
+        try (PDDocument pdf = PDDocument.load(pdfA.toByteArray())) {
+            assertThat(pdf.getDocumentCatalog().getMetadata()).isNotNull();
+            assertThat(pdf.getDocumentCatalog().getOutputIntents()).hasSize(1);
+            assertThat(new PDFTextStripper().getText(pdf)).contains("Alice Tan", "SGD 180.00");
+        }
+    }
+
+    @Test
+    void rendersTheSameBytesEveryTime() throws Exception {
+        InvoiceTemplate template = new InvoiceTemplate();
+        Invoice invoice = new Invoice("1", "Alice Tan", 45.0, "MAY", 2025, 4);
+
+        for (InvoiceOutput output : InvoiceOutput.values()) {
+            ByteArrayOutputStream first = new ByteArrayOutputStream();
+            template.render(invoice, first, output);
+            ByteArrayOutputStream second = new ByteArrayOutputStream();
+            template.render(invoice, second, output);
+
+            assertThat(second.toByteArray()).as(output.name()).isEqualTo(first.toByteArray());
+            try (PDDocument pdf = PDDocument.load(first.toByteArray())) {
+                Calendar created = pdf.getDocumentInformation().getCreationDate();
+                created.setTimeZone(TimeZone.getTimeZone("UTC"));
+                assertThat(created.get(Calendar.YEAR)).isEqualTo(2025);
+                assertThat(created.get(Calendar.MONTH)).isEqualTo(Calendar.MAY);
+                assertThat(created.get(Calendar.DAY_OF_MONTH)).isEqualTo(2);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.demo.search;
+
+import com.example.demo.storage.StorageEvent;
+import com.example.demo.storage.StorageService;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class SearchIndexServiceTest {
+
+    @TempDir
+    Path storage;
+
+    private SearchIndexService searchIndex;
+
+    @BeforeEach
+    void createIndex() throws Exception {
+        writeInvoice("2025/03/Alice Tan_2025-03-01.pdf", "Invoice for Alice Tan, Sec 3 Chemistry, 4 lessons");
+        writeInvoice("2025/03/Bob Lim_2025-03-01.pdf", "Invoice for Bob Lim, JC 1 Physics, 2 lessons");
+        searchIndex = new SearchIndexService(new StorageService(storage));
+    }
+
+    @AfterEach
+    void closeIndex() throws Exception {
+        searchIndex.close();
+    }
+
+    @Test
+    void reconcileIndexesTextAndFileNames() throws Exception {
+        assertThat(searchIndex.reconcile()).isEqualTo(2);
+
+        assertThat(searchIndex.search("chemistry", 10))
+                .extracting(SearchHit::path).containsExactly("2025/03/Alice Tan_2025-03-01.pdf");
+        assertThat(searchIndex.search("bob", 10))
+                .extracting(SearchHit::name).containsExactly("Bob Lim_2025-03-01.pdf");
+        assertThat(searchIndex.search("lessons -physics", 10)).hasSize(1);
+        assertThat(searchIndex.search("chemistry physics", 10)).isEmpty();
+
+        // Nothing changed on disk, so nothing is extracted again
+        assertThat(searchIndex.reconcile()).isZero();
+    }
+
+    @Test
+    void storageEventsUpdateTheIndex() throws Exception {
+        searchIndex.reconcile();
+
+        writeInvoice("2025/04/Alice Tan_2025-04-01.pdf", "Invoice for Alice Tan, Sec 3 Biology, 3 lessons");
+        searchIndex.storageChanged(new StorageEvent(StorageEvent.Type.WRITTEN, Paths.get("2025/04/Alice Tan_2025-04-01.pdf")));
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(searchIndex.search("alice", 10)).hasSize(2));
+
+        Files.delete(storage.resolve("2025/03/Alice Tan_2025-03-01.pdf"));
+        Files.delete(storage.resolve("2025/03/Bob Lim_2025-03-01.pdf"));
+        searchIndex.storageChanged(new StorageEvent(StorageEvent.Type.DELETED, Paths.get("2025/03")));
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(searchIndex.search("invoice", 10))
+                        .extracting(SearchHit::path).containsExactly("2025/04/Alice Tan_2025-04-01.pdf"));
+    }
+
+    @Test
+    void storageEventsAreAppliedInTheOrderTheyWerePublished() throws Exception {
+        searchIndex.reconcile();
+
+        // Every delete comes after a save whose extraction takes far longer than the delete itself
+        Path alice = Paths.get("2025/03/Alice Tan_2025-03-01.pdf");
+        for (int i = 0; i < 20; i++) {
+            searchIndex.storageChanged(new StorageEvent(StorageEvent.Type.WRITTEN, alice));
+            searchIndex.storageChanged(new StorageEvent(StorageEvent.Type.DELETED, alice));
+        }
+        writeInvoice("2025/04/Cara Ng_2025-04-01.pdf", "Invoice for Cara Ng, Sec 1 Maths, 4 lessons");
+        searchIndex.storageChanged(new StorageEvent(StorageEvent.Type.WRITTEN, Paths.get("2025/04/Cara Ng_2025-04-01.pdf")));
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(searchIndex.search("cara", 10)).hasSize(1));
+
+        assertThat(searchIndex.search("alice", 10)).isEmpty();
+    }
+
+    private void writeInvoice(String path, String text) throws Exception {
+        Path file = storage.resolve(path);
+        Files.createDirectories(file.getParent());
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 12);
+                content.newLineAtOffset(72, 700);
+                content.showText(text);
+                content.endText();
+            }
+            document.save(file.toFile());
+        }
+    }
+}
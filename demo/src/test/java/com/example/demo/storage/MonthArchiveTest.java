@@ -0,0 +1,84 @@
+package com.example.demo.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MonthArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void packedFilesAreReadBackAfterReopening() throws Exception {
+        Path alice = Files.writeString(dir.resolve("alice.pdf"), "%PDF alice");
+        Path bob = Files.writeString(dir.resolve("bob.pdf"), "%PDF bob");
+
+        assertThat(MonthArchive.create(dir).append(List.of(alice, bob))).containsExactly(alice, bob);
+
+        MonthArchive archive = MonthArchive.open(dir);
+        assertThat(archive.entries()).containsOnlyKeys("alice.pdf", "bob.pdf");
+        assertThat(archive.entry("bob.pdf").lastModified()).isEqualTo(Files.getLastModifiedTime(bob).toMillis());
+        assertThat(text(archive.read("alice.pdf"))).isEqualTo("%PDF alice");
+        assertThat(text(archive.read("bob.pdf"))).isEqualTo("%PDF bob");
+    }
+
+    @Test
+    void appendsGoAfterTheIndexedDataAndReplaceEntries() throws Exception {
+        MonthArchive archive = MonthArchive.create(dir);
+        archive.append(List.of(Files.writeString(dir.resolve("alice.pdf"), "%PDF first")));
+        // Left behind by an append that failed before its index was written
+        Files.writeString(dir.resolve(MonthArchive.SEGMENT), "garbage", StandardOpenOption.APPEND);
+
+        archive.append(List.of(Files.writeString(dir.resolve("alice.pdf"), "%PDF second"),
+                Files.writeString(dir.resolve("bob.pdf"), "%PDF bob")));
+        assertThat(archive.remove("bob.pdf")).isTrue();
+
+        MonthArchive reopened = MonthArchive.open(dir);
+        assertThat(reopened.entries()).containsOnlyKeys("alice.pdf");
+        assertThat(text(reopened.read("alice.pdf"))).isEqualTo("%PDF second");
+        assertThat(Files.size(dir.resolve(MonthArchive.SEGMENT))).isEqualTo("%PDF first%PDF second%PDF bob".length());
+    }
+
+    @Test
+    void segmentIsCompactedOnceMostOfItIsDead() throws Exception {
+        byte[] content = new byte[(int) MonthArchive.COMPACT_MIN_DEAD_BYTES];
+        Arrays.fill(content, (byte) 'a');
+        MonthArchive archive = MonthArchive.create(dir);
+        archive.append(List.of(Files.write(dir.resolve("alice.pdf"), content),
+                Files.write(dir.resolve("bob.pdf"), content),
+                Files.writeString(dir.resolve("carol.pdf"), "%PDF carol")));
+
+        archive.remove("alice.pdf");
+        assertThat(archive.deadBytes()).isEqualTo(content.length);
+        assertThat(dir.resolve(MonthArchive.SEGMENT)).exists();
+
+        archive.remove("bob.pdf");
+        assertThat(archive.deadBytes()).isZero();
+        assertThat(dir.resolve(MonthArchive.SEGMENT)).doesNotExist();
+        assertThat(MonthArchive.segment(dir, 1)).hasContent("%PDF carol");
+        assertThat(text(archive.read("carol.pdf"))).isEqualTo("%PDF carol");
+
+        MonthArchive reopened = MonthArchive.open(dir);
+        assertThat(reopened.entries()).containsOnlyKeys("carol.pdf");
+        assertThat(text(reopened.read("carol.pdf"))).isEqualTo("%PDF carol");
+    }
+
+    @Test
+    void folderWithoutArchiveHasNone() throws Exception {
+        assertThat(MonthArchive.open(dir)).isNull();
+    }
+
+    private static String text(ByteBuffer content) {
+        return StandardCharsets.US_ASCII.decode(content).toString();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.demo.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PathLocksTest {
+
+    private final PathLocks locks = new PathLocks(1024);
+    private final ExecutorService other = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void stopThread() {
+        other.shutdownNow();
+    }
+
+    @Test
+    void differentFilesInTheSameFolderDoNotBlock() throws Exception {
+        try (PathLocks.Held held = locks.lock(Paths.get("2025/05/alice.pdf"), true)) {
+            assertThat(lockInOtherThread(Paths.get("2025/05/bob.pdf"), true).get(5, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    @Test
+    void sameFileWaitsForTheHolder() throws Exception {
+        Future<Boolean> second;
+        try (PathLocks.Held held = locks.lock(Paths.get("2025/05/alice.pdf"), true)) {
+            second = lockInOtherThread(Paths.get("2025/05/alice.pdf"), true);
+            assertThatThrownBy(() -> second.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        }
+        assertThat(second.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void folderDeleteWaitsForSavesBelowIt() throws Exception {
+        Future<Boolean> delete;
+        try (PathLocks.Held held = locks.lock(Paths.get("2025/05/alice.pdf"), true)) {
+            delete = lockInOtherThread(Paths.get("2025"), true);
+            assertThatThrownBy(() -> delete.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        }
+        assertThat(delete.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private Future<Boolean> lockInOtherThread(Path path, boolean exclusive) {
+        return other.submit(() -> {
+            try (PathLocks.Held held = locks.lock(path, exclusive)) {
+                return true;
+            }
+        });
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.demo.storage;
+
+import com.example.demo.configs.StorageBackendConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs {@link S3Backend} against {@link S3StubServer}, so the S3 requests it makes are checked in the
+ * default build. {@link S3BackendTest} covers a real S3-compatible store, including multipart uploads.
+ */
+class S3BackendStubTest {
+
+    private static final String BUCKET = "invoices";
+
+    @TempDir
+    Path dir;
+
+    private S3StubServer server;
+    private StorageBackend backend;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = new S3StubServer(BUCKET, 2);
+        backend = new StorageBackendConfig().s3Backend(BUCKET, "archive", "us-east-1",
+                server.endpoint().toString(), "access", "secret", DataSize.ofMegabytes(5), 4);
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        backend.close();
+        server.close();
+    }
+
+    @Test
+    void uploadedFilesAreListedAndDownloadedWithTheirETags() throws Exception {
+        byte[] content = "%PDF alice".getBytes(StandardCharsets.US_ASCII);
+        Path file = Files.write(dir.resolve("alice.pdf"), content);
+
+        String etag = backend.upload("2099/01/alice.pdf", file);
+
+        assertThat(server.objects()).containsOnlyKeys("archive/2099/01/alice.pdf");
+        assertThat(server.objects().get("archive/2099/01/alice.pdf").content()).isEqualTo(content);
+        assertThat(backend.list()).singleElement().satisfies(object -> {
+            assertThat(object.key()).isEqualTo("2099/01/alice.pdf");
+            assertThat(object.size()).isEqualTo(content.length);
+            assertThat(object.etag()).isEqualTo(etag);
+        });
+        Path downloaded = dir.resolve("downloaded.pdf");
+        assertThat(backend.download("2099/01/alice.pdf", downloaded)).isEqualTo(etag);
+        assertThat(downloaded).hasBinaryContent(content);
+
+        try (S3AsyncClient client = S3AsyncClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("access", "secret")))
+                .endpointOverride(server.endpoint())
+                .forcePathStyle(true)
+                .build()) {
+            HeadObjectResponse head = client.headObject(object -> object.bucket(BUCKET).key("archive/2099/01/alice.pdf")).join();
+            assertThat(head.eTag()).isEqualTo(etag);
+            assertThat(head.contentLength()).isEqualTo(content.length);
+        }
+    }
+
+    @Test
+    void listingPagesAndDeletingAFolderRemovesEverythingBelowIt() throws Exception {
+        Path file = Files.writeString(dir.resolve("small.pdf"), "%PDF small");
+        backend.upload("2099/01/alice.pdf", file);
+        backend.upload("2099/01/bob.pdf", file);
+        backend.upload("2099/01/carol.pdf", file);
+        backend.upload("2099/02/alice.pdf", file);
+
+        assertThat(backend.list()).extracting(StorageBackend.StoredObject::key)
+                .containsExactly("2099/01/alice.pdf", "2099/01/bob.pdf", "2099/01/carol.pdf", "2099/02/alice.pdf");
+
+        backend.delete("2099/01");
+
+        assertThat(backend.list()).extracting(StorageBackend.StoredObject::key).containsExactly("2099/02/alice.pdf");
+        assertThat(backend.download("2099/01/alice.pdf", dir.resolve("missing.pdf"))).isNull();
+    }
+
+    @Test
+    void nodesSyncThroughTheBucket(@TempDir Path storage, @TempDir Path otherStorage) throws Exception {
+        StorageService node = new StorageService(storage);
+        StorageService otherNode = new StorageService(otherStorage);
+        node.startIndex();
+        otherNode.startIndex();
+        ReflectionTestUtils.setField(node, "backend", backend);
+        ReflectionTestUtils.setField(otherNode, "backend", backend);
+        try {
+            byte[] first = "%PDF first".getBytes(StandardCharsets.US_ASCII);
+            byte[] second = "%PDF second".getBytes(StandardCharsets.US_ASCII);
+            String path = node.saveInvoice(first, "alice.pdf", "2099-01-15");
+            otherNode.syncWithBackend();
+            assertThat(otherNode.loadFile(path)).isEqualTo(first);
+
+            otherNode.saveInvoice(second, "alice.pdf", "2099-01-15");
+            node.syncWithBackend();
+            assertThat(node.loadFile(path)).isEqualTo(second);
+
+            // In step on both sides: nothing moves
+            otherNode.syncWithBackend();
+            assertThat(otherNode.loadFile(path)).isEqualTo(second);
+
+            otherNode.deleteFile(path);
+            node.syncWithBackend();
+            assertThat(node.exists(path)).isFalse();
+            assertThat(server.objects()).isEmpty();
+        } finally {
+            node.stopIndex();
+            otherNode.stopIndex();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.demo.storage;
+
+import com.example.demo.configs.StorageBackendConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.BucketAlreadyOwnedByYouException;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs against an S3-compatible store, by default a local MinIO started with
+ * {@code docker run -p 9000:9000 minio/minio server /data}. Set {@code s3.test.endpoint},
+ * {@code s3.test.access-key} and {@code s3.test.secret-key} to use another one.
+ */
+@Tag("s3")
+class S3BackendTest {
+
+    private static final String BUCKET = "invoice-backend-test";
+
+    @TempDir
+    Path dir;
+
+    private StorageBackend backend;
+
+    @BeforeEach
+    void createBackend() {
+        String endpoint = System.getProperty("s3.test.endpoint", "http://localhost:9000");
+        String accessKey = System.getProperty("s3.test.access-key", "minioadmin");
+        String secretKey = System.getProperty("s3.test.secret-key", "minioadmin");
+
+        try (S3AsyncClient client = S3AsyncClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)))
+                .endpointOverride(URI.create(endpoint))
+                .forcePathStyle(true)
+                .build()) {
+            client.createBucket(bucket -> bucket.bucket(BUCKET)).join();
+        } catch (CompletionException e) {
+            if (!(e.getCause() instanceof BucketAlreadyOwnedByYouException)) {
+                throw e;
+            }
+        }
+
+        // A fresh prefix per test, so runs do not see each other's objects
+        backend = new StorageBackendConfig().s3Backend(BUCKET, "test-" + UUID.randomUUID(), "us-east-1",
+                endpoint, accessKey, secretKey, DataSize.ofMegabytes(5), 16);
+    }
+
+    @AfterEach
+    void closeBackend() throws Exception {
+        backend.close();
+    }
+
+    @Test
+    void largeFilesAreUploadedInPartsAndDownloadedWhole() throws Exception {
+        byte[] content = new byte[23 * 1024 * 1024];
+        new Random(7).nextBytes(content);
+        Path file = Files.write(dir.resolve("large.pdf"), content);
+
+        String etag = backend.upload("2099/01/large.pdf", file);
+
+        assertThat(backend.list()).singleElement().satisfies(object -> {
+            assertThat(object.key()).isEqualTo("2099/01/large.pdf");
+            assertThat(object.size()).isEqualTo(content.length);
+            assertThat(object.etag()).isEqualTo(etag);
+        });
+        Path downloaded = dir.resolve("downloaded.pdf");
+        assertThat(backend.download("2099/01/large.pdf", downloaded)).isEqualTo(etag);
+        assertThat(downloaded).hasBinaryContent(content);
+    }
+
+    @Test
+    void deletingAFolderRemovesEverythingBelowIt() throws Exception {
+        Path file = Files.writeString(dir.resolve("small.pdf"), "%PDF small");
+        backend.upload("2099/01/alice.pdf", file);
+        backend.upload("2099/01/bob.pdf", file);
+        backend.upload("2099/02/alice.pdf", file);
+
+        backend.delete("2099/01");
+
+        assertThat(backend.list()).extracting(StorageBackend.StoredObject::key).containsExactly("2099/02/alice.pdf");
+        assertThat(backend.download("2099/01/alice.pdf", dir.resolve("missing.pdf"))).isNull();
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.demo.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Just enough of the S3 API, kept in memory, for {@link S3Backend} to run against in the default build:
+ * PutObject, GetObject, HeadObject, ListObjectsV2 and DeleteObjects on a single bucket, addressed by path.
+ * Requests are not authenticated. Listings return at most {@code pageSize} keys, so paging is exercised too.
+ */
+class S3StubServer implements AutoCloseable {
+
+    private static final Pattern KEY = Pattern.compile("<Key>(.*?)</Key>", Pattern.DOTALL);
+
+    record StubObject(byte[] content, String etag, Instant lastModified) {
+    }
+
+    private final String bucket;
+    private final int pageSize;
+    private final NavigableMap<String, StubObject> objects = new ConcurrentSkipListMap<>();
+    private final HttpServer server;
+
+    S3StubServer(String bucket, int pageSize) throws IOException {
+        this.bucket = bucket;
+        this.pageSize = pageSize;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    URI endpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    NavigableMap<String, StubObject> objects() {
+        return objects;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            if (!path.equals("/" + bucket) && !path.startsWith("/" + bucket + "/")) {
+                error(exchange, 404, "NoSuchBucket", path);
+                return;
+            }
+            String key = path.length() > bucket.length() + 2 ? path.substring(bucket.length() + 2) : "";
+            switch (exchange.getRequestMethod()) {
+                case "PUT" -> put(exchange, key);
+                case "GET" -> {
+                    if (key.isEmpty()) {
+                        list(exchange, query);
+                    } else {
+                        get(exchange, key, true);
+                    }
+                }
+                case "HEAD" -> get(exchange, key, false);
+                case "POST" -> {
+                    if (query.containsKey("delete")) {
+                        delete(exchange);
+                    } else {
+                        error(exchange, 501, "NotImplemented", path);
+                    }
+                }
+                default -> error(exchange, 405, "MethodNotAllowed", path);
+            }
+        }
+    }
+
+    private void put(HttpExchange exchange, String key) throws IOException {
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        String contentSha = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        if ((contentSha != null && contentSha.startsWith("STREAMING-"))
+                || (encoding != null && encoding.contains("aws-chunked"))) {
+            body = decodeChunked(body);
+        }
+        StubObject object = new StubObject(body, '"' + md5(body) + '"', Instant.now());
+        objects.put(key, object);
+        exchange.getResponseHeaders().set("ETag", object.etag());
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void get(HttpExchange exchange, String key, boolean withBody) throws IOException {
+        StubObject object = objects.get(key);
+        if (object == null) {
+            if (withBody) {
+                error(exchange, 404, "NoSuchKey", key);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            return;
+        }
+        exchange.getResponseHeaders().set("ETag", object.etag());
+        exchange.getResponseHeaders().set("Last-Modified",
+                DateTimeFormatter.RFC_1123_DATE_TIME.format(object.lastModified().atOffset(ZoneOffset.UTC)));
+        exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+        if (withBody) {
+            exchange.sendResponseHeaders(200, object.content().length == 0 ? -1 : object.content().length);
+            exchange.getResponseBody().write(object.content());
+        } else {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(object.content().length));
+            exchange.sendResponseHeaders(200, -1);
+        }
+    }
+
+    private void list(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String prefix = query.getOrDefault("prefix", "");
+        String after = query.get("continuation-token");
+        boolean urlEncoded = "url".equals(query.get("encoding-type"));
+        int maxKeys = Math.min(pageSize, Integer.parseInt(query.getOrDefault("max-keys", "1000")));
+
+        StringBuilder contents = new StringBuilder();
+        int count = 0;
+        String last = null;
+        boolean truncated = false;
+        for (Map.Entry<String, StubObject> entry
+                : (after == null ? objects : objects.tailMap(after, false)).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                continue;
+            }
+            if (count == maxKeys) {
+                truncated = true;
+                break;
+            }
+            StubObject object = entry.getValue();
+            contents.append("<Contents><Key>").append(xml(urlEncoded ? urlEncode(entry.getKey()) : entry.getKey()))
+                    .append("</Key><LastModified>").append(DateTimeFormatter.ISO_INSTANT.format(object.lastModified()))
+                    .append("</LastModified><ETag>").append(xml(object.etag()))
+                    .append("</ETag><Size>").append(object.content().length)
+                    .append("</Size><StorageClass>STANDARD</StorageClass></Contents>");
+            last = entry.getKey();
+            count++;
+        }
+
+        StringBuilder result = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>").append(bucket).append("</Name>")
+                .append("<Prefix>").append(xml(prefix)).append("</Prefix>")
+                .append("<KeyCount>").append(count).append("</KeyCount>")
+                .append("<MaxKeys>").append(maxKeys).append("</MaxKeys>")
+                .append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (truncated) {
+            result.append("<NextContinuationToken>").append(xml(last)).append("</NextContinuationToken>");
+        }
+        if (urlEncoded) {
+            result.append("<EncodingType>url</EncodingType>");
+        }
+        result.append(contents).append("</ListBucketResult>");
+        xmlResponse(exchange, 200, result.toString());
+    }
+
+    private void delete(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Matcher key = KEY.matcher(body);
+        while (key.find()) {
+            objects.remove(unxml(key.group(1)));
+        }
+        xmlResponse(exchange, 200, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<DeleteResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"></DeleteResult>");
+    }
+
+    private static void error(HttpExchange exchange, int status, String code, String resource) throws IOException {
+        xmlResponse(exchange, status, "<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>" + code
+                + "</Code><Message>" + code + "</Message><Resource>" + xml(resource) + "</Resource></Error>");
+    }
+
+    private static void xmlResponse(HttpExchange exchange, int status, String xml) throws IOException {
+        byte[] body = xml.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // aws-chunked: "<hex size>[;chunk-signature=...]\r\n<data>\r\n" until a chunk of size 0, then the trailers
+    private static byte[] decodeChunked(byte[] body) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream(body.length);
+        int position = 0;
+        while (position < body.length) {
+            int lineEnd = indexOfCrLf(body, position);
+            String header = new String(body, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int size = Integer.parseInt(header.split(";", 2)[0].trim(), 16);
+            if (size == 0) {
+                break;
+            }
+            content.write(body, lineEnd + 2, size);
+            position = lineEnd + 2 + size + 2;
+        }
+        return content.toByteArray();
+    }
+
+    private static int indexOfCrLf(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length - 1; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n') {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Malformed aws-chunked body");
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> query = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            String[] pair = parameter.split("=", 2);
+            query.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+                    pair.length > 1 ? URLDecoder.decode(pair[1], StandardCharsets.UTF_8) : "");
+        }
+        return query;
+    }
+
+    private static String md5(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String urlEncode(String key) {
+        return URLEncoder.encode(key, StandardCharsets.UTF_8).replace("+", "%20").replace("%2F", "/");
+    }
+
+    private static String xml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String unxml(String value) {
+        return value.replace("&quot;", "\"").replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&");
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.demo.storage;
+
+import com.jayway.jsonpath.JsonPath;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.util.FileSystemUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(StorageController.class)
+@Import(StorageService.class)
+class StorageControllerTest {
+
+    private static final String FILE = "controller-test/sample.pdf";
+
+    @TempDir
+    static Path tempDir;
+
+    // Named like the real storage directory, as the file browser sends paths starting with it
+    private static Path storage;
+    private static Path testDir;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @DynamicPropertySource
+    static void storageLocation(DynamicPropertyRegistry registry) {
+        storage = tempDir.resolve("pdf-storage");
+        testDir = storage.resolve("controller-test");
+        registry.add("storage.location", storage::toString);
+    }
+
+    @BeforeEach
+    void createFile() throws Exception {
+        Files.createDirectories(testDir);
+        Files.writeString(testDir.resolve("sample.pdf"), "%PDF-1.7 0123456789", StandardCharsets.US_ASCII);
+    }
+
+    @AfterEach
+    void deleteFile() throws Exception {
+        FileSystemUtils.deleteRecursively(testDir);
+    }
+
+    @Test
+    void viewStreamsWholeFileWithValidators() throws Exception {
+        mockMvc.perform(get("/api/storage/view").param("filepath", FILE))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(content().string("%PDF-1.7 0123456789"));
+    }
+
+    @Test
+    void viewAnswersRangeRequestsWithPartialContent() throws Exception {
+        mockMvc.perform(get("/api/storage/view").param("filepath", FILE).header(HttpHeaders.RANGE, "bytes=9-12"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 9-12/19"))
+                .andExpect(content().string("0123"));
+    }
+
+    @Test
+    void viewAnswersMatchingETagWithNotModified() throws Exception {
+        MvcResult first = mockMvc.perform(get("/api/storage/view").param("filepath", FILE)).andReturn();
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/storage/view").param("filepath", FILE).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void viewRejectsMissingFilesAndPathTraversal() throws Exception {
+        mockMvc.perform(get("/api/storage/view").param("filepath", "controller-test/missing.pdf"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/storage/view").param("filepath", "../pom.xml"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void viewServesArchivedMonthsWithRanges() throws Exception {
+        Path month = Files.createDirectories(storage.resolve("2001").resolve("01"));
+        Files.writeString(month.resolve("archived.pdf"), "%PDF-1.7 archived", StandardCharsets.US_ASCII);
+
+        mockMvc.perform(post("/api/storage/archive").param("month", "2001-01"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Archived 1 files"));
+        assertThat(month.resolve("archived.pdf")).doesNotExist();
+
+        mockMvc.perform(get("/api/storage/view").param("filepath", "2001/01/archived.pdf").header(HttpHeaders.RANGE, "bytes=9-16"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 9-16/17"))
+                .andExpect(content().string("archived"));
+        mockMvc.perform(post("/api/storage/archive").param("month", "2999-01"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void thumbnailRendersFirstPageAsCachedPng() throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage());
+            document.save(testDir.resolve("page.pdf").toFile());
+        }
+
+        MvcResult first = mockMvc.perform(get("/api/storage/thumbnail").param("filepath", "pdf-storage/controller-test/page.pdf"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_PNG))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=3600, private"))
+                .andReturn();
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(first.getResponse().getContentAsByteArray()));
+        assertThat(image.getWidth()).isEqualTo(ThumbnailCache.WIDTH);
+
+        mockMvc.perform(get("/api/storage/thumbnail").param("filepath", "controller-test/page.pdf")
+                        .header(HttpHeaders.IF_NONE_MATCH, first.getResponse().getHeader(HttpHeaders.ETAG)))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void thumbnailRejectsMissingAndUnreadableFiles() throws Exception {
+        mockMvc.perform(get("/api/storage/thumbnail").param("filepath", "controller-test/missing.pdf"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/storage/thumbnail").param("filepath", "../pom.xml"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/storage/thumbnail").param("filepath", FILE))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void listFoldersPagesThroughFolderWithCursor() throws Exception {
+        for (String name : new String[]{"a.pdf", "b.pdf", "c.pdf", "d.pdf"}) {
+            Files.writeString(testDir.resolve(name), name);
+        }
+        // Files written behind the service's back reach the index through the watcher
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                mockMvc.perform(get("/api/storage/listfolders").param("path", "pdf-storage/controller-test").param("limit", "10"))
+                        .andExpect(jsonPath("$.items.length()").value(5)));
+
+        MvcResult first = mockMvc.perform(get("/api/storage/listfolders")
+                        .param("path", "pdf-storage/controller-test").param("limit", "2").param("order", "desc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.path").value("controller-test"))
+                .andExpect(jsonPath("$.items[*].name").value(contains("sample.pdf", "d.pdf")))
+                .andExpect(jsonPath("$.items[0].type").value("file"))
+                .andReturn();
+        String cursor = JsonPath.read(first.getResponse().getContentAsString(), "$.nextCursor");
+
+        mockMvc.perform(get("/api/storage/listfolders")
+                        .param("path", "controller-test").param("limit", "2").param("order", "desc").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[*].name").value(contains("c.pdf", "b.pdf")))
+                .andExpect(jsonPath("$.nextCursor").isNotEmpty());
+    }
+
+    @Test
+    void listFoldersRejectsInvalidRequests() throws Exception {
+        mockMvc.perform(get("/api/storage/listfolders").param("path", "controller-test").param("sort", "colour"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/storage/listfolders").param("path", "../"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/storage/listfolders").param("path", "no-such-folder"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void exportStreamsFolderAsZip() throws Exception {
+        Files.writeString(testDir.resolve("a.pdf"), "%PDF-a");
+        Files.writeString(testDir.resolve("notes.txt"), "not exported");
+
+        MvcResult started = mockMvc.perform(get("/api/storage/export").param("folder", "controller-test"))
+                .andExpect(status().isOk())
+                .andReturn();
+        byte[] zip = mockMvc.perform(asyncDispatch(started))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"controller-test.zip\""))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            for (ZipEntry entry; (entry = in.getNextEntry()) != null; ) {
+                names.add(entry.getName());
+            }
+        }
+        assertThat(names).containsExactly("controller-test/a.pdf", "controller-test/sample.pdf");
+    }
+
+    @Test
+    void exportMergesListedFilesIntoOnePdf() throws Exception {
+        for (String name : new String[]{"one.pdf", "two.pdf"}) {
+            try (PDDocument document = new PDDocument()) {
+                document.addPage(new PDPage());
+                document.save(testDir.resolve(name).toFile());
+            }
+        }
+
+        MvcResult started = mockMvc.perform(get("/api/storage/export").param("format", "pdf")
+                        .param("path", "controller-test/two.pdf", "controller-test/one.pdf"))
+                .andExpect(status().isOk())
+                .andReturn();
+        byte[] pdf = mockMvc.perform(asyncDispatch(started)).andReturn().getResponse().getContentAsByteArray();
+
+        try (PDDocument merged = PDDocument.load(pdf)) {
+            assertThat(merged.getNumberOfPages()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void exportRejectsInvalidSelections() throws Exception {
+        mockMvc.perform(get("/api/storage/export"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/storage/export").param("folder", "controller-test").param("format", "tar"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/storage/export").param("path", "../pom.xml"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/storage/export").param("path", "controller-test/missing.pdf"))
+                .andExpect(status().isNotFound());
+    }
+}
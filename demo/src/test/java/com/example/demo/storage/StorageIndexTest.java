@@ -0,0 +1,118 @@
+package com.example.demo.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class StorageIndexTest {
+
+    @TempDir
+    Path root;
+
+    private StorageIndex index;
+
+    @BeforeEach
+    void startIndex() throws Exception {
+        Files.createDirectories(root.resolve("2025/04"));
+        Files.writeString(root.resolve("2025/04/benson.pdf"), "april");
+        Files.createDirectories(root.resolve("2024/12"));
+
+        index = new StorageIndex(root);
+        index.start();
+    }
+
+    @AfterEach
+    void stopIndex() throws Exception {
+        index.close();
+    }
+
+    @Test
+    void treeMatchesStorageLayout() {
+        List<FileNode> tree = index.tree();
+
+        assertThat(tree).extracting(FileNode::getName).containsExactly("2025", "2024");
+        FileNode april = tree.get(0).getChildren().get(0);
+        assertThat(april.getPath()).isEqualTo("2025/04");
+        assertThat(april.getChildren()).extracting(FileNode::getPath).containsExactly("2025/04/benson.pdf");
+    }
+
+    @Test
+    void hooksUpdateIndexImmediately() throws Exception {
+        Path may = Files.createDirectories(root.resolve("2025/05"));
+        index.directoryCreated(may);
+        Files.writeString(may.resolve("benson.pdf"), "may");
+        index.fileWritten(may.resolve("benson.pdf"));
+
+        assertThat(index.children(Paths.get("2025", "05"))).containsKey("benson.pdf");
+        assertThat(index.children(Paths.get("2025", "05")).get("benson.pdf").size()).isEqualTo(3);
+
+        Files.delete(root.resolve("2025/04/benson.pdf"));
+        index.deleted(root.resolve("2025/04/benson.pdf"));
+
+        assertThat(index.children(Paths.get("2025", "04"))).isEmpty();
+    }
+
+    @Test
+    void deletingADirectoryDropsOnlyItsSubtree() throws Exception {
+        Path april = root.resolve("2025/04");
+        Files.createDirectories(april.resolve("drafts"));
+        index.directoryCreated(april.resolve("drafts"));
+        // Sorts between "2025/04" and "2025/04/drafts" by name, but is not below either
+        Path sibling = Files.createDirectories(root.resolve("2025/04-old"));
+        index.directoryCreated(sibling);
+
+        index.deleted(april.resolve("benson.pdf"));
+        assertThat(index.children(Paths.get("2025", "04"))).doesNotContainKey("benson.pdf").containsKey("drafts");
+
+        index.deleted(april);
+        assertThat(index.children(Paths.get("2025", "04"))).isNull();
+        assertThat(index.children(Paths.get("2025", "04", "drafts"))).isNull();
+        assertThat(index.children(Paths.get("2025", "04-old"))).isNotNull();
+        assertThat(index.children(Paths.get("2025"))).containsOnlyKeys("04-old");
+    }
+
+    @Test
+    void watcherPicksUpExternalChanges() throws Exception {
+        Files.createDirectories(root.resolve("2026/01"));
+        Files.writeString(root.resolve("2026/01/external.pdf"), "external");
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(index.children(Paths.get("2026", "01"))).containsKey("external.pdf"));
+
+        Files.delete(root.resolve("2026/01/external.pdf"));
+
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(index.children(Paths.get("2026", "01"))).doesNotContainKey("external.pdf"));
+    }
+
+    @Test
+    void listingsSeeTheWholeTreeWhileRebuilding() throws Exception {
+        CompletableFuture<Void> rebuilds = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 200; i++) {
+                try {
+                    index.rebuild();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        while (!rebuilds.isDone()) {
+            assertThat(index.children(Paths.get("2025", "04"))).containsKey("benson.pdf");
+            assertThat(index.tree()).extracting(FileNode::getName).containsExactly("2025", "2024");
+        }
+        rebuilds.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,419 @@
+package com.example.demo.storage;
+
+import com.example.demo.invoice.Invoice;
+import com.example.demo.invoice.InvoiceService;
+import com.example.demo.invoice.InvoiceTemplate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StorageServiceTest {
+
+    private static final String DATE = "2099-01-15";
+
+    @TempDir
+    Path storage;
+
+    private StorageService storageService;
+
+    @BeforeEach
+    void startService() throws Exception {
+        storageService = new StorageService(storage);
+        storageService.startIndex();
+    }
+
+    @AfterEach
+    void stopService() throws Exception {
+        storageService.stopIndex();
+    }
+
+    @Test
+    void identicalInvoicesShareOneBlob() throws Exception {
+        byte[] pdf = "%PDF identical".getBytes(StandardCharsets.US_ASCII);
+
+        String first = storageService.saveInvoice(pdf, "alice.pdf", DATE);
+        String second = storageService.saveInvoice(pdf, "bob.pdf", DATE);
+
+        assertThat(Files.isSameFile(storage.resolve(first), storage.resolve(second))).isTrue();
+        assertThat(storageService.loadFile(second)).isEqualTo(pdf);
+        assertThat(blobCount(pdf)).isEqualTo(1);
+    }
+
+    @Test
+    void renderedInvoicesShareOneBlob() throws Exception {
+        InvoiceService invoiceService = new InvoiceService();
+        ReflectionTestUtils.setField(invoiceService, "invoiceTemplate", new InvoiceTemplate());
+        Invoice invoice = new Invoice("1", "Alice Tan", 45.0, "MAY", 2025, 4);
+        byte[] pdf = invoiceService.render(invoice);
+
+        // A second render, saved under another name, so the dedup can only come from identical bytes
+        Path first = storage.resolve(storageService.saveInvoice(pdf, "alice.pdf", DATE));
+        Path second = storage.resolve(storageService.saveInvoice(invoiceService.render(invoice), "alice-copy.pdf", DATE));
+
+        assertThat(Files.isSameFile(first, second)).isTrue();
+        assertThat(Files.getAttribute(second, "unix:ino")).isEqualTo(Files.getAttribute(first, "unix:ino"));
+        assertThat(blobCount(pdf)).isEqualTo(1);
+    }
+
+    @Test
+    void invoiceNamesCannotLeaveTheMonthFolder() throws Exception {
+        byte[] pdf = "%PDF escape".getBytes(StandardCharsets.US_ASCII);
+
+        for (String fileName : new String[]{"../../escape.pdf", "../02/alice.pdf", "sub/alice.pdf", ".",
+                ".archive.idx", "../../../outside.pdf"}) {
+            assertThatThrownBy(() -> storageService.saveInvoice(pdf, fileName, DATE))
+                    .as(fileName).isInstanceOf(IllegalArgumentException.class);
+        }
+        assertThatThrownBy(() -> storageService.saveInvoice(pdf, "alice.pdf", "..-..-01"))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        // Nothing was written, not even a temporary file or the month's folder
+        try (Stream<Path> files = Files.walk(storage)) {
+            assertThat(files).noneMatch(file -> file.getFileName().toString().contains("escape")
+                    || file.getFileName().toString().startsWith("2099"));
+        }
+        try (Stream<Path> files = Files.list(storage.getParent())) {
+            assertThat(files).noneMatch(file -> file.getFileName().toString().contains("outside"));
+        }
+        assertThat(storageService.saveInvoice(pdf, "./alice.pdf", DATE)).isEqualTo("2099/01/alice.pdf");
+    }
+
+    @Test
+    void regeneratingUnchangedInvoiceKeepsTheSameFile() throws Exception {
+        byte[] pdf = "%PDF unchanged".getBytes(StandardCharsets.US_ASCII);
+        Path file = storage.resolve(storageService.saveInvoice(pdf, "alice.pdf", DATE));
+        Object inode = Files.getAttribute(file, "unix:ino");
+
+        storageService.saveInvoice(pdf, "alice.pdf", DATE);
+
+        assertThat(Files.getAttribute(file, "unix:ino")).isEqualTo(inode);
+    }
+
+    @Test
+    void concurrentStreamingWritersNeverLeaveATornFile() throws Exception {
+        ReflectionTestUtils.setField(storageService, "fsync", true);
+        int writers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> saves = new ArrayList<>();
+            for (int writer = 0; writer < writers; writer++) {
+                byte fill = (byte) ('a' + writer);
+                saves.add(executor.submit(() -> {
+                    for (int round = 0; round < 10; round++) {
+                        // Written in chunks, as a renderer would, with every byte of one save the same
+                        storageService.saveInvoice("alice.pdf", DATE, out -> {
+                            byte[] chunk = new byte[4096];
+                            Arrays.fill(chunk, fill);
+                            for (int i = 0; i < 64; i++) {
+                                out.write(chunk);
+                            }
+                        });
+                        byte[] stored = storageService.loadFile("2099/01/alice.pdf");
+                        assertThat(stored).hasSize(64 * 4096);
+                        assertThat(stored).containsOnly(stored[0]);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> save : saves) {
+                save.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        try (Stream<Path> files = Files.list(storage.resolve("2099/01"))) {
+            assertThat(files).extracting(file -> file.getFileName().toString()).containsExactly("alice.pdf");
+        }
+    }
+
+    @Test
+    void savesOfTheSameFileRenderSideBySide() throws Exception {
+        CountDownLatch rendering = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Boolean>> saves = new ArrayList<>();
+            for (int writer = 0; writer < 2; writer++) {
+                saves.add(executor.submit(() -> {
+                    boolean[] overlapped = new boolean[1];
+                    storageService.saveInvoice("alice.pdf", DATE, out -> {
+                        // Only returns true once the other save is rendering too
+                        rendering.countDown();
+                        try {
+                            overlapped[0] = rendering.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        out.write("%PDF".getBytes(StandardCharsets.US_ASCII));
+                    });
+                    return overlapped[0];
+                }));
+            }
+            for (Future<Boolean> save : saves) {
+                assertThat(save.get()).isTrue();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(storageService.loadFile("2099/01/alice.pdf")).asString(StandardCharsets.US_ASCII).isEqualTo("%PDF");
+    }
+
+    @Test
+    void blobsAreReleasedWhenNoFileLinksToThem() throws Exception {
+        byte[] april = "%PDF april".getBytes(StandardCharsets.US_ASCII);
+        byte[] may = "%PDF may".getBytes(StandardCharsets.US_ASCII);
+
+        storageService.saveInvoice(april, "alice.pdf", DATE);
+        storageService.saveInvoice(may, "alice.pdf", DATE);
+        assertThat(blobCount(april)).isZero();
+        assertThat(storageService.loadFile("2099/01/alice.pdf")).isEqualTo(may);
+
+        storageService.deleteFile("2099/01/alice.pdf");
+        assertThat(blobCount(may)).isZero();
+    }
+
+    @Test
+    void deletingAFolderReleasesOnlyTheBlobsOfItsFiles() throws Exception {
+        byte[] shared = "%PDF shared".getBytes(StandardCharsets.US_ASCII);
+        byte[] own = "%PDF own".getBytes(StandardCharsets.US_ASCII);
+        storageService.saveInvoice(shared, "alice.pdf", DATE);
+        storageService.saveInvoice(own, "bob.pdf", DATE);
+        storageService.saveInvoice(shared, "alice.pdf", "2098-01-15");
+
+        // A new instance finds out which blobs the files link to from the blob folder
+        storageService.stopIndex();
+        startService();
+        storageService.deleteFile("2099");
+
+        assertThat(blobCount(own)).isZero();
+        assertThat(blobCount(shared)).isEqualTo(1);
+        assertThat(storageService.loadFile("2098/01/alice.pdf")).isEqualTo(shared);
+    }
+
+    @Test
+    void blobFolderIsHiddenFromListingsAndViews() throws Exception {
+        storageService.saveInvoice("%PDF hidden".getBytes(StandardCharsets.US_ASCII), "alice.pdf", DATE);
+
+        assertThat(storageService.listFilesAndFolders(storage)).extracting(FileNode::getName).doesNotContain(".blobs");
+        assertThat(storageService.listFolder("", null, 100, FolderSort.NAME, false, 1).items())
+                .extracting(FolderItem::name).doesNotContain(".blobs");
+    }
+
+    @Test
+    void nodesSharingABackendSeeEachOthersSavesAndDeletes(@TempDir Path shared, @TempDir Path otherStorage) throws Exception {
+        StorageBackend backend = new FileSystemBackend(shared);
+        // An archive from before the backend was configured
+        byte[] old = "%PDF old".getBytes(StandardCharsets.US_ASCII);
+        Files.createDirectories(otherStorage.resolve("2098/12"));
+        Files.write(otherStorage.resolve("2098/12/old.pdf"), old);
+        StorageService otherNode = new StorageService(otherStorage);
+        otherNode.startIndex();
+        ReflectionTestUtils.setField(storageService, "backend", backend);
+        ReflectionTestUtils.setField(otherNode, "backend", backend);
+        try {
+            byte[] pdf = "%PDF shared".getBytes(StandardCharsets.US_ASCII);
+            String path = storageService.saveInvoice(pdf, "alice.pdf", DATE);
+            assertThat(shared.resolve(path)).hasBinaryContent(pdf);
+            assertThat(otherNode.loadFile(path)).isEqualTo(pdf);
+
+            storageService.saveInvoice(pdf, "bob.pdf", DATE);
+            otherNode.syncWithBackend();
+            assertThat(otherNode.listFolder("2099/01", null, 100, FolderSort.NAME, false, 1).items())
+                    .extracting(FolderItem::name).containsExactly("alice.pdf", "bob.pdf");
+            assertThat(shared.resolve("2098/12/old.pdf")).hasBinaryContent(old);
+
+            storageService.deleteFile(path);
+            otherNode.syncWithBackend();
+            assertThat(otherNode.exists(path)).isFalse();
+            assertThat(otherNode.exists("2099/01/bob.pdf")).isTrue();
+        } finally {
+            otherNode.stopIndex();
+        }
+    }
+
+    @Test
+    void filesDeletedByOtherNodesWhileStoppedAreNotUploadedAgain(@TempDir Path shared, @TempDir Path otherStorage) throws Exception {
+        StorageBackend backend = new FileSystemBackend(shared);
+        ReflectionTestUtils.setField(storageService, "backend", backend);
+        StorageService otherNode = new StorageService(otherStorage);
+        otherNode.startIndex();
+        ReflectionTestUtils.setField(otherNode, "backend", backend);
+        String path = storageService.saveInvoice("%PDF alice".getBytes(StandardCharsets.US_ASCII), "alice.pdf", DATE);
+        otherNode.syncWithBackend();
+        otherNode.stopIndex();
+
+        storageService.deleteFile(path);
+        StorageService restarted = new StorageService(otherStorage);
+        restarted.startIndex();
+        ReflectionTestUtils.setField(restarted, "backend", backend);
+        try {
+            restarted.syncWithBackend();
+
+            assertThat(restarted.exists(path)).isFalse();
+            assertThat(shared.resolve(path)).doesNotExist();
+        } finally {
+            restarted.stopIndex();
+        }
+    }
+
+    @Test
+    void failedUploadsAndDeletesAreRetriedByTheNextSync(@TempDir Path shared) throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        StorageBackend files = new FileSystemBackend(shared);
+        StorageBackend backend = new StorageBackend() {
+            @Override
+            public String upload(String key, Path file) throws IOException {
+                check();
+                return files.upload(key, file);
+            }
+
+            @Override
+            public String download(String key, Path target) throws IOException {
+                return files.download(key, target);
+            }
+
+            @Override
+            public void delete(String key) throws IOException {
+                check();
+                files.delete(key);
+            }
+
+            @Override
+            public List<StoredObject> list() throws IOException {
+                return files.list();
+            }
+
+            @Override
+            public void close() {
+            }
+
+            private void check() throws IOException {
+                if (failing.get()) {
+                    throw new IOException("Backend unavailable");
+                }
+            }
+        };
+        ReflectionTestUtils.setField(storageService, "backend", backend);
+
+        byte[] pdf = "%PDF alice".getBytes(StandardCharsets.US_ASCII);
+        String path = storageService.saveInvoice(pdf, "alice.pdf", DATE);
+        assertThat(shared.resolve(path)).doesNotExist();
+        failing.set(false);
+        storageService.syncWithBackend();
+        assertThat(shared.resolve(path)).hasBinaryContent(pdf);
+
+        failing.set(true);
+        storageService.deleteFile(path);
+        // The queue outlives a restart
+        storageService.stopIndex();
+        storageService = new StorageService(storage);
+        storageService.startIndex();
+        ReflectionTestUtils.setField(storageService, "backend", backend);
+        failing.set(false);
+        storageService.syncWithBackend();
+
+        assertThat(shared.resolve(path)).doesNotExist();
+        assertThat(storageService.exists(path)).isFalse();
+    }
+
+    @Test
+    void archivedMonthIsListedViewedAndExportedAsBefore() throws Exception {
+        byte[] alice = "%PDF alice".getBytes(StandardCharsets.US_ASCII);
+        byte[] bob = "%PDF bob".getBytes(StandardCharsets.US_ASCII);
+        storageService.saveInvoice(alice, "alice.pdf", "2020-01-15");
+        storageService.saveInvoice(bob, "bob.pdf", "2020-01-15");
+        List<FolderItem> before = storageService.listFolder("2020/01", null, 100, FolderSort.NAME, false, 1).items();
+
+        assertThat(storageService.archiveMonth("2020-01")).isEqualTo(2);
+
+        try (Stream<Path> files = Files.list(storage.resolve("2020/01"))) {
+            assertThat(files).extracting(file -> file.getFileName().toString())
+                    .containsExactlyInAnyOrder(MonthArchive.SEGMENT, MonthArchive.INDEX);
+        }
+        assertThat(blobCount(bob)).isZero();
+        assertThat(storageService.listFolder("2020/01", null, 100, FolderSort.NAME, false, 1).items()).isEqualTo(before);
+        assertThat(storageService.loadAsResource("2020/01/bob.pdf").getContentAsByteArray()).isEqualTo(bob);
+        assertThat(storageService.resolveExport("2020", null)).extracting(file -> storage.relativize(file).toString())
+                .containsExactly("2020/01/alice.pdf", "2020/01/bob.pdf");
+
+        // A new save replaces the archived copy; deleting it does not bring the archived copy back
+        byte[] reissued = "%PDF alice again".getBytes(StandardCharsets.US_ASCII);
+        storageService.saveInvoice(reissued, "alice.pdf", "2020-01-15");
+        assertThat(storageService.loadFile("2020/01/alice.pdf")).isEqualTo(reissued);
+        assertThat(storageService.deleteFile("2020/01/alice.pdf")).isTrue();
+        assertThat(storageService.deleteFile("2020/01/bob.pdf")).isTrue();
+        assertThat(storageService.exists("2020/01/alice.pdf")).isFalse();
+        assertThat(storageService.exists("2020/01/bob.pdf")).isFalse();
+        assertThat(storageService.listFolder("2020/01", null, 100, FolderSort.NAME, false, 1).items()).isEmpty();
+    }
+
+    @Test
+    void archiveDeletedWithItsFolderIsNotServedAnyMore() throws Exception {
+        storageService.saveInvoice("%PDF alice".getBytes(StandardCharsets.US_ASCII), "alice.pdf", "2020-01-15");
+        storageService.archiveMonth("2020-01");
+        assertThat(storageService.exists("2020/01/alice.pdf")).isTrue();
+
+        FileSystemUtils.deleteRecursively(storage.resolve("2020"));
+        Files.createDirectories(storage.resolve("2020/01"));
+
+        assertThat(storageService.exists("2020/01/alice.pdf")).isFalse();
+        assertThatThrownBy(() -> storageService.loadAsResource("2020/01/alice.pdf")).isInstanceOf(FileNotFoundException.class);
+    }
+
+    @Test
+    void archivedFilesAreUploadedAndDeletedBySync(@TempDir Path shared) throws Exception {
+        byte[] alice = "%PDF alice".getBytes(StandardCharsets.US_ASCII);
+        String path = storageService.saveInvoice(alice, "alice.pdf", "2020-01-15");
+        storageService.archiveMonth("2020-01");
+        // Packed before the backend was configured
+        StorageBackend backend = new FileSystemBackend(shared);
+        ReflectionTestUtils.setField(storageService, "backend", backend);
+
+        storageService.syncWithBackend();
+        assertThat(shared.resolve(path)).hasBinaryContent(alice);
+
+        // Deleted by another node
+        backend.delete(path);
+        storageService.syncWithBackend();
+        assertThat(storageService.exists(path)).isFalse();
+        assertThat(storageService.listFolder("2020/01", null, 100, FolderSort.NAME, false, 1).items()).isEmpty();
+    }
+
+    @Test
+    void onlyFinishedMonthsAreArchived() throws Exception {
+        storageService.saveInvoice("%PDF".getBytes(StandardCharsets.US_ASCII), "alice.pdf", DATE);
+
+        assertThatThrownBy(() -> storageService.archiveMonth("2099-01")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> storageService.archiveMonth("January")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private long blobCount(byte[] content) throws Exception {
+        Path blobRoot = storage.resolve(BlobStore.BLOB_FOLDER);
+        String digest = BlobStore.digest(content);
+        try (Stream<Path> blobs = Files.walk(blobRoot)) {
+            return blobs.filter(path -> path.getFileName().toString().equals(digest)).count();
+        }
+    }
+}
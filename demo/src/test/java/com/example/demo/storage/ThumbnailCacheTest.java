@@ -0,0 +1,132 @@
+package com.example.demo.storage;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ThumbnailCacheTest {
+
+    @TempDir
+    Path root;
+
+    @BeforeEach
+    void createPdfs() throws Exception {
+        for (String name : new String[]{"a.pdf", "b.pdf", "c.pdf"}) {
+            try (PDDocument document = new PDDocument()) {
+                document.addPage(new PDPage());
+                document.save(root.resolve(name).toFile());
+            }
+        }
+    }
+
+    @Test
+    void cachedThumbnailIsReusedUntilThePdfChanges() throws Exception {
+        ThumbnailCache cache = new ThumbnailCache(root, Long.MAX_VALUE);
+
+        Path first = cache.get(root.resolve("a.pdf"));
+        assertThat(cache.get(root.resolve("a.pdf"))).isEqualTo(first);
+
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage());
+            document.addPage(new PDPage());
+            document.save(root.resolve("a.pdf").toFile());
+        }
+        assertThat(cache.get(root.resolve("a.pdf"))).isNotEqualTo(first);
+    }
+
+    @Test
+    void leastRecentlyServedThumbnailIsEvictedFirst() throws Exception {
+        ThumbnailCache cache = new ThumbnailCache(root, Long.MAX_VALUE);
+        Path a = cache.get(root.resolve("a.pdf"));
+        Path b = cache.get(root.resolve("b.pdf"));
+        cache.get(root.resolve("a.pdf"));
+
+        // Room for two thumbnails: rendering a third evicts b, which was served least recently
+        cache.setMaxBytes(Files.size(a) + Files.size(b) + Files.size(a) / 2);
+        Path c = cache.get(root.resolve("c.pdf"));
+
+        assertThat(a).exists();
+        assertThat(b).doesNotExist();
+        assertThat(c).exists();
+    }
+
+    @Test
+    void concurrentRequestsRenderAThumbnailOnce() throws Exception {
+        ThumbnailCache cache = new ThumbnailCache(root, Long.MAX_VALUE);
+        Path pdf = root.resolve("a.pdf");
+        AtomicInteger loads = new AtomicInteger();
+        ThumbnailCache.DocumentLoader loader = () -> {
+            loads.incrementAndGet();
+            // Long enough for the other requests to arrive while the first is rendering
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            return PDDocument.load(pdf.toFile());
+        };
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService requests = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Path>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(requests.submit(() -> {
+                    start.await();
+                    return cache.get(pdf, Files.size(pdf), 1L, loader);
+                }));
+            }
+            start.countDown();
+            for (Future<Path> result : results) {
+                assertThat(result.get()).exists();
+            }
+        } finally {
+            requests.shutdownNow();
+        }
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void thumbnailIsNotEvictedWhileItIsBeingRead() throws Exception {
+        ThumbnailCache cache = new ThumbnailCache(root, Long.MAX_VALUE);
+        Resource a = cache.serve(root.resolve("a.pdf"));
+        Path aFile = root.resolve(ThumbnailCache.THUMBNAIL_FOLDER).resolve(a.getFilename());
+
+        try (InputStream in = a.getInputStream()) {
+            cache.setMaxBytes(0);
+            cache.get(root.resolve("b.pdf"));
+
+            assertThat(aFile).exists();
+            assertThat(in.readAllBytes()).hasSize((int) Files.size(aFile));
+        }
+        assertThat(aFile).doesNotExist();
+    }
+
+    @Test
+    void thumbnailEvictedBeforeItIsReadIsRenderedAgain() throws Exception {
+        ThumbnailCache cache = new ThumbnailCache(root, Long.MAX_VALUE);
+        Resource a = cache.serve(root.resolve("a.pdf"));
+        Path aFile = root.resolve(ThumbnailCache.THUMBNAIL_FOLDER).resolve(a.getFilename());
+        cache.setMaxBytes(0);
+        assertThat(aFile).doesNotExist();
+
+        try (InputStream in = a.getInputStream()) {
+            assertThat(in.readAllBytes()).startsWith((byte) 0x89, (byte) 'P', (byte) 'N', (byte) 'G');
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.demo.student;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(StudentController.class)
+class StudentControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private StudentService studentService;
+
+    @MockitoBean
+    private StudentImportService studentImportService;
+
+    @MockitoBean
+    private StudentIndexService studentIndexService;
+
+    @Test
+    void searchReturnsRequestedPageWithFilters() throws Exception {
+        Pageable pageable = PageRequest.of(1, 2, Sort.by("name"));
+        when(studentService.findStudents(any(), eq(pageable)))
+                .thenReturn(new PageImpl<>(List.of(student("Cara")), pageable, 3));
+
+        mockMvc.perform(get("/api/students/search")
+                        .param("educationLevel", "Sec 3").param("day", "monday")
+                        .param("page", "1").param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].name").value("Cara"))
+                .andExpect(jsonPath("$.page.totalElements").value(3))
+                .andExpect(jsonPath("$.page.totalPages").value(2));
+
+        verify(studentService).findStudents(new StudentFilter("Sec 3", null, "monday"), pageable);
+    }
+
+    @Test
+    void exportWritesOneStudentPerLine() throws Exception {
+        when(studentService.streamStudents(any())).thenReturn(Stream.of(student("Alice"), student("Bob")));
+
+        MvcResult started = mockMvc.perform(get("/api/students/export").param("subject", "Math"))
+                .andExpect(status().isOk())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string(matchesPattern(
+                        "\\{[^\\n]*\"name\":\"Alice\"[^\\n]*}\\n\\{[^\\n]*\"name\":\"Bob\"[^\\n]*}\\n")));
+    }
+
+    private static Student student(String name) {
+        Student student = new Student();
+        student.setName(name);
+        return student;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.demo.student;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import org.bson.BsonString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StudentImportServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private Cache cache;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private StudentImportService studentImportService;
+
+    @BeforeEach
+    void setUp() {
+        // Not reached by uploads without a single valid row
+        lenient().when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Student.class)).thenReturn(bulkOperations);
+        when(cacheManager.getCache(any())).thenReturn(cache);
+    }
+
+    @Test
+    void importsCsvRowsAndReportsEachRow() throws Exception {
+        // The first valid row is new, the second matches an existing student
+        when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1,
+                List.of(new BulkWriteUpsert(0, new BsonString("generated"))), List.of()));
+        String csv = """
+                id,name,educationLevel,subjects,days,ratePerLesson
+                ,Alice,Sec 3,Math;Physics,monday:2;Thursday:1,45
+                s2,Bob,Sec 4,Chemistry,Friday:1,50
+                s3,,Sec 1,Math,Monday:1,40
+                s4,Dan,Sec 2,Math,Someday:1,40
+                """;
+
+        StudentImportResult result = studentImportService.importCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(result.created()).isEqualTo(1);
+        assertThat(result.updated()).isEqualTo(1);
+        assertThat(result.rejected()).isEqualTo(2);
+        assertThat(result.rows()).extracting(StudentImportRow::status)
+                .containsExactly("created", "updated", "invalid", "invalid");
+        assertThat(result.rows().get(1).id()).isEqualTo("s2");
+        assertThat(result.rows().get(2).error()).isEqualTo("name is required");
+
+        ArgumentCaptor<Student> written = ArgumentCaptor.forClass(Student.class);
+        verify(bulkOperations, times(2)).replaceOne(any(Query.class), written.capture(), any(FindAndReplaceOptions.class));
+        Student alice = written.getAllValues().get(0);
+        assertThat(alice.getId()).isNotNull();
+        assertThat(alice.getSubjects()).containsExactly("Math", "Physics");
+        assertThat(alice.getDays()).containsOnly(Map.entry("Monday", 2), Map.entry("Thursday", 1));
+        verify(bulkOperations, times(1)).execute();
+    }
+
+    @Test
+    void writesJsonRowsInBatches() throws Exception {
+        when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of()));
+        StringBuilder json = new StringBuilder("[");
+        int count = StudentImportService.BATCH_SIZE + 1;
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":\"s").append(i).append("\",\"name\":\"Student ").append(i).append("\"}");
+        }
+        json.append(",{\"name\":\"Eve\",\"ratePerLesson\":\"lots\"}]");
+
+        StudentImportResult result = studentImportService.importJson(
+                new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(result.updated()).isEqualTo(count);
+        assertThat(result.rejected()).isEqualTo(1);
+        assertThat(result.rows().get(count).status()).isEqualTo("invalid");
+        verify(bulkOperations, times(2)).execute();
+    }
+
+    @Test
+    void rejectsFractionalLessonCounts() throws Exception {
+        String csv = """
+                name,days
+                Alice,Monday:2.5
+                """;
+        String json = "[{\"name\":\"Bob\",\"days\":{\"Monday\":1.5}}]";
+
+        StudentImportResult fromCsv = studentImportService.importCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+        StudentImportResult fromJson = studentImportService.importJson(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(fromCsv.rows()).extracting(StudentImportRow::status).containsExactly("invalid");
+        assertThat(fromCsv.rows().get(0).error()).contains("whole numbers");
+        assertThat(fromJson.rows()).extracting(StudentImportRow::status).containsExactly("invalid");
+        verify(bulkOperations, times(0)).execute();
+    }
+
+    @Test
+    void stopsAtNonObjectElementAndReportsRowsAlreadyWritten() throws Exception {
+        when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of()));
+        StringBuilder json = new StringBuilder("[");
+        int count = StudentImportService.BATCH_SIZE + 1;
+        for (int i = 0; i < count; i++) {
+            json.append("{\"id\":\"s").append(i).append("\",\"name\":\"Student ").append(i).append("\"},");
+        }
+        json.append("42,{\"name\":\"Eve\"}]");
+
+        StudentImportException failure = catchThrowableOfType(StudentImportException.class, () ->
+                studentImportService.importJson(new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8))));
+
+        assertThat(failure).hasMessageContaining("Element " + (count + 1));
+        // Only the full batch was written; the row after it was still waiting
+        assertThat(failure.getImported().updated()).isEqualTo(StudentImportService.BATCH_SIZE);
+        verify(bulkOperations, times(1)).execute();
+        verify(cache, times(2)).clear();
+    }
+}
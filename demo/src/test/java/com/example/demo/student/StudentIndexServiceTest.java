@@ -0,0 +1,119 @@
+package com.example.demo.student;
+
+import com.example.demo.EmbeddedMongoConfig;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.flapdoodle.embed.mongo.commands.ServerAddress;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = {StudentIndexService.class, EmbeddedMongoConfig.class},
+        properties = "students.indexes.create-on-startup=false")
+class StudentIndexServiceTest {
+
+    private static final int ROSTER_SIZE = 50_000;
+    private static final String[] LEVELS = {"Pri 5", "Pri 6", "Sec 1", "Sec 2", "Sec 3", "Sec 4", "JC 1", "JC 2"};
+    private static final String[] SUBJECTS = {"Math", "Physics", "Chemistry", "Biology", "English", "Chinese"};
+    private static final String[] DAYS = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday"};
+
+    @Autowired
+    private StudentIndexService studentIndexService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Test
+    void studentDeclaresIndexesForEverySearchField() {
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(new MongoMappingContext());
+
+        List<String> keys = new ArrayList<>();
+        for (IndexDefinition index : resolver.resolveIndexFor(Student.class)) {
+            keys.add(index.getIndexKeys().toJson());
+        }
+
+        assertThat(keys).containsExactlyInAnyOrder(
+                "{\"educationLevel\": 1, \"name\": 1}",
+                "{\"name\": 1}",
+                "{\"subjects\": 1}",
+                "{\"days.$**\": 1}");
+    }
+
+    @Test
+    void ensureIndexesCreatesTheDeclaredIndexesOnce() {
+        mongoTemplate.dropCollection(Student.class);
+
+        assertThat(studentIndexService.ensureIndexes()).containsExactlyInAnyOrder(
+                "_id_", "educationLevel_name", "name", "subjects", "days");
+        assertThat(studentIndexService.ensureIndexes()).hasSize(5);
+    }
+
+    /**
+     * Checks the query plans, which only a real mongod produces. Runs with {@code -Pmongo-test} against
+     * a mongod downloaded to (and then cached in) ~/.embedmongo, or against a running server given
+     * with {@code -Dmongo.test.uri=mongodb://host:port}, which also turns the profile on.
+     * <p>
+     * Not yet run: it was written where neither a mongod nor a download of one was available, so the plan
+     * assertions below have never been checked against a real server. Run it once with the profile on
+     * and drop this note when it passes.
+     */
+    @Test
+    @Tag("mongo")
+    void searchesUseIndexesOnLargeRoster() {
+        String uri = System.getProperty("mongo.test.uri");
+        try (TransitionWalker.ReachedState<RunningMongodProcess> mongod = uri == null ? Mongod.instance().start(Version.Main.V7_0) : null) {
+            if (mongod != null) {
+                ServerAddress address = mongod.current().getServerAddress();
+                uri = "mongodb://" + address.getHost() + ":" + address.getPort();
+            }
+            try (MongoClient client = MongoClients.create(uri)) {
+                MongoTemplate mongoTemplate = new MongoTemplate(client, "students-index-test");
+                mongoTemplate.dropCollection(Student.class);
+                insertRoster(mongoTemplate);
+
+                StudentIndexService service = new StudentIndexService();
+                ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+                StudentFilter byLevel = new StudentFilter("Sec 3", null, null);
+                assertThat(service.explain(byLevel).collectionScan()).isTrue();
+
+                assertThat(service.ensureIndexes()).hasSize(5);
+
+                assertThat(service.explain(byLevel).indexes()).containsExactly("educationLevel_name");
+                assertThat(service.explain(new StudentFilter(null, "Physics", null)).collectionScan()).isFalse();
+                assertThat(service.explain(new StudentFilter(null, null, "monday")).collectionScan()).isFalse();
+                assertThat(service.explain(new StudentFilter("JC 1", "Math", "Friday")).collectionScan()).isFalse();
+            }
+        }
+    }
+
+    private static void insertRoster(MongoTemplate mongoTemplate) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Student.class);
+        for (int i = 0; i < ROSTER_SIZE; i++) {
+            Student student = new Student();
+            student.setName("Student " + i);
+            student.setEducationLevel(LEVELS[i % LEVELS.length]);
+            student.setSubjects(List.of(SUBJECTS[i % SUBJECTS.length], SUBJECTS[(i / 7) % SUBJECTS.length]));
+            student.setDays(Map.of(DAYS[i % DAYS.length], 1 + i % 2));
+            student.setRatePerLesson(40 + i % 20);
+            bulk.insert(student);
+        }
+        bulk.execute();
+    }
+}
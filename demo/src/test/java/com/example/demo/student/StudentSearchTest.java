@@ -0,0 +1,74 @@
+package com.example.demo.student;
+
+import com.example.demo.EmbeddedMongoConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Map;
+
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Student search through the controller and the real queries, run against an in-process Mongo.
+ */
+@WebMvcTest(StudentController.class)
+@Import({StudentService.class, StudentCache.class, EmbeddedMongoConfig.class})
+class StudentSearchTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @MockitoBean
+    private StudentRepository studentRepository;
+
+    @MockitoBean
+    private StudentImportService studentImportService;
+
+    @MockitoBean
+    private StudentIndexService studentIndexService;
+
+    @BeforeEach
+    void insertStudents() {
+        mongoTemplate.dropCollection(Student.class);
+        mongoTemplate.insert(student("Alice", "Sec 3", Map.of("Monday", 2)));
+        mongoTemplate.insert(student("Bob", "Sec 3", Map.of("Tuesday", 1)));
+        mongoTemplate.insert(student("Cara", "JC 1", Map.of("Monday", 1, "Friday", 1)));
+    }
+
+    @Test
+    void searchMatchesLessonDaysCaseInsensitively() throws Exception {
+        mockMvc.perform(get("/api/students/search").param("day", "MONDAY").param("sort", "name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].name").value(contains("Alice", "Cara")))
+                .andExpect(jsonPath("$.page.totalElements").value(2));
+        mockMvc.perform(get("/api/students/search").param("day", "monday").param("educationLevel", "Sec 3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].name").value(contains("Alice")));
+    }
+
+    @Test
+    void searchRejectsUnknownDay() throws Exception {
+        mockMvc.perform(get("/api/students/search").param("day", "someday"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static Student student(String name, String educationLevel, Map<String, Integer> days) {
+        Student student = new Student();
+        student.setName(name);
+        student.setEducationLevel(educationLevel);
+        student.setDays(days);
+        return student;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.demo.student;
+
+import com.example.demo.configs.CacheConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.cache.CacheAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(classes = {StudentService.class, StudentCache.class, CacheConfig.class},
+        properties = "spring.cache.caffeine.spec=maximumSize=100,expireAfterWrite=10m,recordStats")
+@ImportAutoConfiguration(CacheAutoConfiguration.class)
+class StudentServiceTest {
+
+    @Autowired
+    private StudentService studentService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @MockitoBean
+    private StudentRepository studentRepository;
+
+    @MockitoBean
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void clearCaches() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    void repeatedReadsAreServedFromCache() {
+        Student student = student("s1", "Alice");
+        when(studentRepository.findById("s1")).thenReturn(Optional.of(student));
+        when(studentRepository.findAll()).thenReturn(List.of(student));
+
+        assertThat(studentService.getStudentById("s1")).get().usingRecursiveComparison().isEqualTo(student);
+        assertThat(studentService.getStudentById("s1")).get().usingRecursiveComparison().isEqualTo(student);
+        assertThat(studentService.getAllStudents()).usingRecursiveFieldByFieldElementComparator().containsExactly(student);
+        assertThat(studentService.getAllStudents()).usingRecursiveFieldByFieldElementComparator().containsExactly(student);
+
+        verify(studentRepository, times(1)).findById("s1");
+        verify(studentRepository, times(1)).findAll();
+    }
+
+    @Test
+    void writesInvalidateCachedReads() {
+        Student student = student("s2", "Bob");
+        when(studentRepository.findById("s2")).thenReturn(Optional.of(student));
+        when(studentRepository.findAll()).thenReturn(List.of(student));
+        when(studentRepository.save(any())).thenAnswer(call -> call.getArgument(0));
+
+        studentService.getStudentById("s2");
+        studentService.getAllStudents();
+        studentService.updateStudent("s2", student("s2", "Bobby"));
+        studentService.getStudentById("s2");
+        studentService.getAllStudents();
+        studentService.deleteStudent("s2");
+        studentService.getStudentById("s2");
+
+        // findById is also called once by updateStudent itself
+        verify(studentRepository, times(4)).findById("s2");
+        verify(studentRepository, times(2)).findAll();
+    }
+
+    @Test
+    void callersCannotChangeCachedStudents() {
+        Student student = student("s3", "Carol");
+        student.setSubjects(List.of("Physics"));
+        when(studentRepository.findById("s3")).thenReturn(Optional.of(student));
+        when(studentRepository.findAll()).thenReturn(List.of(student));
+
+        Student served = studentService.getStudentById("s3").orElseThrow();
+        served.setName("Changed");
+        served.getSubjects().add("Chemistry");
+        studentService.getAllStudents().get(0).setName("Changed");
+
+        assertThat(studentService.getStudentById("s3").orElseThrow().getName()).isEqualTo("Carol");
+        assertThat(studentService.getStudentById("s3").orElseThrow().getSubjects()).containsExactly("Physics");
+        assertThat(studentService.getAllStudents()).extracting(Student::getName).containsExactly("Carol");
+    }
+
+    @Test
+    void rosterCacheHoldsOneEntry() {
+        CaffeineCache roster = (CaffeineCache) cacheManager.getCache(StudentService.ROSTER_CACHE);
+
+        assertThat(roster.getNativeCache().policy().eviction().orElseThrow().getMaximum()).isEqualTo(1);
+    }
+
+    private static Student student(String id, String name) {
+        Student student = new Student();
+        student.setId(id);
+        student.setName(name);
+        return student;
+    }
+}
@@ -1,25 +1,29 @@
 import React, { useState, useEffect } from "react";
 import axios from "axios";
 
+const PAGE_SIZE = 100;
+
 const FileBrowser = () => {
   const [path, setPath] = useState(['pdf-storage']); // Start with 'pdf-storage' as root
-  const [columns, setColumns] = useState([]); // Each is a list of files/folders
+  const [columns, setColumns] = useState([]); // Each is a page of files/folders: { items, nextCursor }
 
-  const fetchItems = async (currentPath) => {
+  const fetchItems = async (currentPath, cursor) => {
     const pathStr = currentPath.join('/');  // Modify path format
     try {
-      const response = await axios.get(`/api/storage/listfolders?path=${pathStr}`);
+      const response = await axios.get('/api/storage/listfolders', {
+        params: { path: pathStr, cursor, limit: PAGE_SIZE }
+      });
       return response.data;
     } catch (error) {
       console.error("Error fetching items", error);
-      return [];
+      return { items: [], nextCursor: null };
     }
   };
 
   useEffect(() => {
     // Load root folder (pdf-storage) on mount
-    fetchItems(['pdf-storage']).then(items => {
-      setColumns([items]);
+    fetchItems(['pdf-storage']).then(page => {
+      setColumns([page]);
     });
   }, []);
 
@@ -28,10 +32,10 @@ const FileBrowser = () => {
     setPath(newPath);
 
     if (item.type === 'folder') {
-      const newItems = await fetchItems(newPath);
+      const newPage = await fetchItems(newPath);
       setColumns([
         ...columns.slice(0, level + 1),
-        newItems
+        newPage
       ]);
     } else {
       // File clicked: just update the path, not columns
@@ -39,20 +43,29 @@ const FileBrowser = () => {
     }
   };
 
+  // Fetch the next page of a column and append it
+  const loadMore = async (level) => {
+    const column = columns[level];
+    const page = await fetchItems(path.slice(0, level), column.nextCursor);
+    setColumns(columns.map((col, i) => i === level
+      ? { items: [...col.items, ...page.items], nextCursor: page.nextCursor }
+      : col));
+  };
+
   const getSelectedItem = () => {
     let selected = null;
     for (let i = 0; i < path.length; i++) {
       const col = columns[i];
-      selected = col?.find(item => item.name === path[i]) || null;
+      selected = col?.items.find(item => item.name === path[i]) || null;
     }
     return selected?.type === 'file' ? selected : null;
   };
 
   return (
     <div className="flex h-screen">
-      {columns.map((items, level) => (
+      {columns.map((column, level) => (
         <div key={level} className="w-1/4 border-r overflow-y-auto bg-white">
-          {items.map((item) => (
+          {column.items.map((item) => (
             <div
               key={item.name}
               className={`p-2 cursor-pointer hover:bg-gray-100 ${
@@ -64,18 +77,49 @@ const FileBrowser = () => {
               {item.name.replace(".pdf", "")}
             </div>
           ))}
+          {column.nextCursor && (
+            <div
+              className="p-2 cursor-pointer text-cyan-600 hover:bg-gray-100"
+              onClick={() => loadMore(level)}
+            >
+              Load more…
+            </div>
+          )}
         </div>
       ))}
       <div className="w-1/4 p-4">
         <h2 className="text-xl font-bold mb-2">Preview</h2>
         {getSelectedItem() ? (
           <div className="border p-2 rounded-lg bg-gray-50">
-            <embed
-              src={`http://localhost:8080/api/storage/view?filepath=${path.join('/')}`}
-              type="application/pdf"
-              width="50%"
-              height="1000px"
-            />
+            {/* Only the first-page thumbnail is fetched; the full PDF opens on demand */}
+            <a
+              href={`http://localhost:8080/api/storage/view?filepath=${encodeURIComponent(path.join('/'))}`}
+              target="_blank"
+              rel="noreferrer"
+            >
+              <img
+                src={`http://localhost:8080/api/storage/thumbnail?filepath=${encodeURIComponent(path.join('/'))}`}
+                alt={getSelectedItem().name}
+                loading="lazy"
+                width="240"
+              />
+              <span className="block mt-2 text-cyan-600 hover:underline">Open PDF</span>
+            </a>
+          </div>
+        ) : path.length > 1 ? (
+          <div className="space-x-4">
+            <a
+              className="text-cyan-600 hover:underline"
+              href={`http://localhost:8080/api/storage/export?folder=${encodeURIComponent(path.join('/'))}&format=pdf`}
+            >
+              Download folder as one PDF
+            </a>
+            <a
+              className="text-cyan-600 hover:underline"
+              href={`http://localhost:8080/api/storage/export?folder=${encodeURIComponent(path.join('/'))}&format=zip`}
+            >
+              Download folder as ZIP
+            </a>
           </div>
         ) : (
           <p>No file selected</p>
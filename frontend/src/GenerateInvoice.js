@@ -11,10 +11,13 @@ function GenerateInvoice() {
     });
 
     const [invoiceUrl, setInvoiceUrl] = useState("");
+    // Resubmitting the same form reuses the key, so the server does not issue the invoice twice
+    const [idempotencyKey, setIdempotencyKey] = useState(() => crypto.randomUUID());
 
     const handleChange = (e) => {
         const { name, value } = e.target;
         setForm({ ...form, [name]: value });
+        setIdempotencyKey(crypto.randomUUID());
     };
 
     const handleSubmit = (e) => {
@@ -33,7 +36,8 @@ function GenerateInvoice() {
         fetch(url, {
             method: 'POST',
             headers: {
-                'Content-Type': 'application/x-www-form-urlencoded'
+                'Content-Type': 'application/x-www-form-urlencoded',
+                'Idempotency-Key': idempotencyKey
             },
             body: params.toString()
         })